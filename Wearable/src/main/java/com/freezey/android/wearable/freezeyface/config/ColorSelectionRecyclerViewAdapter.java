@@ -16,8 +16,6 @@
 package com.freezey.android.wearable.freezeyface.config;
 
 import android.app.Activity;
-import android.content.Context;
-import android.content.SharedPreferences;
 import android.support.v7.widget.RecyclerView;
 import android.support.wearable.view.CircledImageView;
 import android.util.Log;
@@ -26,14 +24,15 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import com.freezey.android.wearable.freezeyface.R;
+import com.freezey.android.wearable.freezeyface.model.WatchFaceSettings;
 
 import java.util.ArrayList;
 
 /**
  * Provides a binding from color selection data set to views that are displayed within
  * {@link ColorSelectionActivity}.
- * Color options change appearance for the item specified on the watch face. Value is saved to a
- * {@link SharedPreferences} value passed to the class.
+ * Color options change appearance for the item specified on the watch face. Value is saved to the
+ * {@link WatchFaceSettings} color whose preference key is passed to the class.
  */
 
 public class ColorSelectionRecyclerViewAdapter extends
@@ -104,13 +103,11 @@ public class ColorSelectionRecyclerViewAdapter extends
             Activity activity = (Activity) view.getContext();
 
             if (mSharedPrefString != null && !mSharedPrefString.isEmpty()) {
-                SharedPreferences sharedPref = activity.getSharedPreferences(
-                        activity.getString(R.string.analog_complication_preference_file_key),
-                        Context.MODE_PRIVATE);
-
-                SharedPreferences.Editor editor = sharedPref.edit();
-                editor.putInt(mSharedPrefString, color);
-                editor.commit();
+                // Saved in memory right away, so the watch face sees it before we finish.
+                WatchFaceSettings.getInstance(activity)
+                        .edit()
+                        .setColor(mSharedPrefString, color)
+                        .apply();
 
                 // Let's Complication Config Activity know there was an update to colors.
                 activity.setResult(Activity.RESULT_OK);
@@ -47,11 +47,14 @@ import android.widget.Toast;
 
 import com.freezey.android.wearable.freezeyface.R;
 import com.freezey.android.wearable.freezeyface.model.AnalogComplicationConfigData.BackgroundComplicationConfigItem;
+import com.freezey.android.wearable.freezeyface.model.AnalogComplicationConfigData.BlinkConfigItem;
 import com.freezey.android.wearable.freezeyface.model.AnalogComplicationConfigData.ColorConfigItem;
 import com.freezey.android.wearable.freezeyface.model.AnalogComplicationConfigData.ConfigItemType;
 import com.freezey.android.wearable.freezeyface.model.AnalogComplicationConfigData.MoreOptionsConfigItem;
 import com.freezey.android.wearable.freezeyface.model.AnalogComplicationConfigData.PreviewAndComplicationsConfigItem;
 import com.freezey.android.wearable.freezeyface.model.AnalogComplicationConfigData.UnreadNotificationConfigItem;
+import com.freezey.android.wearable.freezeyface.model.WatchFaceSettings;
+import com.freezey.android.wearable.freezeyface.watchface.ComplicationLayout;
 import com.freezey.android.wearable.freezeyface.watchface.FreezeyWatchFaceService;
 
 import java.util.ArrayList;
@@ -63,7 +66,7 @@ import java.util.concurrent.Executors;
  *
  * <p>All appearance settings are saved via {@link SharedPreferences}.
  *
- * <p>Layouts provided by this adapter are split into 5 main view types.
+ * <p>Layouts provided by this adapter are split into 6 main view types.
  *
  * <p>A watch face preview including complications. Allows user to tap on the complications to
  * change the complication data and see a live preview of the watch face.
@@ -74,6 +77,8 @@ import java.util.concurrent.Executors;
  *
  * <p>Toggle for unread notifications.
  *
+ * <p>Toggle for the blinking colon.
+ *
  * <p>Background image complication configuration for changing background image of watch face.
  */
 public class FreezeyfaceComplicationConfigRecyclerViewAdapter
@@ -82,9 +87,8 @@ public class FreezeyfaceComplicationConfigRecyclerViewAdapter
     private static final String TAG = "CompConfigAdapter";
 
     /**
-     * Used by associated watch face ({@link com.freezey.android.wearable.freezeyface.watchface.FreezeyWatchFaceService}) to let this
-     * adapter know which complication locations are supported, their ids, and supported
-     * complication data types.
+     * Locations of complications on the watch face. {@link ComplicationLayout} maps the supported
+     * locations to their ids and supported complication data types.
      */
     public enum ComplicationLocation {
         BACKGROUND,
@@ -99,6 +103,7 @@ public class FreezeyfaceComplicationConfigRecyclerViewAdapter
     public static final int TYPE_COLOR_CONFIG = 2;
     public static final int TYPE_UNREAD_NOTIFICATION_CONFIG = 3;
     public static final int TYPE_BACKGROUND_COMPLICATION_IMAGE_CONFIG = 4;
+    public static final int TYPE_BLINK_CONFIG = 5;
 
     // ComponentName associated with watch face service (service that renders watch face). Used
     // to retrieve complication information.
@@ -137,13 +142,13 @@ public class FreezeyfaceComplicationConfigRecyclerViewAdapter
         mSelectedComplicationId = -1;
 
         mBackgroundComplicationId =
-                FreezeyWatchFaceService.getComplicationId(
+                ComplicationLayout.getComplicationId(
                         ComplicationLocation.BACKGROUND);
 
         mLeftComplicationId =
-                FreezeyWatchFaceService.getComplicationId(ComplicationLocation.LEFT);
+                ComplicationLayout.getComplicationId(ComplicationLocation.LEFT);
         mRightComplicationId =
-                FreezeyWatchFaceService.getComplicationId(ComplicationLocation.RIGHT);
+                ComplicationLayout.getComplicationId(ComplicationLocation.RIGHT);
 
         mSharedPref =
                 context.getSharedPreferences(
@@ -203,6 +208,13 @@ public class FreezeyfaceComplicationConfigRecyclerViewAdapter
                                                 false));
                 break;
 
+            case TYPE_BLINK_CONFIG:
+                viewHolder =
+                        new BlinkViewHolder(
+                                LayoutInflater.from(parent.getContext())
+                                        .inflate(R.layout.config_list_blink_item, parent, false));
+                break;
+
             case TYPE_BACKGROUND_COMPLICATION_IMAGE_CONFIG:
                 viewHolder =
                         new BackgroundComplicationViewHolder(
@@ -283,6 +295,14 @@ public class FreezeyfaceComplicationConfigRecyclerViewAdapter
                 unreadViewHolder.setSharedPrefId(unreadSharedPrefId);
                 break;
 
+            case TYPE_BLINK_CONFIG:
+                BlinkViewHolder blinkViewHolder = (BlinkViewHolder) viewHolder;
+                BlinkConfigItem blinkConfigItem = (BlinkConfigItem) configItemType;
+
+                blinkViewHolder.setName(blinkConfigItem.getName());
+                blinkViewHolder.updateState();
+                break;
+
             case TYPE_BACKGROUND_COMPLICATION_IMAGE_CONFIG:
                 BackgroundComplicationViewHolder backgroundComplicationViewHolder =
                         (BackgroundComplicationViewHolder) viewHolder;
@@ -439,14 +459,14 @@ public class FreezeyfaceComplicationConfigRecyclerViewAdapter
                 Activity currentActivity, ComplicationLocation complicationLocation) {
 
             mSelectedComplicationId =
-                    FreezeyWatchFaceService.getComplicationId(complicationLocation);
+                    ComplicationLayout.getComplicationId(complicationLocation);
 
             mBackgroundComplicationEnabled = false;
 
             if (mSelectedComplicationId >= 0) {
 
                 int[] supportedTypes =
-                        FreezeyWatchFaceService.getSupportedComplicationTypes(
+                        ComplicationLayout.getSupportedComplicationTypes(
                                 complicationLocation);
 
                 ComponentName watchFace =
@@ -563,7 +583,7 @@ public class FreezeyfaceComplicationConfigRecyclerViewAdapter
                     .getBackground()
                     .setColorFilter(backgroundColorFilter);
 
-            final int[] complicationIds = FreezeyWatchFaceService.getComplicationIds();
+            final int[] complicationIds = ComplicationLayout.getComplicationIds();
 
             mProviderInfoRetriever.retrieveProviderInfo(
                     new OnProviderInfoReceivedCallback() {
@@ -738,6 +758,45 @@ public class FreezeyfaceComplicationConfigRecyclerViewAdapter
         }
     }
 
+    /**
+     * Displays switch to indicate whether or not the colon blinks every second. User can toggle
+     * on/off; without blinking the watch face wakes once a minute in interactive mode.
+     */
+    public class BlinkViewHolder extends RecyclerView.ViewHolder implements OnClickListener {
+
+        private Switch mBlinkSwitch;
+
+        public BlinkViewHolder(View view) {
+            super(view);
+
+            mBlinkSwitch = (Switch) view.findViewById(R.id.blink_switch);
+            view.setOnClickListener(this);
+        }
+
+        public void setName(String name) {
+            mBlinkSwitch.setText(name);
+        }
+
+        /** Shows the saved state, read directly since the settings may still be loading. */
+        public void updateState() {
+            String noBlinkKey = mBlinkSwitch.getContext().getString(R.string.saved_no_blink_pref);
+            mBlinkSwitch.setChecked(!mSharedPref.getBoolean(noBlinkKey, false));
+        }
+
+        @Override
+        public void onClick(View view) {
+            // Since user clicked on a switch, new state should be opposite of current state.
+            boolean newState = !mBlinkSwitch.isChecked();
+
+            WatchFaceSettings.getInstance(view.getContext())
+                    .edit()
+                    .setBlinkEnabled(newState)
+                    .apply();
+
+            mBlinkSwitch.setChecked(newState);
+        }
+    }
+
     /** Displays button to trigger background image complication selector. */
     public class BackgroundComplicationViewHolder extends RecyclerView.ViewHolder
             implements OnClickListener {
@@ -770,13 +829,13 @@ public class FreezeyfaceComplicationConfigRecyclerViewAdapter
             Activity currentActivity = (Activity) view.getContext();
 
             mSelectedComplicationId =
-                    FreezeyWatchFaceService.getComplicationId(
+                    ComplicationLayout.getComplicationId(
                             ComplicationLocation.BACKGROUND);
 
             if (mSelectedComplicationId >= 0) {
 
                 int[] supportedTypes =
-                        FreezeyWatchFaceService.getSupportedComplicationTypes(
+                        ComplicationLayout.getSupportedComplicationTypes(
                                 ComplicationLocation.BACKGROUND);
 
                 ComponentName watchFace =
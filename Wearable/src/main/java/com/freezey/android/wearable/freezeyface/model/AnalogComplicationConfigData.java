@@ -131,6 +131,11 @@ public class AnalogComplicationConfigData {
                         R.string.saved_unread_notifications_pref);
         settingsConfigData.add(unreadNotificationsConfigItem);
 
+        // Data for 'Blinking Colon' UX (toggle) in settings Activity.
+        ConfigItemType blinkConfigItem =
+                new BlinkConfigItem(context.getString(R.string.config_blink_label));
+        settingsConfigData.add(blinkConfigItem);
+
         // Data for background complications UX in settings Activity.
         ConfigItemType backgroundImageComplicationConfigItem =
                 // TODO (jewalker): Revised in another CL to support background complication.
@@ -270,6 +275,28 @@ public class AnalogComplicationConfigData {
         }
     }
 
+    /**
+     * Data for the colon blink toggle in RecyclerView. Without blinking the watch face only
+     * wakes once a minute in interactive mode.
+     */
+    public static class BlinkConfigItem implements ConfigItemType {
+
+        private String name;
+
+        BlinkConfigItem(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getConfigType() {
+            return FreezeyfaceComplicationConfigRecyclerViewAdapter.TYPE_BLINK_CONFIG;
+        }
+    }
+
     /**
      * Data for background image complication picker item in RecyclerView.
      */
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.freezey.android.wearable.freezeyface.model;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Color;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.freezey.android.wearable.freezeyface.R;
+
+import java.util.ArrayList;
+
+/**
+ * Typed access to the watch face settings shared by the watch faces and their config
+ * activities.
+ *
+ * <p>Settings are read as an immutable {@link Snapshot}. The first snapshot is loaded on a
+ * background thread; until it arrives {@link #getSnapshot} returns the defaults, and listeners
+ * are told once it does. After that, every change written to the preferences file, from this
+ * process or through {@link #edit}, produces a new snapshot on the main thread, and listeners
+ * are only called if a value actually changed. Writes are batched in an {@link Editor} and
+ * saved with {@link SharedPreferences.Editor#apply}, so nothing waits on the disk.
+ *
+ * <p>Must be used from the main thread.
+ */
+public final class WatchFaceSettings {
+
+    /** Called on the main thread when at least one setting changed. */
+    public interface OnSettingsChangedListener {
+        void onSettingsChanged(Snapshot previous, Snapshot current);
+    }
+
+    private static WatchFaceSettings sInstance;
+
+    private final SharedPreferences mPreferences;
+
+    /* Preference keys, resolved from resources once. */
+    private final String mMarkerColorKey;
+    private final String mBackgroundColorKey;
+    private final String mUnreadNotificationsKey;
+    private final String mNoBlinkKey;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final ArrayList<OnSettingsChangedListener> mListeners = new ArrayList<>();
+
+    private Snapshot mSnapshot = Snapshot.DEFAULTS;
+
+    /* Set once a snapshot was read from the preferences, by the initial load or a change. */
+    private boolean mLoaded;
+
+    // Held here because SharedPreferences only keeps a weak reference to its listeners.
+    private final SharedPreferences.OnSharedPreferenceChangeListener mChangeListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+                    if (isSettingKey(key)) {
+                        // A change means the file is loaded, so this read doesn't block.
+                        setSnapshot(readSnapshot());
+                    }
+                }
+            };
+
+    /** Returns the process-wide instance, starting the initial load on first use. */
+    public static WatchFaceSettings getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WatchFaceSettings(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WatchFaceSettings(Context context) {
+        mPreferences =
+                context.getSharedPreferences(
+                        context.getString(R.string.analog_complication_preference_file_key),
+                        Context.MODE_PRIVATE);
+        mMarkerColorKey = context.getString(R.string.saved_marker_color);
+        mBackgroundColorKey = context.getString(R.string.saved_background_color);
+        mUnreadNotificationsKey = context.getString(R.string.saved_unread_notifications_pref);
+        mNoBlinkKey = context.getString(R.string.saved_no_blink_pref);
+
+        mPreferences.registerOnSharedPreferenceChangeListener(mChangeListener);
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Blocks until the file is read, which is why this is off the main thread.
+                final Snapshot snapshot = readSnapshot();
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A change seen in the meantime already read newer values.
+                        if (!mLoaded) {
+                            setSnapshot(snapshot);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /** Returns the current settings, or the defaults until the initial load finishes. */
+    public Snapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    public void addListener(OnSettingsChangedListener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public void removeListener(OnSettingsChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /** Starts a batch of changes, saved together by {@link Editor#apply}. */
+    public Editor edit() {
+        return new Editor(this, mPreferences.edit());
+    }
+
+    private boolean isSettingKey(String key) {
+        return mMarkerColorKey.equals(key)
+                || mBackgroundColorKey.equals(key)
+                || mUnreadNotificationsKey.equals(key)
+                || mNoBlinkKey.equals(key);
+    }
+
+    private Snapshot readSnapshot() {
+        Snapshot defaults = Snapshot.DEFAULTS;
+        return new Snapshot(
+                mPreferences.getInt(mMarkerColorKey, defaults.mMarkerColor),
+                mPreferences.getInt(mBackgroundColorKey, defaults.mBackgroundColor),
+                mPreferences.getBoolean(mUnreadNotificationsKey, defaults.mUnreadNotifications),
+                !mPreferences.getBoolean(mNoBlinkKey, !defaults.mBlinkEnabled));
+    }
+
+    private void setSnapshot(Snapshot snapshot) {
+        mLoaded = true;
+        if (snapshot.equals(mSnapshot)) {
+            return;
+        }
+        Snapshot previous = mSnapshot;
+        mSnapshot = snapshot;
+        // Copied, so listeners may remove themselves while being notified.
+        for (OnSettingsChangedListener listener : new ArrayList<>(mListeners)) {
+            listener.onSettingsChanged(previous, snapshot);
+        }
+    }
+
+    /**
+     * An immutable set of all watch face settings. {@link #diff} tells which settings differ
+     * between two snapshots, so a watch face can rebuild only what depends on them.
+     */
+    public static final class Snapshot {
+
+        /* Flags returned by diff(), one per setting. */
+        public static final int MARKER_COLOR = 1;
+        public static final int BACKGROUND_COLOR = 1 << 1;
+        public static final int UNREAD_NOTIFICATIONS = 1 << 2;
+        public static final int BLINK = 1 << 3;
+
+        /** Every diff flag, for a snapshot applied for the first time. */
+        public static final int ALL =
+                MARKER_COLOR | BACKGROUND_COLOR | UNREAD_NOTIFICATIONS | BLINK;
+
+        static final Snapshot DEFAULTS = new Snapshot(Color.BLUE, Color.BLACK, true, true);
+
+        private final int mMarkerColor;
+        private final int mBackgroundColor;
+        private final boolean mUnreadNotifications;
+        private final boolean mBlinkEnabled;
+
+        Snapshot(
+                int markerColor,
+                int backgroundColor,
+                boolean unreadNotifications,
+                boolean blinkEnabled) {
+            mMarkerColor = markerColor;
+            mBackgroundColor = backgroundColor;
+            mUnreadNotifications = unreadNotifications;
+            mBlinkEnabled = blinkEnabled;
+        }
+
+        /** Color of the time readout, date ring, battery arcs and complication borders. */
+        public int getMarkerColor() {
+            return mMarkerColor;
+        }
+
+        public int getBackgroundColor() {
+            return mBackgroundColor;
+        }
+
+        /** Whether to show an indicator while there are unread notifications. */
+        public boolean isUnreadNotificationsEnabled() {
+            return mUnreadNotifications;
+        }
+
+        /** Whether the colon blinks every second; if not, the face wakes once a minute. */
+        public boolean isBlinkEnabled() {
+            return mBlinkEnabled;
+        }
+
+        /**
+         * Returns the flags of the settings whose values differ from those in other, 0 if they
+         * are all the same, or {@link #ALL} if other is null.
+         */
+        public int diff(Snapshot other) {
+            if (other == null) {
+                return ALL;
+            }
+            int changes = 0;
+            if (mMarkerColor != other.mMarkerColor) {
+                changes |= MARKER_COLOR;
+            }
+            if (mBackgroundColor != other.mBackgroundColor) {
+                changes |= BACKGROUND_COLOR;
+            }
+            if (mUnreadNotifications != other.mUnreadNotifications) {
+                changes |= UNREAD_NOTIFICATIONS;
+            }
+            if (mBlinkEnabled != other.mBlinkEnabled) {
+                changes |= BLINK;
+            }
+            return changes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Snapshot)) {
+                return false;
+            }
+            return diff((Snapshot) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mMarkerColor;
+            result = 31 * result + mBackgroundColor;
+            result = 31 * result + (mUnreadNotifications ? 1 : 0);
+            result = 31 * result + (mBlinkEnabled ? 1 : 0);
+            return result;
+        }
+    }
+
+    /** A batch of setting changes, saved together by {@link #apply}. */
+    public static final class Editor {
+        private final WatchFaceSettings mSettings;
+        private final SharedPreferences.Editor mEditor;
+
+        private Editor(WatchFaceSettings settings, SharedPreferences.Editor editor) {
+            mSettings = settings;
+            mEditor = editor;
+        }
+
+        public Editor setMarkerColor(int color) {
+            mEditor.putInt(mSettings.mMarkerColorKey, color);
+            return this;
+        }
+
+        public Editor setBackgroundColor(int color) {
+            mEditor.putInt(mSettings.mBackgroundColorKey, color);
+            return this;
+        }
+
+        /**
+         * Sets the color saved under the given preference key, either
+         * {@link R.string#saved_marker_color} or {@link R.string#saved_background_color}.
+         */
+        public Editor setColor(String key, int color) {
+            if (mSettings.mMarkerColorKey.equals(key)) {
+                return setMarkerColor(color);
+            } else if (mSettings.mBackgroundColorKey.equals(key)) {
+                return setBackgroundColor(color);
+            }
+            throw new IllegalArgumentException("Not a color setting: " + key);
+        }
+
+        public Editor setUnreadNotificationsEnabled(boolean enabled) {
+            mEditor.putBoolean(mSettings.mUnreadNotificationsKey, enabled);
+            return this;
+        }
+
+        public Editor setBlinkEnabled(boolean enabled) {
+            mEditor.putBoolean(mSettings.mNoBlinkKey, !enabled);
+            return this;
+        }
+
+        /** Saves all changes in memory at once and writes them to disk in the background. */
+        public void apply() {
+            mEditor.apply();
+        }
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import android.opengl.GLES20;
+
+/**
+ * Merges any number of {@link Gles2ColoredTriangleList}s and {@link Gles2IndexedTriangleList}s,
+ * each with its own color, into a single vertex buffer object of interleaved positions and
+ * colors, drawn as indexed triangles with one draw call.
+ *
+ * <p>Drawing the lists one by one costs a color upload, an attribute pointer and a draw call per
+ * list. A batch is instead rebuilt with {@link #clear} and {@link #add} when any of its lists or
+ * colors change, uploaded once with {@link GLES20#GL_STATIC_DRAW} on the next draw, and then
+ * drawn every frame as a whole. The client-side copy only grows, so rebuilding a batch of a
+ * similar size doesn't allocate, and is kept to upload again if the GL context is recreated.
+ *
+ * <p>Vertices are stored in a compact 2D format of 8 bytes instead of the lists' 28: x and y as
+ * 16-bit normalized shorts covering [-{@link #POSITION_RANGE}, {@link #POSITION_RANGE}], with
+ * 1/8th pixel precision, and the color as four normalized unsigned bytes. Z coordinates are
+ * dropped. Strips and fans are resolved into separate triangles, so a batch holds at most
+ * {@link Gles2IndexedTriangleList#MAX_VERTICES} vertices.
+ */
+public class Gles2ColoredTriangleBatch {
+
+    /** Largest absolute x or y coordinate a batch can hold. */
+    public static final float POSITION_RANGE = 4096f;
+
+    private static final int POSITION_COMPONENTS = 2;
+
+    private static final int COLOR_COMPONENTS = Gles2ColoredTriangleList.NUM_COLOR_COMPONENTS;
+
+    /** Bytes per vertex: two shorts for the position, then four bytes for the color. */
+    private static final int VERTEX_STRIDE = POSITION_COMPONENTS * 2 + COLOR_COMPONENTS;
+
+    private static final int COLOR_OFFSET = POSITION_COMPONENTS * 2;
+
+    private static final int BYTES_PER_SHORT = 2;
+
+    /** Shaders to render this batch. */
+    private final Program mProgram;
+
+    /** Client-side copy of the interleaved vertices. */
+    private ByteBuffer mVertexData;
+
+    /** Client-side copy of the triangles' vertex indices. */
+    private ShortBuffer mIndices;
+
+    /** Number of vertices and indices currently in this batch. */
+    private int mNumVertices;
+    private int mNumIndices;
+
+    /** IDs of the vertex and index buffer objects and the context generation they belong to. */
+    private int mVboId;
+    private int mIboId;
+    private int mVboGeneration = -1;
+
+    /** Whether mVertexData or mIndices changed since they were last uploaded. */
+    private boolean mUploadNeeded;
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param program program for drawing batches
+     * @param initialCapacity number of vertices to allocate room for up front
+     */
+    public Gles2ColoredTriangleBatch(Program program, int initialCapacity) {
+        mProgram = program;
+        mVertexData = allocate(initialCapacity * VERTEX_STRIDE);
+        mIndices = allocate(initialCapacity * BYTES_PER_SHORT).asShortBuffer();
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        ByteBuffer bb = ByteBuffer.allocateDirect(bytes);
+
+        // Use the device hardware's native byte order.
+        bb.order(ByteOrder.nativeOrder());
+
+        return bb;
+    }
+
+    /** Removes all triangles from this batch. */
+    public void clear() {
+        mNumVertices = 0;
+        mNumIndices = 0;
+        mVertexData.clear();
+        mIndices.clear();
+        mUploadNeeded = true;
+    }
+
+    /**
+     * Appends the triangles of a list, in the list's current color. Later changes to the list's
+     * color array aren't seen until the batch is rebuilt.
+     */
+    public void add(Gles2ColoredTriangleList list) {
+        int vertices = list.getVertexCount();
+        int first = reserve(vertices, vertices);
+
+        float[] color = list.getColor();
+        for (int i = 0; i < vertices; i++) {
+            putVertex(list.getX(i), list.getY(i), color);
+            mIndices.put((short) (first + i));
+        }
+        mNumIndices += vertices;
+    }
+
+    /**
+     * Appends the triangles of an indexed list, in the list's current color. Later changes to
+     * the list's color array aren't seen until the batch is rebuilt.
+     */
+    public void add(Gles2IndexedTriangleList list) {
+        int vertices = list.getVertexCount();
+        int triangles = list.getTriangleCount();
+        int first = reserve(vertices, 3 * triangles);
+
+        float[] color = list.getColor();
+        for (int i = 0; i < vertices; i++) {
+            putVertex(list.getX(i), list.getY(i), color);
+        }
+        for (int i = 0; i < triangles; i++) {
+            for (int corner = 0; corner < 3; corner++) {
+                mIndices.put((short) (first + list.getTriangleVertex(i, corner)));
+            }
+        }
+        mNumIndices += 3 * triangles;
+    }
+
+    /*
+     * Makes room for the given number of vertices and indices, positions both buffers at their
+     * ends and returns the index of the first new vertex.
+     */
+    private int reserve(int vertices, int indices) {
+        if (mNumVertices + vertices > Gles2IndexedTriangleList.MAX_VERTICES) {
+            throw new IllegalStateException("too many vertices for unsigned short indices");
+        }
+
+        int usedBytes = mNumVertices * VERTEX_STRIDE;
+        if (usedBytes + vertices * VERTEX_STRIDE > mVertexData.capacity()) {
+            ByteBuffer grown = allocate(
+                    Math.max(usedBytes + vertices * VERTEX_STRIDE, 2 * mVertexData.capacity()));
+            mVertexData.position(0);
+            mVertexData.limit(usedBytes);
+            grown.put(mVertexData);
+            mVertexData = grown;
+        }
+        mVertexData.position(usedBytes);
+
+        if (mNumIndices + indices > mIndices.capacity()) {
+            ShortBuffer grown = allocate(BYTES_PER_SHORT
+                    * Math.max(mNumIndices + indices, 2 * mIndices.capacity())).asShortBuffer();
+            mIndices.position(0);
+            mIndices.limit(mNumIndices);
+            grown.put(mIndices);
+            mIndices = grown;
+        }
+        mIndices.position(mNumIndices);
+
+        mUploadNeeded = true;
+        int first = mNumVertices;
+        mNumVertices += vertices;
+        return first;
+    }
+
+    private void putVertex(float x, float y, float[] color) {
+        mVertexData.putShort(toNormalizedShort(x));
+        mVertexData.putShort(toNormalizedShort(y));
+        mVertexData.put(toUnsignedByte(color[0]));
+        mVertexData.put(toUnsignedByte(color[1]));
+        mVertexData.put(toUnsignedByte(color[2]));
+        mVertexData.put(toUnsignedByte(color[3]));
+    }
+
+    private static short toNormalizedShort(float coordinate) {
+        float normalized = Math.max(-1f, Math.min(1f, coordinate / POSITION_RANGE));
+        return (short) Math.round(normalized * Short.MAX_VALUE);
+    }
+
+    private static byte toUnsignedByte(float component) {
+        return (byte) Math.round(Math.max(0f, Math.min(1f, component)) * 255);
+    }
+
+    /** Returns the number of vertices in this batch. */
+    public int getVertexCount() {
+        return mNumVertices;
+    }
+
+    /** Returns a copy of the vertex indices, three per triangle, added so far. */
+    short[] copyIndices() {
+        short[] indices = new short[mNumIndices];
+        for (int i = 0; i < mNumIndices; i++) {
+            indices[i] = mIndices.get(i);
+        }
+        return indices;
+    }
+
+    /**
+     * Draws every triangle in this batch with a single draw call, uploading it first if it
+     * changed or the GL context was recreated.
+     *
+     * @param mvpMatrix the Model View Project matrix to draw this batch
+     */
+    public void draw(float[] mvpMatrix) {
+        if (mNumIndices == 0) {
+            return;
+        }
+        if (mVboGeneration != Gles2State.getContextGeneration()) {
+            // Buffers from a lost context are already gone, so there is nothing to delete.
+            mVboId = Gles2State.genBuffer();
+            mIboId = Gles2State.genBuffer();
+            mVboGeneration = Gles2State.getContextGeneration();
+            mUploadNeeded = true;
+        }
+        if (mUploadNeeded) {
+            mUploadNeeded = false;
+            mVertexData.position(0);
+            Gles2State.bindArrayBuffer(mVboId);
+            Gles2State.gl().glBufferData(GLES20.GL_ARRAY_BUFFER, mNumVertices * VERTEX_STRIDE,
+                    mVertexData, GLES20.GL_STATIC_DRAW);
+            mIndices.position(0);
+            Gles2State.bindElementArrayBuffer(mIboId);
+            Gles2State.gl().glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER,
+                    mNumIndices * BYTES_PER_SHORT, mIndices, GLES20.GL_STATIC_DRAW);
+        }
+
+        mProgram.bind(mvpMatrix, mVboId);
+        Gles2State.bindElementArrayBuffer(mIboId);
+
+        Gles2State.gl().glDrawElements(
+                GLES20.GL_TRIANGLES, mNumIndices, GLES20.GL_UNSIGNED_SHORT, 0 /* offset */);
+
+        mProgram.unbind();
+    }
+
+    /** Deletes the buffer objects, if any. The batch can still be drawn afterwards. */
+    public void release() {
+        if (mVboGeneration == Gles2State.getContextGeneration()) {
+            Gles2State.deleteBuffer(mVboId);
+            Gles2State.deleteBuffer(mIboId);
+        }
+        mVboGeneration = -1;
+    }
+
+    /** OpenGL shaders for drawing triangles with a color per vertex. */
+    public static class Program {
+        /** Vertex shader that transforms the input vertex and passes on its color. */
+        private static final String VERTEX_SHADER_CODE = "" +
+                "uniform mat4 uMvpMatrix;\n" +
+                "attribute vec4 aPosition;\n" +
+                "attribute vec4 aColor;\n" +
+                "varying vec4 vColor;\n" +
+                "void main() {\n" +
+                "    gl_Position = uMvpMatrix * aPosition;\n" +
+                "    vColor = aColor;\n" +
+                "}\n";
+
+        /** Fragment shader that draws with the interpolated vertex color. */
+        private static final String FRAGMENT_SHADER_CODE = "" +
+                "precision mediump float;\n" +
+                "varying vec4 vColor;\n" +
+                "void main() {\n" +
+                "    gl_FragColor = vColor;\n" +
+                "}\n";
+
+        /** ID OpenGL uses to identify this program. */
+        private final int mProgramId;
+
+        /** Handle for uMvpMatrix uniform in vertex shader. */
+        private final int mMvpMatrixHandle;
+
+        /** Handle for aPosition attribute in vertex shader. */
+        private final int mPositionHandle;
+
+        /** Handle for aColor attribute in vertex shader. */
+        private final int mColorHandle;
+
+        /** Matrix last sent to this program, to skip redundant uploads. */
+        private final float[] mBoundMvpMatrix = new float[16];
+        private boolean mMvpMatrixBound;
+
+        /** The caller's matrix scaled up to undo the position normalization. */
+        private final float[] mScaledMvpMatrix = new float[16];
+
+        /**
+         * Returns the program to draw batches in the current GL context, shared by all batches
+         * being drawn.
+         */
+        public static Program getInstance() {
+            Program program = (Program) Gles2State.getShared(Program.class);
+            if (program == null) {
+                program = new Program();
+                Gles2State.putShared(Program.class, program);
+            }
+            return program;
+        }
+
+        private Program() {
+            this(Gles2ProgramCache.getProgramId(VERTEX_SHADER_CODE, FRAGMENT_SHADER_CODE));
+        }
+
+        /** Wraps an already linked program, for tests. Use {@link #getInstance} otherwise. */
+        Program(int programId) {
+            mProgramId = programId;
+
+            mMvpMatrixHandle = Gles2State.gl().glGetUniformLocation(mProgramId, "uMvpMatrix");
+            mPositionHandle = Gles2State.gl().glGetAttribLocation(mProgramId, "aPosition");
+            mColorHandle = Gles2State.gl().glGetAttribLocation(mProgramId, "aColor");
+        }
+
+        /**
+         * Tells OpenGL to use this program. Call this method before drawing a sequence of
+         * batches.
+         */
+        public void use() {
+            Gles2State.useProgram(mProgramId);
+        }
+
+        /**
+         * Sends the given MVP matrix and vertex buffer object to OpenGL. The matrix is only sent
+         * if it differs from the one last sent to this program.
+         */
+        public void bind(float[] mvpMatrix, int vboId) {
+            if (!mMvpMatrixBound || !Arrays.equals(mvpMatrix, mBoundMvpMatrix)) {
+                scaleXy(mScaledMvpMatrix, mvpMatrix, POSITION_RANGE);
+                Gles2State.gl().glUniformMatrix4fv(mMvpMatrixHandle, 1 /* count */,
+                        false /* transpose */, mScaledMvpMatrix, 0 /* offset */);
+                System.arraycopy(mvpMatrix, 0, mBoundMvpMatrix, 0, mBoundMvpMatrix.length);
+                mMvpMatrixBound = true;
+            }
+
+            // Positions and colors are interleaved in the same buffer.
+            Gles2State.bindArrayBuffer(vboId);
+            Gles2State.enableVertexAttribArray(mPositionHandle);
+            Gles2State.gl().glVertexAttribPointer(mPositionHandle, POSITION_COMPONENTS,
+                    GLES20.GL_SHORT, true /* normalized */, VERTEX_STRIDE, 0 /* offset */);
+            Gles2State.enableVertexAttribArray(mColorHandle);
+            Gles2State.gl().glVertexAttribPointer(mColorHandle, COLOR_COMPONENTS,
+                    GLES20.GL_UNSIGNED_BYTE, true /* normalized */, VERTEX_STRIDE, COLOR_OFFSET);
+        }
+
+        /*
+         * Same as Matrix.scaleM(result, 0, matrix, 0, scale, scale, 1), without the native
+         * call: scales the matrix's x and y columns.
+         */
+        private static void scaleXy(float[] result, float[] matrix, float scale) {
+            for (int i = 0; i < 16; i++) {
+                result[i] = i < 8 ? matrix[i] * scale : matrix[i];
+            }
+        }
+
+        /**
+         * Disables the color attribute, so programs that don't use it can be drawn afterwards.
+         */
+        public void unbind() {
+            Gles2State.disableVertexAttribArray(mColorHandle);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.freezey.android.wearable.freezeyface.util;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.Arrays;
 
 import android.opengl.GLES20;
 import android.opengl.GLU;
@@ -27,6 +28,10 @@ import android.util.Log;
 
 /**
  * A list of triangles drawn in a single solid color using OpenGL ES 2.0.
+ *
+ * <p>By default the vertices are passed from a client-side buffer on every draw, so the driver
+ * copies them each time. Lists that are drawn for many frames can instead be created with a
+ * vertex buffer object, uploaded once and re-uploaded if the GL context is recreated.
  */
 public class Gles2ColoredTriangleList {
     private static final String TAG = "GlColoredTriangleList";
@@ -35,13 +40,13 @@ public class Gles2ColoredTriangleList {
     private static final boolean CHECK_GL_ERRORS = false;
 
     /** Number of coordinates per vertex in this array: one for each of x, y, and z. */
-    private static final int COORDS_PER_VERTEX = 3;
+    static final int COORDS_PER_VERTEX = 3;
 
     /** Number of bytes to store a float in GL. */
     public static final int BYTES_PER_FLOAT = 4;
 
     /** Number of bytes per vertex. */
-    private static final int VERTEX_STRIDE = COORDS_PER_VERTEX * BYTES_PER_FLOAT;
+    static final int VERTEX_STRIDE = COORDS_PER_VERTEX * BYTES_PER_FLOAT;
 
     /** Triangles have three vertices. */
     private static final int VERTICE_PER_TRIANGLE = 3;
@@ -54,7 +59,7 @@ public class Gles2ColoredTriangleList {
      * <li>alpha
      * </ol>
      */
-    private static final int NUM_COLOR_COMPONENTS = 4;
+    static final int NUM_COLOR_COMPONENTS = 4;
 
     /** Shaders to render this triangle list. */
     private final Program mProgram;
@@ -71,6 +76,13 @@ public class Gles2ColoredTriangleList {
     /** Number of coordinates in this triangle list. */
     private final int mNumCoords;
 
+    /** Whether the vertices are drawn from a vertex buffer object rather than mVertexBuffer. */
+    private final boolean mUseVbo;
+
+    /** ID of the vertex buffer object and the context generation it was uploaded in. */
+    private int mVboId;
+    private int mVboGeneration = -1;
+
     /**
      * Creates a Gles2ColoredTriangleList to draw a triangle list with the given vertices and color.
      *
@@ -80,6 +92,22 @@ public class Gles2ColoredTriangleList {
      * @param color color in RGBA order, each in the range [0, 1]
      */
     public Gles2ColoredTriangleList(Program program, float[] triangleCoords, float[] color) {
+        this(program, triangleCoords, color, false /* useVbo */);
+    }
+
+    /**
+     * Creates a Gles2ColoredTriangleList to draw a triangle list with the given vertices and color.
+     *
+     * @param program program for drawing triangles
+     * @param triangleCoords flat array of 3D coordinates of triangle vertices in counterclockwise
+     *                       order
+     * @param color color in RGBA order, each in the range [0, 1]
+     * @param useVbo whether to upload the vertices to a vertex buffer object with
+     *               {@link GLES20#GL_STATIC_DRAW} on first draw. Call {@link #release} when the
+     *               list is no longer needed.
+     */
+    public Gles2ColoredTriangleList(
+            Program program, float[] triangleCoords, float[] color, boolean useVbo) {
         if (triangleCoords.length % (VERTICE_PER_TRIANGLE * COORDS_PER_VERTEX) != 0) {
             throw new IllegalArgumentException("must be multiple"
                     + " of VERTICE_PER_TRIANGLE * COORDS_PER_VERTEX coordinates");
@@ -105,6 +133,7 @@ public class Gles2ColoredTriangleList {
         mVertexBuffer.position(0);
 
         mNumCoords = triangleCoords.length / COORDS_PER_VERTEX;
+        mUseVbo = useVbo;
     }
 
     /**
@@ -114,13 +143,58 @@ public class Gles2ColoredTriangleList {
      */
     public void draw(float[] mvpMatrix) {
         // Pass the MVP matrix, vertex data, and color to OpenGL.
-        mProgram.bind(mvpMatrix, mVertexBuffer, mColor);
+        if (mUseVbo) {
+            if (mVboGeneration != Gles2State.getContextGeneration()) {
+                uploadVbo();
+            }
+            mProgram.bind(mvpMatrix, mVboId, mColor);
+        } else {
+            mProgram.bind(mvpMatrix, mVertexBuffer, mColor);
+        }
 
         // Draw the triangle list.
         GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, mNumCoords);
         if (CHECK_GL_ERRORS) checkGlError("glDrawArrays");
     }
 
+    /*
+     * Uploads the vertices to a new vertex buffer object. The client-side copy is kept so this
+     * can be done again in a new context; a buffer from a lost context is already gone.
+     */
+    private void uploadVbo() {
+        mVboId = Gles2State.genBuffer();
+        mVboGeneration = Gles2State.getContextGeneration();
+        Gles2State.bindArrayBuffer(mVboId);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mNumCoords * VERTEX_STRIDE, mVertexBuffer,
+                GLES20.GL_STATIC_DRAW);
+        if (CHECK_GL_ERRORS) checkGlError("glBufferData");
+    }
+
+    /** Deletes the vertex buffer object, if any. The list can still be drawn afterwards. */
+    public void release() {
+        if (mVboGeneration == Gles2State.getContextGeneration()) {
+            Gles2State.deleteBuffer(mVboId);
+        }
+        mVboGeneration = -1;
+    }
+
+    /** Returns the number of vertices in this triangle list. */
+    public int getVertexCount() {
+        return mNumCoords;
+    }
+
+    float getX(int vertex) {
+        return mVertexBuffer.get(vertex * COORDS_PER_VERTEX);
+    }
+
+    float getY(int vertex) {
+        return mVertexBuffer.get(vertex * COORDS_PER_VERTEX + 1);
+    }
+
+    float[] getColor() {
+        return mColor;
+    }
+
     /**
      * Checks if any of the GL calls since the last time this method was called set an error
      * condition. Call this method immediately after calling a GL method. Pass the name of the GL
@@ -159,21 +233,52 @@ public class Gles2ColoredTriangleList {
      */
     private static int loadShader(int type, String shaderCode){
         // Create a vertex or fragment shader.
-        int shader = GLES20.glCreateShader(type);
+        int shader = Gles2State.gl().glCreateShader(type);
         if (CHECK_GL_ERRORS) checkGlError("glCreateShader");
         if (shader == 0) {
             throw new IllegalStateException("glCreateShader failed");
         }
 
         // Add the source code to the shader and compile it.
-        GLES20.glShaderSource(shader, shaderCode);
+        Gles2State.gl().glShaderSource(shader, shaderCode);
         if (CHECK_GL_ERRORS) checkGlError("glShaderSource");
-        GLES20.glCompileShader(shader);
+        Gles2State.gl().glCompileShader(shader);
         if (CHECK_GL_ERRORS) checkGlError("glCompileShader");
 
         return shader;
     }
 
+    /**
+     * Compiles the given shaders and links them into a new OpenGL program. Programs should be
+     * obtained through {@link Gles2ProgramCache} rather than created directly.
+     *
+     * @return ID for the program
+     */
+    static int createProgram(String vertexShaderCode, String fragmentShaderCode) {
+        // Prepare shaders.
+        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexShaderCode);
+        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
+
+        // Create empty OpenGL Program.
+        int programId = Gles2State.gl().glCreateProgram();
+        if (CHECK_GL_ERRORS) checkGlError("glCreateProgram");
+        if (programId == 0) {
+            throw new IllegalStateException("glCreateProgram failed");
+        }
+
+        // Add the shaders to the program.
+        Gles2State.gl().glAttachShader(programId, vertexShader);
+        if (CHECK_GL_ERRORS) checkGlError("glAttachShader");
+        Gles2State.gl().glAttachShader(programId, fragmentShader);
+        if (CHECK_GL_ERRORS) checkGlError("glAttachShader");
+
+        // Link the program so it can be executed.
+        Gles2State.gl().glLinkProgram(programId);
+        if (CHECK_GL_ERRORS) checkGlError("glLinkProgram");
+
+        return programId;
+    }
+
     /** OpenGL shaders for drawing solid colored triangle lists. */
     public static class Program {
         /** Trivial vertex shader that transforms the input vertex by the MVP matrix. */
@@ -204,31 +309,28 @@ public class Gles2ColoredTriangleList {
         /** Handle for uColor uniform in fragment shader. */
         private final int mColorHandle;
 
+        /** Uniform values last sent to this program, to skip redundant uploads. */
+        private final float[] mBoundMvpMatrix = new float[16];
+        private boolean mMvpMatrixBound;
+        private final float[] mBoundColor = new float[NUM_COLOR_COMPONENTS];
+        private boolean mColorBound;
+
         /**
-         * Creates a program to draw triangle lists. For optimal drawing efficiency, one program
-         * should be used for all triangle lists being drawn.
+         * Returns the program to draw triangle lists in the current GL context, shared by all
+         * triangle lists being drawn. Its shaders are only compiled once per context, and not at
+         * all if {@link Gles2ProgramCache} has a saved binary for them.
          */
-        public Program() {
-            // Prepare shaders.
-            int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_CODE);
-            int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_CODE);
-
-            // Create empty OpenGL Program.
-            mProgramId = GLES20.glCreateProgram();
-            if (CHECK_GL_ERRORS) checkGlError("glCreateProgram");
-            if (mProgramId == 0) {
-                throw new IllegalStateException("glCreateProgram failed");
+        public static Program getInstance() {
+            Program program = (Program) Gles2State.getShared(Program.class);
+            if (program == null) {
+                program = new Program();
+                Gles2State.putShared(Program.class, program);
             }
+            return program;
+        }
 
-            // Add the shaders to the program.
-            GLES20.glAttachShader(mProgramId, vertexShader);
-            if (CHECK_GL_ERRORS) checkGlError("glAttachShader");
-            GLES20.glAttachShader(mProgramId, fragmentShader);
-            if (CHECK_GL_ERRORS) checkGlError("glAttachShader");
-
-            // Link the program so it can be executed.
-            GLES20.glLinkProgram(mProgramId);
-            if (CHECK_GL_ERRORS) checkGlError("glLinkProgram");
+        private Program() {
+            mProgramId = Gles2ProgramCache.getProgramId(VERTEX_SHADER_CODE, FRAGMENT_SHADER_CODE);
 
             // Get a handle to the uMvpMatrix uniform in the vertex shader.
             mMvpMatrixHandle = GLES20.glGetUniformLocation(mProgramId, "uMvpMatrix");
@@ -239,7 +341,7 @@ public class Gles2ColoredTriangleList {
             if (CHECK_GL_ERRORS) checkGlError("glGetAttribLocation");
 
             // Enable vertex array (VBO).
-            GLES20.glEnableVertexAttribArray(mPositionHandle);
+            Gles2State.enableVertexAttribArray(mPositionHandle);
             if (CHECK_GL_ERRORS) checkGlError("glEnableVertexAttribArray");
 
             // Get a handle to fragment shader's uColor uniform.
@@ -252,27 +354,59 @@ public class Gles2ColoredTriangleList {
          * triangle lists.
          */
         public void use() {
-            GLES20.glUseProgram(mProgramId);
+            Gles2State.useProgram(mProgramId);
             if (CHECK_GL_ERRORS) checkGlError("glUseProgram");
         }
 
-        /** Sends the given MVP matrix, vertex data, and color to OpenGL. */
+        /**
+         * Sends the given MVP matrix, vertex data, and color to OpenGL. The matrix and color are
+         * only sent if they differ from the ones last sent to this program.
+         */
         public void bind(float[] mvpMatrix, FloatBuffer vertexBuffer, float[] color) {
-            // Pass the MVP matrix to OpenGL.
-            GLES20.glUniformMatrix4fv(mMvpMatrixHandle, 1 /* count */, false /* transpose */,
-                    mvpMatrix, 0 /* offset */);
-            if (CHECK_GL_ERRORS) checkGlError("glUniformMatrix4fv");
+            bindUniforms(mvpMatrix, color);
 
-            // Pass the VBO with the triangle list's vertices to OpenGL.
-            GLES20.glEnableVertexAttribArray(mPositionHandle);
+            // Pass the client-side vertex array with the triangle list's vertices to OpenGL.
+            Gles2State.bindArrayBuffer(0);
+            Gles2State.enableVertexAttribArray(mPositionHandle);
             if (CHECK_GL_ERRORS) checkGlError("glEnableVertexAttribArray");
             GLES20.glVertexAttribPointer(mPositionHandle, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
                     false /* normalized */, VERTEX_STRIDE, vertexBuffer);
             if (CHECK_GL_ERRORS) checkGlError("glVertexAttribPointer");
+        }
+
+        /**
+         * Sends the given MVP matrix, vertex buffer object, and color to OpenGL. The matrix and
+         * color are only sent if they differ from the ones last sent to this program.
+         */
+        public void bind(float[] mvpMatrix, int vboId, float[] color) {
+            bindUniforms(mvpMatrix, color);
+
+            // Pass the VBO with the triangle list's vertices to OpenGL.
+            Gles2State.bindArrayBuffer(vboId);
+            Gles2State.enableVertexAttribArray(mPositionHandle);
+            if (CHECK_GL_ERRORS) checkGlError("glEnableVertexAttribArray");
+            GLES20.glVertexAttribPointer(mPositionHandle, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
+                    false /* normalized */, VERTEX_STRIDE, 0 /* offset */);
+            if (CHECK_GL_ERRORS) checkGlError("glVertexAttribPointer");
+        }
+
+        private void bindUniforms(float[] mvpMatrix, float[] color) {
+            // Pass the MVP matrix to OpenGL.
+            if (!mMvpMatrixBound || !Arrays.equals(mvpMatrix, mBoundMvpMatrix)) {
+                GLES20.glUniformMatrix4fv(mMvpMatrixHandle, 1 /* count */, false /* transpose */,
+                        mvpMatrix, 0 /* offset */);
+                if (CHECK_GL_ERRORS) checkGlError("glUniformMatrix4fv");
+                System.arraycopy(mvpMatrix, 0, mBoundMvpMatrix, 0, mBoundMvpMatrix.length);
+                mMvpMatrixBound = true;
+            }
 
             // Pass the triangle list's color to OpenGL.
-            GLES20.glUniform4fv(mColorHandle, 1 /* count */, color, 0 /* offset */);
-            if (CHECK_GL_ERRORS) checkGlError("glUniform4fv");
+            if (!mColorBound || !Arrays.equals(color, mBoundColor)) {
+                GLES20.glUniform4fv(mColorHandle, 1 /* count */, color, 0 /* offset */);
+                if (CHECK_GL_ERRORS) checkGlError("glUniform4fv");
+                System.arraycopy(color, 0, mBoundColor, 0, NUM_COLOR_COMPONENTS);
+                mColorBound = true;
+            }
         }
     }
 }
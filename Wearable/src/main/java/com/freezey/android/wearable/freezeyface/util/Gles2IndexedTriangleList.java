@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import android.opengl.GLES20;
+
+/**
+ * Triangles drawn in a single solid color using OpenGL ES 2.0, where vertices shared between
+ * triangles are stored once.
+ *
+ * <p>The vertices form {@link GLES20#GL_TRIANGLES}, {@link GLES20#GL_TRIANGLE_STRIP} or
+ * {@link GLES20#GL_TRIANGLE_FAN}, either in order or through a list of unsigned short indices.
+ * An arc with n segments, for example, takes 2n + 2 vertices instead of the 6n a
+ * {@link Gles2ColoredTriangleList} needs. Vertices and indices are uploaded to buffer objects on
+ * first draw, and again if the GL context is recreated. See {@link Gles2MeshBuilder} for
+ * building these from shapes.
+ */
+public class Gles2IndexedTriangleList {
+
+    private static final int COORDS_PER_VERTEX = Gles2ColoredTriangleList.COORDS_PER_VERTEX;
+
+    private static final int BYTES_PER_SHORT = 2;
+
+    /** Largest number of vertices that unsigned short indices can address. */
+    public static final int MAX_VERTICES = 0x10000;
+
+    /** Shaders to render this triangle list. */
+    private final Gles2ColoredTriangleList.Program mProgram;
+
+    /** GL_TRIANGLES, GL_TRIANGLE_STRIP or GL_TRIANGLE_FAN. */
+    private final int mMode;
+
+    private final FloatBuffer mVertexBuffer;
+
+    /** Indices into the vertices, or null to draw the vertices in order. */
+    private final ShortBuffer mIndexBuffer;
+
+    /** Color in RGBA order, each in the range [0, 1]. */
+    private final float[] mColor;
+
+    private final int mNumVertices;
+    private final int mNumIndices;
+
+    /** IDs of the vertex and index buffer objects and the context generation they belong to. */
+    private int mVboId;
+    private int mIboId;
+    private int mGeneration = -1;
+
+    /**
+     * Creates a Gles2IndexedTriangleList.
+     *
+     * @param program program for drawing triangles
+     * @param mode {@link GLES20#GL_TRIANGLES}, {@link GLES20#GL_TRIANGLE_STRIP} or
+     *             {@link GLES20#GL_TRIANGLE_FAN}
+     * @param coords flat array of 3D coordinates of the vertices
+     * @param indices indices into the vertices, in the order they form primitives, or null to
+     *                use the vertices in order
+     * @param color color in RGBA order, each in the range [0, 1]
+     */
+    public Gles2IndexedTriangleList(Gles2ColoredTriangleList.Program program, int mode,
+            float[] coords, short[] indices, float[] color) {
+        if (mode != GLES20.GL_TRIANGLES
+                && mode != GLES20.GL_TRIANGLE_STRIP
+                && mode != GLES20.GL_TRIANGLE_FAN) {
+            throw new IllegalArgumentException("unsupported mode " + mode);
+        }
+        if (coords.length % COORDS_PER_VERTEX != 0) {
+            throw new IllegalArgumentException("must be multiple of COORDS_PER_VERTEX coordinates");
+        }
+        if (coords.length / COORDS_PER_VERTEX > MAX_VERTICES) {
+            throw new IllegalArgumentException("too many vertices for unsigned short indices");
+        }
+        if (color.length != Gles2ColoredTriangleList.NUM_COLOR_COMPONENTS) {
+            throw new IllegalArgumentException("wrong number of color components");
+        }
+        mProgram = program;
+        mMode = mode;
+        mColor = color;
+        mNumVertices = coords.length / COORDS_PER_VERTEX;
+
+        ByteBuffer vertexBytes =
+                ByteBuffer.allocateDirect(coords.length * Gles2ColoredTriangleList.BYTES_PER_FLOAT);
+        vertexBytes.order(ByteOrder.nativeOrder());
+        mVertexBuffer = vertexBytes.asFloatBuffer();
+        mVertexBuffer.put(coords);
+        mVertexBuffer.position(0);
+
+        if (indices != null) {
+            ByteBuffer indexBytes = ByteBuffer.allocateDirect(indices.length * BYTES_PER_SHORT);
+            indexBytes.order(ByteOrder.nativeOrder());
+            mIndexBuffer = indexBytes.asShortBuffer();
+            mIndexBuffer.put(indices);
+            mIndexBuffer.position(0);
+            mNumIndices = indices.length;
+        } else {
+            mIndexBuffer = null;
+            mNumIndices = mNumVertices;
+        }
+    }
+
+    /**
+     * Draws this triangle list using OpenGL commands.
+     *
+     * @param mvpMatrix the Model View Project matrix to draw this triangle list
+     */
+    public void draw(float[] mvpMatrix) {
+        if (mNumIndices == 0) {
+            return;
+        }
+        if (mGeneration != Gles2State.getContextGeneration()) {
+            upload();
+        }
+
+        mProgram.bind(mvpMatrix, mVboId, mColor);
+
+        if (mIndexBuffer != null) {
+            Gles2State.bindElementArrayBuffer(mIboId);
+            GLES20.glDrawElements(mMode, mNumIndices, GLES20.GL_UNSIGNED_SHORT, 0 /* offset */);
+        } else {
+            GLES20.glDrawArrays(mMode, 0, mNumVertices);
+        }
+    }
+
+    /*
+     * Uploads the vertices and indices to new buffer objects. The client-side copies are kept so
+     * this can be done again in a new context; buffers from a lost context are already gone.
+     */
+    private void upload() {
+        mGeneration = Gles2State.getContextGeneration();
+
+        mVboId = Gles2State.genBuffer();
+        Gles2State.bindArrayBuffer(mVboId);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER,
+                mNumVertices * Gles2ColoredTriangleList.VERTEX_STRIDE, mVertexBuffer,
+                GLES20.GL_STATIC_DRAW);
+
+        if (mIndexBuffer != null) {
+            mIboId = Gles2State.genBuffer();
+            Gles2State.bindElementArrayBuffer(mIboId);
+            GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, mNumIndices * BYTES_PER_SHORT,
+                    mIndexBuffer, GLES20.GL_STATIC_DRAW);
+        }
+    }
+
+    /** Deletes the buffer objects, if any. The list can still be drawn afterwards. */
+    public void release() {
+        if (mGeneration == Gles2State.getContextGeneration()) {
+            Gles2State.deleteBuffer(mVboId);
+            if (mIndexBuffer != null) {
+                Gles2State.deleteBuffer(mIboId);
+            }
+        }
+        mGeneration = -1;
+    }
+
+    public int getVertexCount() {
+        return mNumVertices;
+    }
+
+    /**
+     * Returns the number of triangles drawn, which for strips and fans is two less than the
+     * number of indices.
+     */
+    public int getTriangleCount() {
+        return mMode == GLES20.GL_TRIANGLES ? mNumIndices / 3 : Math.max(0, mNumIndices - 2);
+    }
+
+    /**
+     * Returns the index of the given corner (0, 1 or 2) of the given triangle, resolving strips
+     * and fans into separate triangles with the same winding.
+     */
+    int getTriangleVertex(int triangle, int corner) {
+        int position;
+        if (mMode == GLES20.GL_TRIANGLES) {
+            position = triangle * 3 + corner;
+        } else if (mMode == GLES20.GL_TRIANGLE_FAN) {
+            position = corner == 0 ? 0 : triangle + corner;
+        } else if (triangle % 2 == 0) {
+            position = triangle + corner;
+        } else {
+            // Odd triangles of a strip have their first two vertices swapped to keep the winding.
+            position = triangle + (corner == 0 ? 1 : corner == 1 ? 0 : 2);
+        }
+        return mIndexBuffer != null ? mIndexBuffer.get(position) & 0xffff : position;
+    }
+
+    float getX(int vertex) {
+        return mVertexBuffer.get(vertex * COORDS_PER_VERTEX);
+    }
+
+    float getY(int vertex) {
+        return mVertexBuffer.get(vertex * COORDS_PER_VERTEX + 1);
+    }
+
+    float[] getColor() {
+        return mColor;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.util;
+
+import java.util.Arrays;
+
+import android.opengl.GLES20;
+
+/**
+ * Tessellates 2D shapes into a single indexed mesh of {@link GLES20#GL_TRIANGLES}, sharing the
+ * vertices between neighboring triangles.
+ *
+ * <p>Curves are split into as few segments as keep every chord within the given screen-space
+ * tolerance of the true curve, so large, flat arcs don't get more vertices than small, tight
+ * ones need. Angles follow {@link android.graphics.Canvas#drawArc}: degrees clockwise from the
+ * positive x axis, with y pointing down.
+ */
+public class Gles2MeshBuilder {
+
+    private static final int COORDS_PER_VERTEX = Gles2ColoredTriangleList.COORDS_PER_VERTEX;
+
+    /** Fewest segments a full circle is split into, however large the tolerance. */
+    private static final int MIN_SEGMENTS_PER_CIRCLE = 8;
+
+    /** Largest distance, in pixels, between a tessellated curve and the true curve. */
+    private final float mTolerance;
+
+    private float[] mCoords = new float[64 * COORDS_PER_VERTEX];
+    private short[] mIndices = new short[64];
+    private int mNumVertices;
+    private int mNumIndices;
+
+    /**
+     * @param tolerance largest distance, in pixels, between a tessellated curve and the true
+     *                  curve; a quarter pixel is invisible on a watch screen
+     */
+    public Gles2MeshBuilder(float tolerance) {
+        if (tolerance <= 0) {
+            throw new IllegalArgumentException("tolerance must be positive");
+        }
+        mTolerance = tolerance;
+    }
+
+    /** Removes all shapes, so the builder can be reused. */
+    public void clear() {
+        mNumVertices = 0;
+        mNumIndices = 0;
+    }
+
+    /**
+     * Returns the number of segments needed for an arc of the given radius and sweep to stay
+     * within the tolerance. The largest error of a chord spanning angle a is r * (1 - cos(a / 2)).
+     */
+    public int getSegmentCount(float radius, float sweepAngle) {
+        double maxSegmentAngle;
+        if (radius <= mTolerance) {
+            maxSegmentAngle = 2 * Math.PI / MIN_SEGMENTS_PER_CIRCLE;
+        } else {
+            maxSegmentAngle = Math.min(
+                    2 * Math.acos(1 - mTolerance / radius),
+                    2 * Math.PI / MIN_SEGMENTS_PER_CIRCLE);
+        }
+        double sweep = Math.toRadians(Math.abs(sweepAngle));
+        return Math.max(1, (int) Math.ceil(sweep / maxSegmentAngle));
+    }
+
+    /**
+     * Adds a stroked arc of an oval as a band of 2n + 2 vertices, or 2n for a full circle, and
+     * 2n triangles. The stroke is approximated by offsetting both radii, which is exact for
+     * circles and close enough for thin strokes on ovals.
+     */
+    public void addStrokedArc(float centerX, float centerY, float radiusX, float radiusY,
+            float startAngle, float sweepAngle, float strokeWidth) {
+        if (sweepAngle == 0) {
+            return;
+        }
+        float outerRadiusX = radiusX + strokeWidth / 2;
+        float outerRadiusY = radiusY + strokeWidth / 2;
+        float innerRadiusX = radiusX - strokeWidth / 2;
+        float innerRadiusY = radiusY - strokeWidth / 2;
+
+        // Chords of an oval stray from it by at most as much as chords of its enclosing circle.
+        boolean closed = Math.abs(sweepAngle) >= 360;
+        int segments = getSegmentCount(Math.max(outerRadiusX, outerRadiusY), sweepAngle);
+        int rimVertices = closed ? segments : segments + 1;
+        int first = reserve(2 * rimVertices, 6 * segments);
+
+        for (int i = 0; i < rimVertices; i++) {
+            double angle = Math.toRadians(startAngle + sweepAngle * i / segments);
+            float cos = (float) Math.cos(angle);
+            float sin = (float) Math.sin(angle);
+            putVertex(centerX + innerRadiusX * cos, centerY + innerRadiusY * sin);
+            putVertex(centerX + outerRadiusX * cos, centerY + outerRadiusY * sin);
+        }
+        for (int i = 0; i < segments; i++) {
+            int inner0 = first + 2 * i;
+            int inner1 = first + 2 * ((i + 1) % rimVertices);
+            putTriangle(inner0, inner0 + 1, inner1 + 1);
+            putTriangle(inner0, inner1 + 1, inner1);
+        }
+    }
+
+    /** Adds a filled circle as a center vertex and a rim of n vertices. */
+    public void addDisk(float centerX, float centerY, float radius) {
+        int segments = getSegmentCount(radius, 360);
+        int center = reserve(segments + 1, 3 * segments);
+
+        putVertex(centerX, centerY);
+        for (int i = 0; i < segments; i++) {
+            double angle = 2 * Math.PI * i / segments;
+            putVertex(centerX + radius * (float) Math.cos(angle),
+                    centerY + radius * (float) Math.sin(angle));
+        }
+        for (int i = 0; i < segments; i++) {
+            putTriangle(center, center + 1 + i, center + 1 + (i + 1) % segments);
+        }
+    }
+
+    /**
+     * Adds a straight line segment of the given width from (x0, y0) to (x1, y1), as 4 vertices
+     * and 2 triangles.
+     */
+    public void addLine(float x0, float y0, float x1, float y1, float width) {
+        float length = (float) Math.hypot(x1 - x0, y1 - y0);
+        if (length == 0) {
+            return;
+        }
+        // Half-width offsets perpendicular to the line.
+        float dx = (y1 - y0) / length * width / 2;
+        float dy = (x0 - x1) / length * width / 2;
+        int first = reserve(4, 6);
+
+        putVertex(x0 - dx, y0 - dy);
+        putVertex(x0 + dx, y0 + dy);
+        putVertex(x1 + dx, y1 + dy);
+        putVertex(x1 - dx, y1 - dy);
+        putTriangle(first, first + 1, first + 2);
+        putTriangle(first, first + 2, first + 3);
+    }
+
+    public int getVertexCount() {
+        return mNumVertices;
+    }
+
+    public int getIndexCount() {
+        return mNumIndices;
+    }
+
+    /** Returns a copy of the x, y, z coordinates of every vertex added so far. */
+    float[] copyCoords() {
+        return Arrays.copyOf(mCoords, mNumVertices * COORDS_PER_VERTEX);
+    }
+
+    /** Returns a copy of the vertex indices, three per triangle, added so far. */
+    short[] copyIndices() {
+        return Arrays.copyOf(mIndices, mNumIndices);
+    }
+
+    /** Creates an indexed triangle list of every shape added since the last {@link #clear}. */
+    public Gles2IndexedTriangleList build(
+            Gles2ColoredTriangleList.Program program, float[] color) {
+        return new Gles2IndexedTriangleList(
+                program, GLES20.GL_TRIANGLES, copyCoords(), copyIndices(), color);
+    }
+
+    /*
+     * Makes room for the given number of vertices and indices and returns the index of the
+     * first new vertex.
+     */
+    private int reserve(int vertices, int indices) {
+        if (mNumVertices + vertices > Gles2IndexedTriangleList.MAX_VERTICES) {
+            throw new IllegalStateException("too many vertices for unsigned short indices");
+        }
+        int coords = (mNumVertices + vertices) * COORDS_PER_VERTEX;
+        if (coords > mCoords.length) {
+            mCoords = Arrays.copyOf(mCoords, Math.max(coords, 2 * mCoords.length));
+        }
+        if (mNumIndices + indices > mIndices.length) {
+            mIndices = Arrays.copyOf(
+                    mIndices, Math.max(mNumIndices + indices, 2 * mIndices.length));
+        }
+        return mNumVertices;
+    }
+
+    private void putVertex(float x, float y) {
+        int offset = mNumVertices * COORDS_PER_VERTEX;
+        mCoords[offset] = x;
+        mCoords[offset + 1] = y;
+        mCoords[offset + 2] = 0;
+        mNumVertices++;
+    }
+
+    private void putTriangle(int a, int b, int c) {
+        mIndices[mNumIndices++] = (short) a;
+        mIndices[mNumIndices++] = (short) b;
+        mIndices[mNumIndices++] = (short) c;
+    }
+}
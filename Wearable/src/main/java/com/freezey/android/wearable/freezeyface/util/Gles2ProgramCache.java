@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.AsyncTask;
+import android.util.AtomicFile;
+import android.util.Log;
+
+/**
+ * Linked OpenGL programs for the current GL context, keyed by a hash of their shader sources, so
+ * each pair of shaders is compiled at most once per context.
+ *
+ * <p>When a binary directory is set and the context supports program binaries, each newly
+ * linked program is also saved there, and a later context (after the engine is recreated or the
+ * face is switched back to) loads the binary instead of compiling the shaders. A binary is only
+ * used if it was saved by the same GL renderer and driver version; if it is corrupt or the
+ * driver still rejects it, the file is deleted and the shaders are compiled as usual.
+ *
+ * <p>Must only be used on the GL thread.
+ */
+public final class Gles2ProgramCache {
+    private static final String TAG = "Gles2ProgramCache";
+
+    /** Written at the start of every binary file, changed whenever the file layout changes. */
+    private static final int FILE_MAGIC = 0x46475031;
+
+    private static final String FILE_SUFFIX = ".bin";
+
+    /** Where program binaries are saved, by shader source key, so tests can keep them in memory. */
+    interface BinaryStore {
+        /** Returns the contents saved for the key, or null if there are none or unreadable. */
+        byte[] read(String key);
+
+        /** Saves the contents for the key, replacing any saved before. May finish later. */
+        void write(String key, byte[] contents);
+
+        /** Deletes the contents saved for the key, which turned out to be unusable. */
+        void delete(String key);
+    }
+
+    /* Keeps each binary in a file of a directory, written off the GL thread. */
+    private static final class FileBinaryStore implements BinaryStore {
+        private final File mDir;
+
+        FileBinaryStore(File dir) {
+            mDir = dir;
+        }
+
+        @Override
+        public byte[] read(String key) {
+            File file = getFile(key);
+            if (!file.exists()) {
+                return null;
+            }
+            AtomicFile atomicFile = new AtomicFile(file);
+            try {
+                return atomicFile.readFully();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to read " + file, e);
+                atomicFile.delete();
+                return null;
+            }
+        }
+
+        @Override
+        public void write(String key, final byte[] contents) {
+            final File file = getFile(key);
+            AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mDir.isDirectory() && !mDir.mkdirs()) {
+                        Log.w(TAG, "Failed to create " + mDir);
+                        return;
+                    }
+                    AtomicFile atomicFile = new AtomicFile(file);
+                    FileOutputStream stream = null;
+                    try {
+                        stream = atomicFile.startWrite();
+                        stream.write(contents);
+                        atomicFile.finishWrite(stream);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Failed to write " + file, e);
+                        if (stream != null) {
+                            atomicFile.failWrite(stream);
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void delete(String key) {
+            File file = getFile(key);
+            Log.w(TAG, "Program binary " + file + " rejected, compiling instead");
+            new AtomicFile(file).delete();
+        }
+
+        private File getFile(String key) {
+            return new File(mDir, key + FILE_SUFFIX);
+        }
+    }
+
+    /* Null when binaries aren't persisted. */
+    private static BinaryStore sBinaryStore;
+
+    /* Whether the last context set up could save and load program binaries, for dump. */
+    private static boolean sBinariesSupported;
+
+    /* For dump. */
+    private static int sCompiledCount;
+    private static int sLoadedCount;
+    private static int sRejectedCount;
+
+    /* The programs of one GL context, shared through Gles2State. */
+    private static class ContextPrograms {
+        /* Program IDs by shader source key. */
+        final Map<String, Integer> mProgramIds = new HashMap<>();
+
+        /* Whether the context can save and load program binaries, with its driver string. */
+        final boolean mBinariesSupported;
+        final String mDriver;
+
+        ContextPrograms() {
+            mBinariesSupported = queryBinariesSupported();
+            mDriver = Gles2State.gl().glGetString(GLES20.GL_RENDERER)
+                    + " " + Gles2State.gl().glGetString(GLES20.GL_VERSION);
+            sBinariesSupported = mBinariesSupported;
+        }
+    }
+
+    private Gles2ProgramCache() {}
+
+    /**
+     * Sets the directory linked program binaries are saved to and loaded from, or null to
+     * always compile. Typically a subdirectory of {@link android.content.Context#getCodeCacheDir},
+     * which the system clears when the app is updated.
+     */
+    public static void setBinaryDirectory(File dir) {
+        sBinaryStore = dir != null ? new FileBinaryStore(dir) : null;
+    }
+
+    /** Sets where binaries are saved, or null to always compile. For tests. */
+    static void setBinaryStore(BinaryStore store) {
+        sBinaryStore = store;
+    }
+
+    /**
+     * Returns the ID of a program linked from the given shaders in the current context, loading
+     * or compiling it on first use.
+     */
+    static int getProgramId(String vertexShaderCode, String fragmentShaderCode) {
+        // Dropped when the context is reset; programs from a lost context are already gone.
+        ContextPrograms programs = (ContextPrograms) Gles2State.getShared(ContextPrograms.class);
+        if (programs == null) {
+            programs = new ContextPrograms();
+            Gles2State.putShared(ContextPrograms.class, programs);
+        }
+
+        String key = getKey(vertexShaderCode, fragmentShaderCode);
+        Integer cachedId = programs.mProgramIds.get(key);
+        if (cachedId != null) {
+            return cachedId;
+        }
+
+        BinaryStore store = programs.mBinariesSupported ? sBinaryStore : null;
+        int programId = store != null ? loadBinary(store, key, programs.mDriver) : 0;
+        if (programId == 0) {
+            programId = Gles2ColoredTriangleList.createProgram(
+                    vertexShaderCode, fragmentShaderCode);
+            sCompiledCount++;
+            if (store != null && isLinked(programId)) {
+                saveBinary(programId, store, key, programs.mDriver);
+            }
+        }
+        programs.mProgramIds.put(key, programId);
+        return programId;
+    }
+
+    /** Prints how many programs were compiled and loaded from binaries in this process. */
+    public static void dump(String prefix, PrintWriter out) {
+        out.println(prefix + "GL programs: compiled=" + sCompiledCount
+                + " loaded=" + sLoadedCount
+                + " rejected=" + sRejectedCount
+                + " binaries=" + (sBinaryStore == null ? "off"
+                        : sBinariesSupported ? "on" : "unsupported"));
+    }
+
+    static int getCompiledCount() {
+        return sCompiledCount;
+    }
+
+    static int getLoadedCount() {
+        return sLoadedCount;
+    }
+
+    static int getRejectedCount() {
+        return sRejectedCount;
+    }
+
+    /*
+     * GL_OES_get_program_binary has no Java bindings, so binaries need the OpenGL ES 3.0 entry
+     * points. Android hands out the highest version compatible with the one requested, so an ES 2
+     * context usually supports them.
+     */
+    private static boolean queryBinariesSupported() {
+        String version = Gles2State.gl().glGetString(GLES20.GL_VERSION);
+        if (version == null || !version.startsWith("OpenGL ES ")
+                || version.length() <= "OpenGL ES ".length()
+                || version.charAt("OpenGL ES ".length()) < '3') {
+            return false;
+        }
+        int[] formats = new int[1];
+        Gles2State.gl().glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+        return formats[0] > 0;
+    }
+
+    private static String getKey(String vertexShaderCode, String fragmentShaderCode) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(vertexShaderCode.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(fragmentShaderCode.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device has SHA-1.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isLinked(int programId) {
+        int[] linked = new int[1];
+        Gles2State.gl().glGetProgramiv(programId, GLES20.GL_LINK_STATUS, linked, 0);
+        return linked[0] != 0;
+    }
+
+    /*
+     * Creates a program from the binary saved for key. Returns 0 if there is no usable binary,
+     * deleting it if it is corrupt or the driver rejects it.
+     */
+    private static int loadBinary(BinaryStore store, String key, String driver) {
+        byte[] contents = store.read(key);
+        if (contents == null) {
+            return 0;
+        }
+        int format;
+        byte[] binary;
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents));
+            if (in.readInt() != FILE_MAGIC || !driver.equals(in.readUTF())) {
+                // Saved by a different driver, so it will be overwritten below.
+                return 0;
+            }
+            format = in.readInt();
+            int length = in.readInt();
+            if (length <= 0 || length > in.available()) {
+                throw new IOException("Bad binary length " + length);
+            }
+            binary = new byte[length];
+            in.readFully(binary);
+        } catch (IOException e) {
+            store.delete(key);
+            sRejectedCount++;
+            return 0;
+        }
+
+        int programId = Gles2State.gl().glCreateProgram();
+        if (programId == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(binary.length);
+        buffer.order(ByteOrder.nativeOrder());
+        buffer.put(binary);
+        buffer.position(0);
+        Gles2State.gl().glProgramBinary(programId, format, buffer, binary.length);
+        if (!isLinked(programId)) {
+            Gles2State.gl().glDeleteProgram(programId);
+            store.delete(key);
+            sRejectedCount++;
+            return 0;
+        }
+        sLoadedCount++;
+        return programId;
+    }
+
+    /* Reads back a linked program's binary and saves it for key. */
+    private static void saveBinary(int programId, BinaryStore store, String key, String driver) {
+        int[] length = new int[1];
+        Gles2State.gl().glGetProgramiv(programId, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length[0]);
+        buffer.order(ByteOrder.nativeOrder());
+        int[] format = new int[1];
+        Gles2State.gl().glGetProgramBinary(programId, length[0], length, 0, format, 0, buffer);
+        if (Gles2State.gl().glGetError() != GLES20.GL_NO_ERROR || length[0] <= 0) {
+            return;
+        }
+        byte[] binary = new byte[length[0]];
+        buffer.position(0);
+        buffer.get(binary);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(binary.length + 256);
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(FILE_MAGIC);
+            out.writeUTF(driver);
+            out.writeInt(format[0]);
+            out.writeInt(binary.length);
+            out.write(binary);
+            out.flush();
+        } catch (IOException e) {
+            // Writing to memory doesn't fail.
+            throw new IllegalStateException(e);
+        }
+        store.write(key, bytes.toByteArray());
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.util;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.nio.Buffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shadow copy of the GL state shared by the programs in this package, for one GL context: the
+ * current program, the enabled vertex attribute arrays and the bound array and element array
+ * buffers. Calls that would not change the state are skipped.
+ *
+ * <p>GL state belongs to a context, and each watch face engine has its own, so each engine
+ * creates one instance and calls {@link #makeCurrent} whenever its context is current, before
+ * drawing with anything in this package. The static methods act on the current instance, the
+ * way GLES20 acts on the current context. All programs must go through them rather than
+ * calling GLES20 directly for this state.
+ *
+ * <p>When the engine's context is (re)created it calls {@link #reset}, which forgets the
+ * shadowed state and the programs shared in the context, and moves to a new context
+ * generation. Objects holding GL buffers compare the generation they were uploaded in with
+ * {@link #getContextGeneration} to know when to upload again. Generations are unique across
+ * instances, so an object never mistakes one context's buffers for another's.
+ *
+ * <p>Calls without shadowed state that a test needs to count or fake, such as a batch's uploads
+ * and draws and the compiling and loading of programs, go through {@link #gl} rather than
+ * GLES20.
+ */
+public final class Gles2State {
+
+    /**
+     * The GL calls whose state is shadowed, and the other calls tests count, so they can be
+     * counted without a device.
+     */
+    interface Gl {
+        void glUseProgram(int program);
+
+        void glBindBuffer(int target, int buffer);
+
+        void glGenBuffers(int n, int[] buffers, int offset);
+
+        void glDeleteBuffers(int n, int[] buffers, int offset);
+
+        void glEnableVertexAttribArray(int index);
+
+        void glDisableVertexAttribArray(int index);
+
+        int glGetUniformLocation(int program, String name);
+
+        int glGetAttribLocation(int program, String name);
+
+        void glUniformMatrix4fv(
+                int location, int count, boolean transpose, float[] value, int offset);
+
+        void glVertexAttribPointer(
+                int index, int size, int type, boolean normalized, int stride, int offset);
+
+        void glBufferData(int target, int size, Buffer data, int usage);
+
+        void glDrawElements(int mode, int count, int type, int offset);
+
+        String glGetString(int name);
+
+        void glGetIntegerv(int pname, int[] params, int offset);
+
+        int glGetError();
+
+        int glCreateShader(int type);
+
+        void glShaderSource(int shader, String string);
+
+        void glCompileShader(int shader);
+
+        int glCreateProgram();
+
+        void glAttachShader(int program, int shader);
+
+        void glLinkProgram(int program);
+
+        void glDeleteProgram(int program);
+
+        void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+        void glProgramBinary(int program, int binaryFormat, Buffer binary, int length);
+
+        void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset,
+                int[] binaryFormat, int binaryFormatOffset, Buffer binary);
+    }
+
+    /* Calls straight through to GLES20. */
+    private static final Gl GLES20_GL =
+            new Gl() {
+                @Override
+                public void glUseProgram(int program) {
+                    GLES20.glUseProgram(program);
+                }
+
+                @Override
+                public void glBindBuffer(int target, int buffer) {
+                    GLES20.glBindBuffer(target, buffer);
+                }
+
+                @Override
+                public void glGenBuffers(int n, int[] buffers, int offset) {
+                    GLES20.glGenBuffers(n, buffers, offset);
+                }
+
+                @Override
+                public void glDeleteBuffers(int n, int[] buffers, int offset) {
+                    GLES20.glDeleteBuffers(n, buffers, offset);
+                }
+
+                @Override
+                public void glEnableVertexAttribArray(int index) {
+                    GLES20.glEnableVertexAttribArray(index);
+                }
+
+                @Override
+                public void glDisableVertexAttribArray(int index) {
+                    GLES20.glDisableVertexAttribArray(index);
+                }
+
+                @Override
+                public int glGetUniformLocation(int program, String name) {
+                    return GLES20.glGetUniformLocation(program, name);
+                }
+
+                @Override
+                public int glGetAttribLocation(int program, String name) {
+                    return GLES20.glGetAttribLocation(program, name);
+                }
+
+                @Override
+                public void glUniformMatrix4fv(
+                        int location, int count, boolean transpose, float[] value, int offset) {
+                    GLES20.glUniformMatrix4fv(location, count, transpose, value, offset);
+                }
+
+                @Override
+                public void glVertexAttribPointer(
+                        int index, int size, int type, boolean normalized, int stride,
+                        int offset) {
+                    GLES20.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+                }
+
+                @Override
+                public void glBufferData(int target, int size, Buffer data, int usage) {
+                    GLES20.glBufferData(target, size, data, usage);
+                }
+
+                @Override
+                public void glDrawElements(int mode, int count, int type, int offset) {
+                    GLES20.glDrawElements(mode, count, type, offset);
+                }
+
+                @Override
+                public String glGetString(int name) {
+                    return GLES20.glGetString(name);
+                }
+
+                @Override
+                public void glGetIntegerv(int pname, int[] params, int offset) {
+                    GLES20.glGetIntegerv(pname, params, offset);
+                }
+
+                @Override
+                public int glGetError() {
+                    return GLES20.glGetError();
+                }
+
+                @Override
+                public int glCreateShader(int type) {
+                    return GLES20.glCreateShader(type);
+                }
+
+                @Override
+                public void glShaderSource(int shader, String string) {
+                    GLES20.glShaderSource(shader, string);
+                }
+
+                @Override
+                public void glCompileShader(int shader) {
+                    GLES20.glCompileShader(shader);
+                }
+
+                @Override
+                public int glCreateProgram() {
+                    return GLES20.glCreateProgram();
+                }
+
+                @Override
+                public void glAttachShader(int program, int shader) {
+                    GLES20.glAttachShader(program, shader);
+                }
+
+                @Override
+                public void glLinkProgram(int program) {
+                    GLES20.glLinkProgram(program);
+                }
+
+                @Override
+                public void glDeleteProgram(int program) {
+                    GLES20.glDeleteProgram(program);
+                }
+
+                @Override
+                public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+                    GLES20.glGetProgramiv(program, pname, params, offset);
+                }
+
+                @Override
+                public void glProgramBinary(
+                        int program, int binaryFormat, Buffer binary, int length) {
+                    GLES30.glProgramBinary(program, binaryFormat, binary, length);
+                }
+
+                @Override
+                public void glGetProgramBinary(int program, int bufSize, int[] length,
+                        int lengthOffset, int[] binaryFormat, int binaryFormatOffset,
+                        Buffer binary) {
+                    GLES30.glGetProgramBinary(program, bufSize, length, lengthOffset,
+                            binaryFormat, binaryFormatOffset, binary);
+                }
+            };
+
+    private static Gles2State sCurrent;
+
+    /* Last generation handed out by any instance. */
+    private static int sLastGeneration;
+
+    private final Gl mGl;
+
+    private int mContextGeneration;
+
+    /* Programs are never 0, so 0 means no program has been used in this context yet. */
+    private int mCurrentProgramId;
+
+    /* Bit i is set when vertex attribute array i is enabled. */
+    private int mEnabledAttribs;
+
+    /* 0 means client-side vertex arrays are in use. */
+    private int mArrayBufferId;
+    private int mElementArrayBufferId;
+
+    /* Objects shared by everything drawn in this context, such as programs, by key. */
+    private final Map<Object, Object> mShared = new HashMap<>();
+
+    private final int[] mBufferIds = new int[1];
+
+    public Gles2State() {
+        this(GLES20_GL);
+    }
+
+    Gles2State(Gl gl) {
+        mGl = gl;
+        mContextGeneration = ++sLastGeneration;
+    }
+
+    /**
+     * Makes this the state the static methods act on. Call whenever this instance's GL context
+     * was made current, at the start of every GL callback.
+     */
+    public void makeCurrent() {
+        sCurrent = this;
+    }
+
+    /**
+     * Forgets the shadowed state and the shared objects, and moves to a new context generation
+     * so every buffer is uploaded again. Call when the GL context was created, including after
+     * a lost context: the new context may reuse the old one's handle and object IDs, so none of
+     * the old IDs may be used or deleted.
+     */
+    public void reset() {
+        mContextGeneration = ++sLastGeneration;
+        mCurrentProgramId = 0;
+        mEnabledAttribs = 0;
+        mArrayBufferId = 0;
+        mElementArrayBufferId = 0;
+        mShared.clear();
+    }
+
+    private static Gles2State current() {
+        if (sCurrent == null) {
+            throw new IllegalStateException("No current Gles2State, call makeCurrent() first");
+        }
+        return sCurrent;
+    }
+
+    /** Returns the GL calls of the current context, for calls whose state isn't shadowed. */
+    static Gl gl() {
+        return current().mGl;
+    }
+
+    /** Returns the generation of the current context, which changes on every {@link #reset}. */
+    static int getContextGeneration() {
+        return current().mContextGeneration;
+    }
+
+    /** Returns the object shared in the current context under key, or null if there is none. */
+    static Object getShared(Object key) {
+        return current().mShared.get(key);
+    }
+
+    /** Shares value in the current context under key, until the context is reset. */
+    static void putShared(Object key, Object value) {
+        current().mShared.put(key, value);
+    }
+
+    static void useProgram(int programId) {
+        Gles2State state = current();
+        if (state.mCurrentProgramId != programId) {
+            state.mCurrentProgramId = programId;
+            state.mGl.glUseProgram(programId);
+        }
+    }
+
+    static void bindArrayBuffer(int bufferId) {
+        Gles2State state = current();
+        if (state.mArrayBufferId != bufferId) {
+            state.mArrayBufferId = bufferId;
+            state.mGl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, bufferId);
+        }
+    }
+
+    static void bindElementArrayBuffer(int bufferId) {
+        Gles2State state = current();
+        if (state.mElementArrayBufferId != bufferId) {
+            state.mElementArrayBufferId = bufferId;
+            state.mGl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, bufferId);
+        }
+    }
+
+    /** Creates a new buffer object in the current context. */
+    static int genBuffer() {
+        Gles2State state = current();
+        state.mBufferIds[0] = 0;
+        state.mGl.glGenBuffers(1, state.mBufferIds, 0);
+        if (state.mBufferIds[0] == 0) {
+            throw new IllegalStateException("glGenBuffers failed");
+        }
+        return state.mBufferIds[0];
+    }
+
+    /** Deletes a buffer object, unbinding it first if it is bound. */
+    static void deleteBuffer(int bufferId) {
+        Gles2State state = current();
+        if (state.mArrayBufferId == bufferId) {
+            state.mArrayBufferId = 0;
+        }
+        if (state.mElementArrayBufferId == bufferId) {
+            state.mElementArrayBufferId = 0;
+        }
+        state.mBufferIds[0] = bufferId;
+        state.mGl.glDeleteBuffers(1, state.mBufferIds, 0);
+    }
+
+    static void enableVertexAttribArray(int index) {
+        Gles2State state = current();
+        int bit = 1 << index;
+        if ((state.mEnabledAttribs & bit) == 0) {
+            state.mEnabledAttribs |= bit;
+            state.mGl.glEnableVertexAttribArray(index);
+        }
+    }
+
+    static void disableVertexAttribArray(int index) {
+        Gles2State state = current();
+        int bit = 1 << index;
+        if ((state.mEnabledAttribs & bit) != 0) {
+            state.mEnabledAttribs &= ~bit;
+            state.mGl.glDisableVertexAttribArray(index);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.util;
+
+import java.nio.Buffer;
+
+import android.opengl.GLES20;
+
+/**
+ * A small ring of vertex buffer objects for geometry that is rebuilt every frame.
+ *
+ * <p>Each upload goes to the next buffer in the ring with {@link GLES20#GL_STREAM_DRAW}, so the
+ * driver never has to wait for the GPU to finish reading a buffer from a previous frame before
+ * overwriting it. Buffers are created lazily, and created again after the GL context is lost.
+ */
+public class Gles2StreamBuffer {
+
+    /** Number of buffers in the ring; covers the frames the GPU may still be working on. */
+    private static final int RING_SIZE = 3;
+
+    private final int[] mBufferIds = new int[RING_SIZE];
+
+    private int mNext;
+
+    /* Context generation the buffers were created in, see Gles2State. */
+    private int mGeneration = -1;
+
+    /**
+     * Uploads the first size bytes of data to the next buffer in the ring and leaves it bound to
+     * {@link GLES20#GL_ARRAY_BUFFER}.
+     *
+     * @return ID of the buffer the data was uploaded to
+     */
+    public int upload(Buffer data, int size) {
+        if (mGeneration != Gles2State.getContextGeneration()) {
+            // Buffers from a lost context are already gone, so there is nothing to delete.
+            mGeneration = Gles2State.getContextGeneration();
+            for (int i = 0; i < RING_SIZE; i++) {
+                mBufferIds[i] = Gles2State.genBuffer();
+            }
+            mNext = 0;
+        }
+
+        int bufferId = mBufferIds[mNext];
+        mNext = (mNext + 1) % RING_SIZE;
+
+        data.position(0);
+        Gles2State.bindArrayBuffer(bufferId);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, size, data, GLES20.GL_STREAM_DRAW);
+        return bufferId;
+    }
+
+    /** Deletes the buffers, if they were created in the current context. */
+    public void release() {
+        if (mGeneration == Gles2State.getContextGeneration()) {
+            for (int i = 0; i < RING_SIZE; i++) {
+                Gles2State.deleteBuffer(mBufferIds[i]);
+            }
+        }
+        mGeneration = -1;
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+/**
+ * A list of textured quads drawn from a single texture, tinted with a solid color, using
+ * OpenGL ES 2.0. Only the texture's alpha channel is used, which makes it suitable for drawing
+ * text from a glyph atlas.
+ *
+ * <p>Quads are added with {@link #addQuad} and kept in a client-side buffer that is reused, so
+ * rebuilding the list every frame does not allocate. Lists rebuilt every frame can be created
+ * with a {@link Gles2StreamBuffer}, which each draw uploads the quads to.
+ */
+public class Gles2TexturedQuadList {
+
+    /** Number of coordinates per vertex: x, y and z, followed by u and v texture coordinates. */
+    private static final int COORDS_PER_VERTEX = 3;
+    private static final int TEX_COORDS_PER_VERTEX = 2;
+    private static final int FLOATS_PER_VERTEX = COORDS_PER_VERTEX + TEX_COORDS_PER_VERTEX;
+
+    /** Number of bytes per vertex. */
+    private static final int VERTEX_STRIDE =
+            FLOATS_PER_VERTEX * Gles2ColoredTriangleList.BYTES_PER_FLOAT;
+
+    /** Quads are drawn as two triangles. */
+    private static final int VERTICES_PER_QUAD = 6;
+
+    /** Shaders to render this quad list. */
+    private final Program mProgram;
+
+    /** Interleaved positions and texture coordinates of the quads. */
+    private final FloatBuffer mVertexBuffer;
+
+    /** Maximum number of quads this list can hold. */
+    private final int mMaxQuads;
+
+    /** Number of quads currently in this list. */
+    private int mNumQuads;
+
+    /** Ring of vertex buffer objects the quads are uploaded to when drawn, or null. */
+    private final Gles2StreamBuffer mStreamBuffer;
+
+    /**
+     * Creates an empty Gles2TexturedQuadList.
+     *
+     * @param program program for drawing textured quads
+     * @param maxQuads maximum number of quads the list can hold
+     */
+    public Gles2TexturedQuadList(Program program, int maxQuads) {
+        this(program, maxQuads, false /* useVbo */);
+    }
+
+    /**
+     * Creates an empty Gles2TexturedQuadList.
+     *
+     * @param program program for drawing textured quads
+     * @param maxQuads maximum number of quads the list can hold
+     * @param useVbo whether to upload the quads to a ring of vertex buffer objects with
+     *               {@link GLES20#GL_STREAM_DRAW} on each draw. Call {@link #release} when the
+     *               list is no longer needed.
+     */
+    public Gles2TexturedQuadList(Program program, int maxQuads, boolean useVbo) {
+        mProgram = program;
+        mStreamBuffer = useVbo ? new Gles2StreamBuffer() : null;
+        mMaxQuads = maxQuads;
+
+        ByteBuffer bb = ByteBuffer.allocateDirect(maxQuads * VERTICES_PER_QUAD * VERTEX_STRIDE);
+
+        // Use the device hardware's native byte order.
+        bb.order(ByteOrder.nativeOrder());
+
+        mVertexBuffer = bb.asFloatBuffer();
+    }
+
+    /** Removes all quads from this list. */
+    public void clear() {
+        mNumQuads = 0;
+        mVertexBuffer.clear();
+    }
+
+    /**
+     * Adds an axis aligned quad.
+     *
+     * @param left, top, right, bottom position of the quad in model coordinates
+     * @param u0, v0, u1, v1 texture coordinates of the top left and bottom right corners
+     */
+    public void addQuad(float left, float top, float right, float bottom,
+            float u0, float v0, float u1, float v1) {
+        if (mNumQuads == mMaxQuads) {
+            throw new IllegalStateException("quad list is full");
+        }
+        mVertexBuffer.position(mNumQuads * VERTICES_PER_QUAD * FLOATS_PER_VERTEX);
+
+        // First triangle: top left, bottom left, bottom right.
+        putVertex(left, top, u0, v0);
+        putVertex(left, bottom, u0, v1);
+        putVertex(right, bottom, u1, v1);
+
+        // Second triangle: top left, bottom right, top right.
+        putVertex(left, top, u0, v0);
+        putVertex(right, bottom, u1, v1);
+        putVertex(right, top, u1, v0);
+
+        mNumQuads++;
+    }
+
+    private void putVertex(float x, float y, float u, float v) {
+        mVertexBuffer.put(x);
+        mVertexBuffer.put(y);
+        mVertexBuffer.put(0f);
+        mVertexBuffer.put(u);
+        mVertexBuffer.put(v);
+    }
+
+    /**
+     * Draws this quad list using OpenGL commands.
+     *
+     * @param mvpMatrix the Model View Project matrix to draw this quad list
+     * @param textureId texture to sample, as returned by {@link #loadTexture}
+     * @param color tint in RGBA order, each in the range [0, 1]
+     */
+    public void draw(float[] mvpMatrix, int textureId, float[] color) {
+        if (mNumQuads == 0) {
+            return;
+        }
+        mVertexBuffer.position(0);
+        if (mStreamBuffer != null) {
+            int vboId = mStreamBuffer.upload(
+                    mVertexBuffer, mNumQuads * VERTICES_PER_QUAD * VERTEX_STRIDE);
+            mProgram.bind(mvpMatrix, vboId, textureId, color);
+        } else {
+            mProgram.bind(mvpMatrix, mVertexBuffer, textureId, color);
+        }
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, mNumQuads * VERTICES_PER_QUAD);
+
+        mProgram.unbind();
+    }
+
+    /** Deletes the vertex buffer objects, if any. The list can still be drawn afterwards. */
+    public void release() {
+        if (mStreamBuffer != null) {
+            mStreamBuffer.release();
+        }
+    }
+
+    /**
+     * Uploads a bitmap to a new texture with linear filtering and edge clamping.
+     *
+     * @return ID of the texture
+     */
+    public static int loadTexture(Bitmap bitmap) {
+        int[] textureIds = new int[1];
+        GLES20.glGenTextures(1, textureIds, 0);
+        if (textureIds[0] == 0) {
+            throw new IllegalStateException("glGenTextures failed");
+        }
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureIds[0]);
+        GLES20.glTexParameteri(
+                GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(
+                GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(
+                GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(
+                GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+
+        return textureIds[0];
+    }
+
+    /** Deletes a texture created with {@link #loadTexture}. */
+    public static void deleteTexture(int textureId) {
+        GLES20.glDeleteTextures(1, new int[] {textureId}, 0);
+    }
+
+    /** OpenGL shaders for drawing tinted, textured quads. */
+    public static class Program {
+        /** Vertex shader that transforms the input vertex and passes on its texture coordinate. */
+        private static final String VERTEX_SHADER_CODE = "" +
+                "uniform mat4 uMvpMatrix;\n" +
+                "attribute vec4 aPosition;\n" +
+                "attribute vec2 aTexCoord;\n" +
+                "varying vec2 vTexCoord;\n" +
+                "void main() {\n" +
+                "    gl_Position = uMvpMatrix * aPosition;\n" +
+                "    vTexCoord = aTexCoord;\n" +
+                "}\n";
+
+        /** Fragment shader that draws the tint color with the texture's alpha. */
+        private static final String FRAGMENT_SHADER_CODE = "" +
+                "precision mediump float;\n" +
+                "uniform sampler2D uTexture;\n" +
+                "uniform vec4 uColor;\n" +
+                "varying vec2 vTexCoord;\n" +
+                "void main() {\n" +
+                "    gl_FragColor = vec4(uColor.rgb,\n" +
+                "            uColor.a * texture2D(uTexture, vTexCoord).a);\n" +
+                "}\n";
+
+        /** ID OpenGL uses to identify this program. */
+        private final int mProgramId;
+
+        /** Handle for uMvpMatrix uniform in vertex shader. */
+        private final int mMvpMatrixHandle;
+
+        /** Handle for aPosition attribute in vertex shader. */
+        private final int mPositionHandle;
+
+        /** Handle for aTexCoord attribute in vertex shader. */
+        private final int mTexCoordHandle;
+
+        /** Handle for uTexture uniform in fragment shader. */
+        private final int mTextureHandle;
+
+        /** Handle for uColor uniform in fragment shader. */
+        private final int mColorHandle;
+
+        /** Uniform values last sent to this program, to skip redundant uploads. */
+        private final float[] mBoundMvpMatrix = new float[16];
+        private boolean mMvpMatrixBound;
+        private final float[] mBoundColor = new float[4];
+        private boolean mColorBound;
+
+        /**
+         * Returns the program to draw textured quads in the current GL context, shared by all
+         * quad lists being drawn.
+         */
+        public static Program getInstance() {
+            Program program = (Program) Gles2State.getShared(Program.class);
+            if (program == null) {
+                program = new Program();
+                Gles2State.putShared(Program.class, program);
+            }
+            return program;
+        }
+
+        private Program() {
+            mProgramId = Gles2ProgramCache.getProgramId(VERTEX_SHADER_CODE, FRAGMENT_SHADER_CODE);
+
+            mMvpMatrixHandle = GLES20.glGetUniformLocation(mProgramId, "uMvpMatrix");
+            mPositionHandle = GLES20.glGetAttribLocation(mProgramId, "aPosition");
+            mTexCoordHandle = GLES20.glGetAttribLocation(mProgramId, "aTexCoord");
+            mTextureHandle = GLES20.glGetUniformLocation(mProgramId, "uTexture");
+            mColorHandle = GLES20.glGetUniformLocation(mProgramId, "uColor");
+        }
+
+        /**
+         * Tells OpenGL to use this program. Call this method before drawing a sequence of
+         * quad lists.
+         */
+        public void use() {
+            Gles2State.useProgram(mProgramId);
+        }
+
+        /**
+         * Sends the given MVP matrix, vertex data, texture and color to OpenGL. The matrix and
+         * color are only sent if they differ from the ones last sent to this program.
+         */
+        public void bind(float[] mvpMatrix, FloatBuffer vertexBuffer, int textureId,
+                float[] color) {
+            bindUniforms(mvpMatrix, textureId, color);
+
+            // Positions and texture coordinates are interleaved in the same buffer.
+            Gles2State.bindArrayBuffer(0);
+            vertexBuffer.position(0);
+            Gles2State.enableVertexAttribArray(mPositionHandle);
+            GLES20.glVertexAttribPointer(mPositionHandle, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
+                    false /* normalized */, VERTEX_STRIDE, vertexBuffer);
+            vertexBuffer.position(COORDS_PER_VERTEX);
+            Gles2State.enableVertexAttribArray(mTexCoordHandle);
+            GLES20.glVertexAttribPointer(mTexCoordHandle, TEX_COORDS_PER_VERTEX, GLES20.GL_FLOAT,
+                    false /* normalized */, VERTEX_STRIDE, vertexBuffer);
+            vertexBuffer.position(0);
+        }
+
+        /**
+         * Sends the given MVP matrix, vertex buffer object, texture and color to OpenGL. The
+         * matrix and color are only sent if they differ from the ones last sent to this program.
+         */
+        public void bind(float[] mvpMatrix, int vboId, int textureId, float[] color) {
+            bindUniforms(mvpMatrix, textureId, color);
+
+            Gles2State.bindArrayBuffer(vboId);
+            Gles2State.enableVertexAttribArray(mPositionHandle);
+            GLES20.glVertexAttribPointer(mPositionHandle, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
+                    false /* normalized */, VERTEX_STRIDE, 0 /* offset */);
+            Gles2State.enableVertexAttribArray(mTexCoordHandle);
+            GLES20.glVertexAttribPointer(mTexCoordHandle, TEX_COORDS_PER_VERTEX, GLES20.GL_FLOAT,
+                    false /* normalized */, VERTEX_STRIDE,
+                    COORDS_PER_VERTEX * Gles2ColoredTriangleList.BYTES_PER_FLOAT);
+        }
+
+        private void bindUniforms(float[] mvpMatrix, int textureId, float[] color) {
+            if (!mMvpMatrixBound || !Arrays.equals(mvpMatrix, mBoundMvpMatrix)) {
+                GLES20.glUniformMatrix4fv(mMvpMatrixHandle, 1 /* count */, false /* transpose */,
+                        mvpMatrix, 0 /* offset */);
+                System.arraycopy(mvpMatrix, 0, mBoundMvpMatrix, 0, mBoundMvpMatrix.length);
+                mMvpMatrixBound = true;
+            }
+
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+            GLES20.glUniform1i(mTextureHandle, 0);
+
+            if (!mColorBound || !Arrays.equals(color, mBoundColor)) {
+                GLES20.glUniform4fv(mColorHandle, 1 /* count */, color, 0 /* offset */);
+                System.arraycopy(color, 0, mBoundColor, 0, mBoundColor.length);
+                mColorBound = true;
+            }
+        }
+
+        /**
+         * Disables the texture coordinate attribute, so programs that don't use it can be
+         * drawn afterwards.
+         */
+        public void unbind() {
+            Gles2State.disableVertexAttribArray(mTexCoordHandle);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.RectF;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws the watch face's own elements in ambient mode: the date ring, the time readout with a
+ * steady colon, the battery arcs and the unread indicator.
+ *
+ * <p>They are rendered in a single color into an {@link Bitmap.Config#ALPHA_8} layer, at most
+ * once a minute or when the battery or unread state changes, and each ambient frame only blits
+ * the layer in white. The next minute's layer can be rendered ahead of time into a spare bitmap
+ * with {@link #prerender}; if nothing it depends on changed by the next tick, {@link #update}
+ * just swaps it in. Rendering reads cached state only: the date ring's labels are formatted
+ * once a day by {@link DateRingCache}, digits are laid out by {@link DigitGlyphAtlas}, and the
+ * battery level comes from {@link BatteryState}, so a tick does no formatting and no IPC.
+ *
+ * <p>On low-bit screens nothing is anti-aliased, so every layer pixel is fully on or off. With
+ * burn-in protection the digits are drawn as outlines, the arcs thin, and the whole frame is
+ * shifted by a few pixels each minute so no pixel stays lit for long. The same outline style
+ * can be forced with {@link #setReducedStyle} to light fewer pixels.
+ *
+ * <p>Paints and layers come from a {@link Graphics}, so rendering can be checked in a JVM test
+ * without bitmaps.
+ */
+class AmbientRenderer {
+
+    /** Creates the paints and layer bitmaps the renderer draws with. */
+    interface Graphics {
+        Paint createPaint();
+
+        /** Returns a single channel bitmap to render a layer into. */
+        Bitmap createLayerBitmap(int width, int height);
+
+        Canvas createLayerCanvas(Bitmap bitmap);
+    }
+
+    /** The platform's paints and {@link Bitmap.Config#ALPHA_8} bitmaps. */
+    static final Graphics PLATFORM_GRAPHICS =
+            new Graphics() {
+                @Override
+                public Paint createPaint() {
+                    return new Paint();
+                }
+
+                @Override
+                public Bitmap createLayerBitmap(int width, int height) {
+                    return Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+                }
+
+                @Override
+                public Canvas createLayerCanvas(Bitmap bitmap) {
+                    return new Canvas(bitmap);
+                }
+            };
+
+    /** Largest shift of the frame from its position, in pixels, with burn-in protection. */
+    private static final int BURN_IN_SHIFT = 4;
+
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /* Shifts cycled through once per minute, a ring around the unshifted position. */
+    private static final int[] BURN_IN_SHIFTS_X = {0, 1, 1, 0, -1, -1, -1, 0, 1};
+    private static final int[] BURN_IN_SHIFTS_Y = {0, 0, 1, 1, 1, 0, -1, -1, -1};
+
+    private static final float ARC_STROKE_WIDTH = 5f;
+    private static final float OUTLINE_STROKE_WIDTH = 2f;
+    private static final float BATTERY_CHARGING_MARKER_RADIUS = 4f;
+
+    private final Graphics mGraphics;
+
+    private final Paint mDigitPaint;
+    private final Paint mDatePaint;
+    private final Paint mLevelArcPaint;
+    private final Paint mUsedArcPaint;
+    private final Paint mLayerPaint;
+
+    private final FaceRenderer mFaceRenderer;
+
+    /* The layer blitted by draw(), and the one prerender() renders ahead into. */
+    private Layer mLayer = new Layer();
+    private Layer mStagedLayer = new Layer();
+
+    private float mCenterX;
+    private float mCenterY;
+    private float mHeight;
+
+    private boolean mLowBitAmbient;
+    private boolean mBurnInProtection;
+    private boolean mMuted;
+    private boolean mReducedStyle;
+
+    private int mShiftX;
+    private int mShiftY;
+
+    /* Layers rendered on a tick, ahead of one, and swapped in, reported through dumpsys. */
+    private long mLayerRenderCount;
+    private long mPrerenderCount;
+    private long mStagedSwapCount;
+    private long mFrameCount;
+
+    AmbientRenderer(float digitTextSize, float dateTextSize) {
+        this(digitTextSize, dateTextSize, PLATFORM_GRAPHICS);
+    }
+
+    AmbientRenderer(float digitTextSize, float dateTextSize, Graphics graphics) {
+        mGraphics = graphics;
+        mDigitPaint = graphics.createPaint();
+        mDatePaint = graphics.createPaint();
+        mLevelArcPaint = graphics.createPaint();
+        mUsedArcPaint = graphics.createPaint();
+        mLayerPaint = graphics.createPaint();
+        mFaceRenderer = new FaceRenderer(
+                mDigitPaint,
+                mLevelArcPaint,
+                mUsedArcPaint,
+                mUsedArcPaint,
+                BATTERY_CHARGING_MARKER_RADIUS);
+
+        mDigitPaint.setColor(Color.WHITE);
+        mDigitPaint.setTextSize(digitTextSize);
+        mDigitPaint.setStrokeWidth(OUTLINE_STROKE_WIDTH);
+
+        mDatePaint.setColor(Color.WHITE);
+        mDatePaint.setTextSize(dateTextSize);
+
+        mLevelArcPaint.setColor(Color.WHITE);
+        mLevelArcPaint.setStyle(Paint.Style.STROKE);
+        mLevelArcPaint.setStrokeCap(Paint.Cap.ROUND);
+
+        mUsedArcPaint.setColor(Color.WHITE);
+        mUsedArcPaint.setStyle(Paint.Style.STROKE);
+        mUsedArcPaint.setStrokeWidth(1f);
+
+        mLayerPaint.setColor(Color.WHITE);
+        mLayerPaint.setFilterBitmap(false);
+
+        updatePaints();
+    }
+
+    /** Allocates the layers for a new surface. The arc bounds are copied. */
+    void setSurfaceSize(int width, int height, RectF batteryArcBounds) {
+        mLayer.allocate(mGraphics, width, height);
+        mStagedLayer.allocate(mGraphics, width, height);
+        mCenterX = width / 2f;
+        mCenterY = height / 2f;
+        mHeight = height;
+        mFaceRenderer.setGeometry(mCenterX, mCenterY, new RectF(batteryArcBounds));
+    }
+
+    /** Sets the screen's capabilities, from PROPERTY_LOW_BIT_AMBIENT and the like. */
+    void setDeviceProperties(boolean lowBitAmbient, boolean burnInProtection) {
+        mLowBitAmbient = lowBitAmbient;
+        mBurnInProtection = burnInProtection;
+        updatePaints();
+        invalidate();
+    }
+
+    /** Sets whether to draw outline digits and thin arcs even without burn-in protection. */
+    void setReducedStyle(boolean reducedStyle) {
+        if (mReducedStyle == reducedStyle) {
+            return;
+        }
+        mReducedStyle = reducedStyle;
+        updatePaints();
+        invalidate();
+    }
+
+    /** Dims the frame in mute mode. Low-bit screens can't dim, so it has no effect there. */
+    void setMuted(boolean muted) {
+        mMuted = muted;
+        updatePaints();
+    }
+
+    /**
+     * Forces the layer to be rendered again by the next {@link #update} and drops any staged
+     * layer, e.g. after a time zone change.
+     */
+    void invalidate() {
+        mLayer.mValid = false;
+        mStagedLayer.mValid = false;
+    }
+
+    /**
+     * Renders the layer if its minute or any of its inputs changed since the last call, and
+     * picks this minute's burn-in shift.
+     *
+     * @param calendar set to now; only its fields are read
+     * @param batteryState read for its cached level, never registered here
+     */
+    void update(
+            Calendar calendar,
+            long now,
+            DateRingCache dateRingCache,
+            BatteryState batteryState,
+            boolean unread) {
+        mFrameCount++;
+        int batteryLevel = batteryState.getLevelPercent();
+        boolean charging = batteryState.isCharging();
+        int minuteOfDay = calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE);
+
+        if (mBurnInProtection) {
+            mShiftX = getBurnInShiftX(minuteOfDay);
+            mShiftY = getBurnInShiftY(minuteOfDay);
+        } else {
+            mShiftX = 0;
+            mShiftY = 0;
+        }
+
+        long minute = now / MINUTE_MS;
+        if (mLayer.matches(minute, batteryLevel, charging, unread)) {
+            return;
+        }
+        if (mStagedLayer.matches(minute, batteryLevel, charging, unread)) {
+            Layer layer = mLayer;
+            mLayer = mStagedLayer;
+            mStagedLayer = layer;
+            mStagedLayer.mValid = false;
+            mStagedSwapCount++;
+            return;
+        }
+        if (render(mLayer, calendar, now, dateRingCache, batteryLevel, charging, unread)) {
+            mLayerRenderCount++;
+        }
+    }
+
+    /**
+     * Renders the layer for a later minute into the spare bitmap, unless it is already staged.
+     * Meant for idle time after a tick, with the inputs expected to still hold at that minute.
+     *
+     * @param calendar set to the start of the minute to render; only its fields are read
+     * @return whether anything was rendered
+     */
+    boolean prerender(
+            Calendar calendar,
+            long time,
+            DateRingCache dateRingCache,
+            BatteryState batteryState,
+            boolean unread) {
+        int batteryLevel = batteryState.getLevelPercent();
+        boolean charging = batteryState.isCharging();
+        if (mStagedLayer.matches(time / MINUTE_MS, batteryLevel, charging, unread)) {
+            return false;
+        }
+        if (!render(mStagedLayer, calendar, time, dateRingCache, batteryLevel, charging, unread)) {
+            return false;
+        }
+        mPrerenderCount++;
+        return true;
+    }
+
+    /**
+     * Returns the horizontal shift of a frame with burn-in protection at the given minute of the
+     * day, in pixels. Shared with the GL face, so both move through the same positions.
+     */
+    static int getBurnInShiftX(int minuteOfDay) {
+        return BURN_IN_SHIFTS_X[minuteOfDay % BURN_IN_SHIFTS_X.length] * BURN_IN_SHIFT;
+    }
+
+    /** Returns the vertical counterpart of {@link #getBurnInShiftX}. */
+    static int getBurnInShiftY(int minuteOfDay) {
+        return BURN_IN_SHIFTS_Y[minuteOfDay % BURN_IN_SHIFTS_Y.length] * BURN_IN_SHIFT;
+    }
+
+    /** Returns the horizontal burn-in shift picked by the last {@link #update}. */
+    int getShiftX() {
+        return mShiftX;
+    }
+
+    /** Returns the vertical burn-in shift picked by the last {@link #update}. */
+    int getShiftY() {
+        return mShiftY;
+    }
+
+    /** Blits the layer at the current burn-in shift. */
+    void draw(Canvas canvas) {
+        if (mLayer.mBitmap != null) {
+            canvas.drawBitmap(mLayer.mBitmap, mShiftX, mShiftY, mLayerPaint);
+        }
+    }
+
+    long getLayerRenderCount() {
+        return mLayerRenderCount;
+    }
+
+    long getPrerenderCount() {
+        return mPrerenderCount;
+    }
+
+    long getStagedSwapCount() {
+        return mStagedSwapCount;
+    }
+
+    long getFrameCount() {
+        return mFrameCount;
+    }
+
+    void recycle() {
+        mLayer.recycle();
+        mStagedLayer.recycle();
+    }
+
+    private void updatePaints() {
+        boolean antiAlias = !mLowBitAmbient;
+        mDigitPaint.setAntiAlias(antiAlias);
+        mDatePaint.setAntiAlias(antiAlias);
+        mLevelArcPaint.setAntiAlias(antiAlias);
+        mUsedArcPaint.setAntiAlias(antiAlias);
+
+        boolean outline = mBurnInProtection || mReducedStyle;
+        mDigitPaint.setStyle(outline ? Paint.Style.STROKE : Paint.Style.FILL);
+        mLevelArcPaint.setStrokeWidth(outline ? OUTLINE_STROKE_WIDTH : ARC_STROKE_WIDTH);
+
+        mLayerPaint.setAlpha(mMuted && !mLowBitAmbient ? 100 : 255);
+    }
+
+    /* Renders everything into the given layer and records what it was rendered for. */
+    private boolean render(
+            Layer layer,
+            Calendar calendar,
+            long time,
+            DateRingCache dateRingCache,
+            int batteryLevel,
+            boolean charging,
+            boolean unread) {
+        Canvas canvas = layer.mCanvas;
+        if (canvas == null) {
+            return false;
+        }
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        dateRingCache.draw(canvas, time, mCenterX, mCenterY, mDatePaint);
+        // The colon doesn't blink in ambient mode.
+        mFaceRenderer.drawTimeReadout(canvas, calendar, true);
+        mFaceRenderer.drawBatteryIndicator(canvas, batteryLevel, charging);
+        if (unread) {
+            // Only the ring, a filled dot would stay lit all the time.
+            canvas.drawCircle(mCenterX, mHeight - 40, 10, mUsedArcPaint);
+        }
+
+        layer.mValid = true;
+        layer.mMinute = time / MINUTE_MS;
+        layer.mBatteryLevel = batteryLevel;
+        layer.mCharging = charging;
+        layer.mUnread = unread;
+        return true;
+    }
+
+    /* A layer bitmap and the inputs it was last rendered for. */
+    private static final class Layer {
+        Bitmap mBitmap;
+        Canvas mCanvas;
+
+        boolean mValid;
+        long mMinute;
+        int mBatteryLevel;
+        boolean mCharging;
+        boolean mUnread;
+
+        void allocate(Graphics graphics, int width, int height) {
+            recycle();
+            mBitmap = graphics.createLayerBitmap(width, height);
+            mCanvas = graphics.createLayerCanvas(mBitmap);
+        }
+
+        boolean matches(long minute, int batteryLevel, boolean charging, boolean unread) {
+            return mValid
+                    && minute == mMinute
+                    && batteryLevel == mBatteryLevel
+                    && charging == mCharging
+                    && unread == mUnread;
+        }
+
+        void recycle() {
+            if (mBitmap != null) {
+                mBitmap.recycle();
+                mBitmap = null;
+            }
+            mCanvas = null;
+            mValid = false;
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.Icon;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes the background complication's large image off the UI thread, at exactly the surface
+ * size, so each frame only blits it.
+ *
+ * <p>The image is center-cropped into an opaque {@link Bitmap.Config#RGB_565} bitmap, half the
+ * memory of the ARGB_8888 image ComplicationDrawable would keep and scale on every draw. A
+ * grayscale variant dimmed to {@link #AMBIENT_BRIGHTNESS} is built at the same time for ambient
+ * mode. A new image or surface size replaces the bitmaps once the new decode finishes; results
+ * of superseded decodes are dropped.
+ *
+ * <p>URI and resource images, such as photos, are subsampled while they are decoded, to no less
+ * than the surface size, so a large image never needs its full resolution in memory.
+ */
+class BackgroundImageLoader {
+    private static final String TAG = "BackgroundImageLoader";
+
+    /** Brightness of the ambient variant, low enough to keep lit pixels from burning in. */
+    private static final float AMBIENT_BRIGHTNESS = 0.3f;
+
+    /* Values of Icon.getType(), hidden before API 28. */
+    private static final int ICON_TYPE_RESOURCE = 2;
+    private static final int ICON_TYPE_URI = 4;
+
+    /** Called on the main thread when the bitmaps returned by {@link #getBitmap} change. */
+    interface Callback {
+        void onBackgroundImageChanged();
+    }
+
+    private final Context mContext;
+    private final Callback mCallback;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private Icon mIcon;
+    private int mWidth;
+    private int mHeight;
+
+    /* Incremented for every new decode, so results of older ones can be told apart. */
+    private int mGeneration;
+
+    private Bitmap mInteractiveBitmap;
+    private Bitmap mAmbientBitmap;
+
+    BackgroundImageLoader(Context context, Callback callback) {
+        mContext = context.getApplicationContext();
+        mCallback = callback;
+    }
+
+    /** Sets the size to decode to, normally the surface size. */
+    void setSize(int width, int height) {
+        if (width == mWidth && height == mHeight) {
+            return;
+        }
+        mWidth = width;
+        mHeight = height;
+        startDecode();
+    }
+
+    /** Sets the image to decode, or null to clear it. */
+    void setImage(Icon icon) {
+        mIcon = icon;
+        startDecode();
+    }
+
+    /** Returns whether an image is set, whether or not it has finished decoding. */
+    boolean hasImage() {
+        return mIcon != null;
+    }
+
+    /** Returns the decoded image for the given mode, or null if it isn't ready. */
+    Bitmap getBitmap(boolean ambient) {
+        return ambient ? mAmbientBitmap : mInteractiveBitmap;
+    }
+
+    void recycle() {
+        mGeneration++;
+        setBitmaps(null, null);
+    }
+
+    private void startDecode() {
+        final int generation = ++mGeneration;
+        if (mIcon == null) {
+            setBitmaps(null, null);
+            mCallback.onBackgroundImageChanged();
+            return;
+        }
+        if (mWidth <= 0 || mHeight <= 0) {
+            return;
+        }
+
+        final Icon icon = mIcon;
+        final int width = mWidth;
+        final int height = mHeight;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap interactive = decode(mContext, icon, width, height);
+                final Bitmap ambient =
+                        interactive != null ? createAmbientVariant(interactive) : null;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) {
+                            if (interactive != null) {
+                                interactive.recycle();
+                                ambient.recycle();
+                            }
+                            return;
+                        }
+                        setBitmaps(interactive, ambient);
+                        mCallback.onBackgroundImageChanged();
+                    }
+                });
+            }
+        });
+    }
+
+    private void setBitmaps(Bitmap interactive, Bitmap ambient) {
+        if (mInteractiveBitmap != null) {
+            mInteractiveBitmap.recycle();
+        }
+        if (mAmbientBitmap != null) {
+            mAmbientBitmap.recycle();
+        }
+        mInteractiveBitmap = interactive;
+        mAmbientBitmap = ambient;
+    }
+
+    /*
+     * Loads the icon and draws it center-cropped into an opaque bitmap of the given size. Runs
+     * on a background thread, as loading a URI or resource icon may read from disk.
+     */
+    private static Bitmap decode(Context context, Icon icon, int width, int height) {
+        Drawable drawable;
+        try {
+            drawable = loadDrawable(context, icon, width, height);
+        } catch (IOException | PackageManager.NameNotFoundException | RuntimeException e) {
+            Log.w(TAG, "Failed to load background image", e);
+            return null;
+        }
+        if (drawable == null) {
+            return null;
+        }
+
+        int imageWidth = drawable.getIntrinsicWidth();
+        int imageHeight = drawable.getIntrinsicHeight();
+        if (imageWidth <= 0 || imageHeight <= 0) {
+            // Shape drawables and the like have no size of their own, so stretch them.
+            imageWidth = width;
+            imageHeight = height;
+        }
+        float scale = Math.max((float) width / imageWidth, (float) height / imageHeight);
+        int scaledWidth = Math.round(imageWidth * scale);
+        int scaledHeight = Math.round(imageHeight * scale);
+        int left = (width - scaledWidth) / 2;
+        int top = (height - scaledHeight) / 2;
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(Color.BLACK);
+        drawable.setBounds(left, top, left + scaledWidth, top + scaledHeight);
+        drawable.setFilterBitmap(true);
+        drawable.draw(canvas);
+        return bitmap;
+    }
+
+    /*
+     * Loads the icon, subsampling URI and resource bitmaps to at least the given size. Other
+     * icons, and resources that aren't bitmaps such as vectors, are loaded by the icon itself.
+     */
+    private static Drawable loadDrawable(Context context, Icon icon, int width, int height)
+            throws IOException, PackageManager.NameNotFoundException {
+        Object type = getIconProperty(icon, "getType");
+        Bitmap bitmap = null;
+        if (Integer.valueOf(ICON_TYPE_URI).equals(type)) {
+            Uri uri = (Uri) getIconProperty(icon, "getUri");
+            bitmap = decodeUri(context.getContentResolver(), uri, width, height);
+            if (bitmap == null) {
+                return null;
+            }
+        } else if (Integer.valueOf(ICON_TYPE_RESOURCE).equals(type)) {
+            String packageName = (String) getIconProperty(icon, "getResPackage");
+            Resources resources =
+                    packageName == null || packageName.equals(context.getPackageName())
+                            ? context.getResources()
+                            : context.getPackageManager().getResourcesForApplication(packageName);
+            int id = (Integer) getIconProperty(icon, "getResId");
+            bitmap = decodeResource(resources, id, width, height);
+        }
+        return bitmap != null
+                ? new BitmapDrawable(context.getResources(), bitmap)
+                : icon.loadDrawable(context);
+    }
+
+    /*
+     * Calls one of Icon's getters, which are public from API 28 and hidden since API 23, the way
+     * IconCompat does. Returns null if it can't be called, so the icon is loaded whole.
+     */
+    private static Object getIconProperty(Icon icon, String getter) {
+        try {
+            return Icon.class.getMethod(getter).invoke(icon);
+        } catch (ReflectiveOperationException e) {
+            Log.w(TAG, "Failed to call Icon." + getter, e);
+            return null;
+        }
+    }
+
+    /* Decodes the image at uri subsampled to at least the given size, or returns null. */
+    private static Bitmap decodeUri(ContentResolver resolver, Uri uri, int width, int height)
+            throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        InputStream in = openInputStream(resolver, uri);
+        try {
+            BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        setSampleSize(options, width, height);
+        in = openInputStream(resolver, uri);
+        try {
+            return BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static InputStream openInputStream(ContentResolver resolver, Uri uri)
+            throws FileNotFoundException {
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) {
+            throw new FileNotFoundException("No content at " + uri);
+        }
+        return in;
+    }
+
+    /*
+     * Decodes the bitmap resource subsampled to at least the given size, or returns null if it
+     * isn't a bitmap. It is decoded at its own density, the scaling to the surface follows.
+     */
+    private static Bitmap decodeResource(Resources resources, int id, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, id, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        setSampleSize(options, width, height);
+        return BitmapFactory.decodeResource(resources, id, options);
+    }
+
+    /* Turns options that have read an image's bounds into options to decode it subsampled. */
+    private static void setSampleSize(BitmapFactory.Options options, int width, int height) {
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = getSampleSize(options.outWidth, options.outHeight, width, height);
+        // Drawn into an opaque RGB_565 bitmap anyway; images with alpha still decode with it.
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+    }
+
+    /**
+     * Returns the largest power of two an image can be subsampled by and still cover the given
+     * size when center-cropped into it, as the decoder only honors powers of two.
+     */
+    static int getSampleSize(int imageWidth, int imageHeight, int width, int height) {
+        int sampleSize = 1;
+        while (imageWidth / (2 * sampleSize) >= width
+                && imageHeight / (2 * sampleSize) >= height) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static Bitmap createAmbientVariant(Bitmap source) {
+        ColorMatrix matrix = new ColorMatrix();
+        matrix.setSaturation(0);
+        ColorMatrix dim = new ColorMatrix();
+        dim.setScale(AMBIENT_BRIGHTNESS, AMBIENT_BRIGHTNESS, AMBIENT_BRIGHTNESS, 1);
+        matrix.postConcat(dim);
+
+        Paint paint = new Paint();
+        paint.setColorFilter(new ColorMatrixColorFilter(matrix));
+
+        Bitmap bitmap =
+                Bitmap.createBitmap(source.getWidth(), source.getHeight(), Bitmap.Config.RGB_565);
+        new Canvas(bitmap).drawBitmap(source, 0, 0, paint);
+        return bitmap;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+/**
+ * Draws the battery indicator of both modes: two arcs along the bottom of an oval, the level arc
+ * growing from the left and the used arc filling the rest, plus a marker where they meet while
+ * charging.
+ *
+ * <p>Each arc is drawn whole with its own paint, so the round caps of both show where they
+ * meet, and nothing is clipped.
+ */
+final class BatteryIndicator {
+
+    /* The indicator spans 120 degrees, from 30 (right) to 150 (left) degrees. */
+    static final float START_ANGLE = 30f;
+    static final float SWEEP_ANGLE = 120f;
+
+    private BatteryIndicator() {}
+
+    /**
+     * @param bounds oval the arcs are drawn on
+     * @param levelPercent battery level, from 0 to 100
+     * @param markerRadius radius of the charging marker, drawn with levelPaint
+     */
+    static void draw(
+            Canvas canvas,
+            RectF bounds,
+            int levelPercent,
+            boolean charging,
+            Paint levelPaint,
+            Paint usedPaint,
+            float markerRadius) {
+        draw(canvas, bounds, levelPercent, charging, levelPaint, usedPaint, levelPaint,
+                markerRadius);
+    }
+
+    /** Like the other overload, but draws the charging marker with its own paint. */
+    static void draw(
+            Canvas canvas,
+            RectF bounds,
+            int levelPercent,
+            boolean charging,
+            Paint levelPaint,
+            Paint usedPaint,
+            Paint markerPaint,
+            float markerRadius) {
+        float levelSweep = SWEEP_ANGLE * levelPercent * .01f;
+        float splitAngle = START_ANGLE + SWEEP_ANGLE - levelSweep;
+
+        canvas.drawArc(bounds.left, bounds.top, bounds.right, bounds.bottom,
+                splitAngle, levelSweep, false, levelPaint);
+        canvas.drawArc(bounds.left, bounds.top, bounds.right, bounds.bottom,
+                START_ANGLE, SWEEP_ANGLE - levelSweep, false, usedPaint);
+
+        if (charging) {
+            double markerAngle = Math.toRadians(splitAngle);
+            float radiusX = (bounds.right - bounds.left) / 2;
+            float radiusY = (bounds.bottom - bounds.top) / 2;
+            float markerX = bounds.left + radiusX + radiusX * (float) Math.cos(markerAngle);
+            float markerY = bounds.top + radiusY + radiusY * (float) Math.sin(markerAngle);
+            canvas.drawCircle(markerX, markerY, markerRadius, markerPaint);
+        }
+    }
+}
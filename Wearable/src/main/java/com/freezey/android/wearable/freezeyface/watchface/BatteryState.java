@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+
+/**
+ * Caches the battery level and charging state from {@link Intent#ACTION_BATTERY_CHANGED}
+ * broadcasts, so the watch face can read them while drawing without any IPC.
+ *
+ * <p>The receiver should only be registered while the watch face is visible. Registering
+ * delivers the current sticky broadcast immediately, so the cached values are up to date as
+ * soon as the face is shown.
+ */
+class BatteryState {
+
+    /** Notified when the battery percentage or charging state changes. */
+    interface Callback {
+        void onBatteryStateChanged();
+    }
+
+    private final Callback mCallback;
+
+    private boolean mRegistered;
+
+    private int mLevelPercent;
+    private boolean mCharging;
+
+    private final BroadcastReceiver mReceiver =
+            new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+                    int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+                    int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+
+                    if (level < 0 || scale <= 0) {
+                        return;
+                    }
+
+                    int levelPercent = level * 100 / scale;
+                    boolean charging =
+                            status == BatteryManager.BATTERY_STATUS_CHARGING
+                                    || status == BatteryManager.BATTERY_STATUS_FULL;
+
+                    // The arc is drawn in whole percent steps, so finer changes aren't visible.
+                    if (levelPercent != mLevelPercent || charging != mCharging) {
+                        mLevelPercent = levelPercent;
+                        mCharging = charging;
+                        mCallback.onBatteryStateChanged();
+                    }
+                }
+            };
+
+    BatteryState(Callback callback) {
+        mCallback = callback;
+    }
+
+    void register(Context context) {
+        if (mRegistered) {
+            return;
+        }
+        mRegistered = true;
+        context.registerReceiver(mReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+    }
+
+    void unregister(Context context) {
+        if (!mRegistered) {
+            return;
+        }
+        mRegistered = false;
+        context.unregisterReceiver(mReceiver);
+    }
+
+    /** Returns the last known battery level in the range [0, 100]. */
+    int getLevelPercent() {
+        return mLevelPercent;
+    }
+
+    /** Returns whether the watch was charging (or full on the charger) at the last update. */
+    boolean isCharging() {
+        return mCharging;
+    }
+}
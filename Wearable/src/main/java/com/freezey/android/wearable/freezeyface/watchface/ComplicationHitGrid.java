@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import java.util.Arrays;
+
+/**
+ * Maps screen cells to the topmost complication under them, so a tap resolves with a single
+ * array lookup instead of asking every complication in turn.
+ *
+ * <p>Regions are added bottom to top, each overwriting the cells whose centers it contains.
+ * Regions are rectangles or ovals, the latter for circular complications and for the background
+ * on round screens, where taps outside the circle hit nothing. Region edges are in pixels, with
+ * right and bottom exclusive as in {@link android.graphics.Rect}. Built in onSurfaceChanged()
+ * and read on every tap.
+ */
+class ComplicationHitGrid {
+
+    /** Returned by {@link #getComplicationId} for points that hit no complication. */
+    static final int NO_COMPLICATION = -1;
+
+    /** Side of a square cell, in pixels; hits are exact to within half of this. */
+    private static final int CELL_SIZE = 4;
+
+    private int mColumns;
+    private int mRows;
+    private int[] mCells = new int[0];
+
+    /** Removes all regions and sizes the grid to cover a width by height screen. */
+    void reset(int width, int height) {
+        mColumns = (width + CELL_SIZE - 1) / CELL_SIZE;
+        mRows = (height + CELL_SIZE - 1) / CELL_SIZE;
+        if (mCells.length != mColumns * mRows) {
+            mCells = new int[mColumns * mRows];
+        }
+        Arrays.fill(mCells, NO_COMPLICATION);
+    }
+
+    /** Adds a rectangular region above all regions added before it. */
+    void addRect(int complicationId, int left, int top, int right, int bottom) {
+        for (int row = firstCell(top); row <= lastCell(bottom, mRows); row++) {
+            float y = cellCenter(row);
+            if (y < top || y >= bottom) {
+                continue;
+            }
+            for (int column = firstCell(left); column <= lastCell(right, mColumns); column++) {
+                float x = cellCenter(column);
+                if (x >= left && x < right) {
+                    mCells[row * mColumns + column] = complicationId;
+                }
+            }
+        }
+    }
+
+    /** Adds the inscribed oval as a region above all regions added before it. */
+    void addOval(int complicationId, int left, int top, int right, int bottom) {
+        float centerX = (left + right) / 2f;
+        float centerY = (top + bottom) / 2f;
+        float radiusX = (right - left) / 2f;
+        float radiusY = (bottom - top) / 2f;
+        if (radiusX <= 0 || radiusY <= 0) {
+            return;
+        }
+        for (int row = firstCell(top); row <= lastCell(bottom, mRows); row++) {
+            float dy = (cellCenter(row) - centerY) / radiusY;
+            for (int column = firstCell(left); column <= lastCell(right, mColumns); column++) {
+                float dx = (cellCenter(column) - centerX) / radiusX;
+                if (dx * dx + dy * dy <= 1) {
+                    mCells[row * mColumns + column] = complicationId;
+                }
+            }
+        }
+    }
+
+    /** Returns the topmost complication at the given point, or {@link #NO_COMPLICATION}. */
+    int getComplicationId(int x, int y) {
+        if (x < 0 || y < 0) {
+            return NO_COMPLICATION;
+        }
+        int column = x / CELL_SIZE;
+        int row = y / CELL_SIZE;
+        if (column >= mColumns || row >= mRows) {
+            return NO_COMPLICATION;
+        }
+        return mCells[row * mColumns + column];
+    }
+
+    private static int firstCell(int edge) {
+        return Math.max(0, edge / CELL_SIZE);
+    }
+
+    private static int lastCell(int edge, int cells) {
+        return Math.min(cells - 1, edge / CELL_SIZE);
+    }
+
+    private static float cellCenter(int cell) {
+        return cell * CELL_SIZE + CELL_SIZE / 2f;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import android.graphics.Rect;
+import android.support.wearable.complications.ComplicationData;
+
+import com.freezey.android.wearable.freezeyface.config.FreezeyfaceComplicationConfigRecyclerViewAdapter.ComplicationLocation;
+
+/**
+ * The complication slots of {@link FreezeyWatchFaceService}, described in one table: id,
+ * location, supported data types, bounds as fractions of the screen, and hit region shape.
+ *
+ * <p>The watch face, its tap handling and the config activity all read this table, so a new
+ * slot is added here and nowhere else. Pixel bounds are computed once per surface size by
+ * {@link #setSurfaceSize} into a flat array, leaving nothing to compute per frame.
+ */
+public final class ComplicationLayout {
+
+    // Unique IDs for each complication. The settings activity that supports allowing users
+    // to select their complication data provider requires numbers to be >= 0.
+    public static final int BACKGROUND_COMPLICATION_ID = 0;
+
+    private static final int LEFT_COMPLICATION_ID = 100;
+    private static final int RIGHT_COMPLICATION_ID = 101;
+
+    /** Hit region is the slot's bounds. */
+    static final int SHAPE_RECT = 0;
+
+    /** Hit region is the oval inscribed in the slot's bounds. */
+    static final int SHAPE_OVAL = 1;
+
+    /** Hit region follows the screen: an oval on round screens, the bounds otherwise. */
+    static final int SHAPE_SCREEN = 2;
+
+    private static final int[] DIAL_TYPES = {
+        ComplicationData.TYPE_RANGED_VALUE,
+        ComplicationData.TYPE_ICON,
+        ComplicationData.TYPE_SHORT_TEXT,
+        ComplicationData.TYPE_SMALL_IMAGE
+    };
+
+    /*
+     * Slots from bottom to top, as they are drawn. The left and right dials are a quarter of the
+     * screen wide, centered vertically and in their half of the screen. Vertical fractions are
+     * of the screen width, see setSurfaceSize().
+     */
+    private static final Slot[] SLOTS = {
+        new Slot(BACKGROUND_COMPLICATION_ID, ComplicationLocation.BACKGROUND,
+                new int[] {ComplicationData.TYPE_LARGE_IMAGE},
+                0f, 0f, 1f, 1f, SHAPE_SCREEN),
+        new Slot(LEFT_COMPLICATION_ID, ComplicationLocation.LEFT, DIAL_TYPES,
+                0.125f, 0.375f, 0.375f, 0.625f, SHAPE_OVAL),
+        new Slot(RIGHT_COMPLICATION_ID, ComplicationLocation.RIGHT, DIAL_TYPES,
+                0.625f, 0.375f, 0.875f, 0.625f, SHAPE_OVAL)
+    };
+
+    private static final int[] COMPLICATION_IDS = new int[SLOTS.length];
+
+    static {
+        for (int i = 0; i < SLOTS.length; i++) {
+            COMPLICATION_IDS[i] = SLOTS[i].mId;
+        }
+    }
+
+    /* Left, top, right and bottom of each slot in pixels, four entries per slot. */
+    private final int[] mBounds = new int[SLOTS.length * 4];
+
+    /** Returns the number of slots. Slot indices are in [0, getSlotCount()). */
+    public static int getSlotCount() {
+        return SLOTS.length;
+    }
+
+    /** Returns every complication id, bottom to top. Callers must not modify the array. */
+    public static int[] getComplicationIds() {
+        return COMPLICATION_IDS;
+    }
+
+    /** Returns the id of the slot at the given location, or -1 if there is none. */
+    public static int getComplicationId(ComplicationLocation location) {
+        int slot = indexOf(location);
+        return slot >= 0 ? SLOTS[slot].mId : -1;
+    }
+
+    /** Returns the data types the slot at the given location accepts, empty if there is none. */
+    public static int[] getSupportedComplicationTypes(ComplicationLocation location) {
+        int slot = indexOf(location);
+        return slot >= 0 ? SLOTS[slot].mSupportedTypes.clone() : new int[] {};
+    }
+
+    static int getComplicationIdAt(int slot) {
+        return SLOTS[slot].mId;
+    }
+
+    static int getShape(int slot) {
+        return SLOTS[slot].mShape;
+    }
+
+    /**
+     * Computes the pixel bounds of every slot for a screen of the given size.
+     *
+     * <p>For most Wear devices width and height are the same, so both axes are scaled by the
+     * width and the dials stay square on screens with a flat tire. Only the background, which
+     * fills the screen, is scaled by the height.
+     */
+    void setSurfaceSize(int width, int height) {
+        for (int i = 0; i < SLOTS.length; i++) {
+            Slot slot = SLOTS[i];
+            int verticalScale = slot.mShape == SHAPE_SCREEN ? height : width;
+            mBounds[i * 4] = Math.round(slot.mLeft * width);
+            mBounds[i * 4 + 1] = Math.round(slot.mTop * verticalScale);
+            mBounds[i * 4 + 2] = Math.round(slot.mRight * width);
+            mBounds[i * 4 + 3] = Math.round(slot.mBottom * verticalScale);
+        }
+    }
+
+    /** Copies the pixel bounds of the given slot into out. */
+    void getBounds(int slot, Rect out) {
+        out.set(mBounds[slot * 4], mBounds[slot * 4 + 1],
+                mBounds[slot * 4 + 2], mBounds[slot * 4 + 3]);
+    }
+
+    private static int indexOf(ComplicationLocation location) {
+        for (int i = 0; i < SLOTS.length; i++) {
+            if (SLOTS[i].mLocation == location) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Slot {
+        final int mId;
+        final ComplicationLocation mLocation;
+        final int[] mSupportedTypes;
+        final float mLeft;
+        final float mTop;
+        final float mRight;
+        final float mBottom;
+        final int mShape;
+
+        Slot(int id, ComplicationLocation location, int[] supportedTypes,
+                float left, float top, float right, float bottom, int shape) {
+            mId = id;
+            mLocation = location;
+            mSupportedTypes = supportedTypes;
+            mLeft = left;
+            mTop = top;
+            mRight = right;
+            mBottom = bottom;
+            mShape = shape;
+        }
+    }
+}
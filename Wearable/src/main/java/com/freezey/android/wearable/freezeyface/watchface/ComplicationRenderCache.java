@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationText;
+import android.support.wearable.complications.rendering.ComplicationDrawable;
+
+import java.util.Arrays;
+
+/**
+ * Renders each complication slot into its own bitmap, so a frame only blits the slots whose
+ * content hasn't changed.
+ *
+ * <p>A slot is re-rendered when it is marked dirty (new data, ambient, low-bit or color changes,
+ * or the drawable invalidating itself after loading an image or ending a tap highlight), or
+ * when the time reaches the next instant its data changes on its own: the start or end of its
+ * active period, or the next change of any time-dependent {@link ComplicationText}. Providers
+ * with static data are therefore rendered once and blitted on every later frame.
+ *
+ * <p>Slots are drawn in the order they were added, so the background goes first. A slot can be
+ * left out of drawing with {@link #setDrawn}, e.g. when its image is drawn by the caller.
+ */
+class ComplicationRenderCache {
+
+    /** Called on the main thread when a slot needs to be re-rendered by the next frame. */
+    interface Callback {
+        void onComplicationInvalidated();
+    }
+
+    private final Callback mCallback;
+
+    private final Handler mHandler = new Handler();
+
+    private int[] mIds = new int[0];
+    private ComplicationDrawable[] mDrawables = new ComplicationDrawable[0];
+    private ComplicationData[] mData = new ComplicationData[0];
+    private Bitmap[] mBitmaps = new Bitmap[0];
+    private Canvas[] mCanvases = new Canvas[0];
+    private boolean[] mDrawn = new boolean[0];
+    private final Rect mBounds = new Rect();
+
+    /* The rendered bitmap of slot i is valid for times before mValidUntilMs[i]. */
+    private long[] mValidUntilMs = new long[0];
+
+    /* Rendered versus reused slots, reported through dumpsys. */
+    private long mRenderCount;
+    private long mBlitCount;
+
+    ComplicationRenderCache(Callback callback) {
+        mCallback = callback;
+    }
+
+    /** Adds a slot drawn by the given drawable, above all slots added before it. */
+    void add(int complicationId, ComplicationDrawable drawable) {
+        int slots = mIds.length + 1;
+        mIds = Arrays.copyOf(mIds, slots);
+        mDrawables = Arrays.copyOf(mDrawables, slots);
+        mData = Arrays.copyOf(mData, slots);
+        mBitmaps = Arrays.copyOf(mBitmaps, slots);
+        mCanvases = Arrays.copyOf(mCanvases, slots);
+        mValidUntilMs = Arrays.copyOf(mValidUntilMs, slots);
+        mDrawn = Arrays.copyOf(mDrawn, slots);
+
+        int slot = slots - 1;
+        mIds[slot] = complicationId;
+        mDrawables[slot] = drawable;
+        mDrawn[slot] = true;
+        drawable.setCallback(mDrawableCallback);
+    }
+
+    /** Stores new data for a slot and marks it dirty. The drawable must already have it. */
+    void setComplicationData(int complicationId, ComplicationData data) {
+        int slot = indexOf(complicationId);
+        if (slot >= 0) {
+            mData[slot] = data;
+            mValidUntilMs[slot] = 0;
+        }
+    }
+
+    /**
+     * Sets whether a slot is drawn at all, for slots the caller draws in some other way. Slots
+     * that aren't drawn hold no bitmap.
+     */
+    void setDrawn(int complicationId, boolean drawn) {
+        int slot = indexOf(complicationId);
+        if (slot < 0 || mDrawn[slot] == drawn) {
+            return;
+        }
+        mDrawn[slot] = drawn;
+        onBoundsChanged(complicationId);
+    }
+
+    /**
+     * Re-creates a slot's bitmap for the drawable's current bounds. Call after setting the
+     * bounds, typically in onSurfaceChanged().
+     */
+    void onBoundsChanged(int complicationId) {
+        int slot = indexOf(complicationId);
+        if (slot < 0) {
+            return;
+        }
+        if (mBitmaps[slot] != null) {
+            mBitmaps[slot].recycle();
+            mBitmaps[slot] = null;
+            mCanvases[slot] = null;
+        }
+        Rect bounds = mDrawables[slot].getBounds();
+        if (mDrawn[slot] && !bounds.isEmpty()) {
+            mBitmaps[slot] = Bitmap.createBitmap(
+                    bounds.width(), bounds.height(), Bitmap.Config.ARGB_8888);
+            mCanvases[slot] = new Canvas(mBitmaps[slot]);
+        }
+        mValidUntilMs[slot] = 0;
+    }
+
+    /** Marks a single slot to be re-rendered. */
+    void invalidate(int complicationId) {
+        int slot = indexOf(complicationId);
+        if (slot >= 0) {
+            mValidUntilMs[slot] = 0;
+        }
+    }
+
+    /** Marks every slot to be re-rendered, e.g. after an ambient, low-bit or color change. */
+    void invalidateAll() {
+        for (int slot = 0; slot < mIds.length; slot++) {
+            mValidUntilMs[slot] = 0;
+        }
+    }
+
+    /** Returns whether any slot would be re-rendered by a frame drawn at the given time. */
+    boolean needsRender(long now) {
+        for (int slot = 0; slot < mIds.length; slot++) {
+            if (mDrawn[slot] && now >= mValidUntilMs[slot]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Draws every slot, re-rendering those that are dirty or have reached their next change.
+     */
+    void draw(Canvas canvas, long now) {
+        for (int slot = 0; slot < mIds.length; slot++) {
+            ComplicationDrawable drawable = mDrawables[slot];
+            if (!mDrawn[slot]) {
+                continue;
+            }
+            if (mBitmaps[slot] == null) {
+                // No bounds yet, so there is nothing to cache.
+                drawable.draw(canvas, now);
+                continue;
+            }
+
+            mBounds.set(drawable.getBounds());
+            if (now >= mValidUntilMs[slot]) {
+                mValidUntilMs[slot] = getNextChangeMs(mData[slot], now);
+
+                Canvas slotCanvas = mCanvases[slot];
+                slotCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                // The drawable keeps its screen bounds for tap handling, so shift it into place.
+                slotCanvas.save();
+                slotCanvas.translate(-mBounds.left, -mBounds.top);
+                drawable.draw(slotCanvas, now);
+                slotCanvas.restore();
+                mRenderCount++;
+            } else {
+                mBlitCount++;
+            }
+            canvas.drawBitmap(mBitmaps[slot], mBounds.left, mBounds.top, null);
+        }
+    }
+
+    /**
+     * Draws every slot as last rendered, without rendering or counting anything, for copies of
+     * a frame that are never shown.
+     */
+    void drawCached(Canvas canvas, long now) {
+        for (int slot = 0; slot < mIds.length; slot++) {
+            if (!mDrawn[slot]) {
+                continue;
+            }
+            ComplicationDrawable drawable = mDrawables[slot];
+            if (mBitmaps[slot] == null) {
+                drawable.draw(canvas, now);
+                continue;
+            }
+            Rect bounds = drawable.getBounds();
+            canvas.drawBitmap(mBitmaps[slot], bounds.left, bounds.top, null);
+        }
+    }
+
+    long getRenderCount() {
+        return mRenderCount;
+    }
+
+    long getBlitCount() {
+        return mBlitCount;
+    }
+
+    void recycle() {
+        for (int slot = 0; slot < mIds.length; slot++) {
+            if (mBitmaps[slot] != null) {
+                mBitmaps[slot].recycle();
+                mBitmaps[slot] = null;
+                mCanvases[slot] = null;
+            }
+            mDrawables[slot].setCallback(null);
+        }
+        mHandler.removeCallbacksAndMessages(null);
+    }
+
+    private int indexOf(int complicationId) {
+        for (int slot = 0; slot < mIds.length; slot++) {
+            if (mIds[slot] == complicationId) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(Drawable drawable) {
+        for (int slot = 0; slot < mDrawables.length; slot++) {
+            if (mDrawables[slot] == drawable) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Returns the first time after now at which the rendered data would look different without
+     * new data arriving, or Long.MAX_VALUE if it never does.
+     */
+    private static long getNextChangeMs(ComplicationData data, long now) {
+        if (data == null) {
+            return Long.MAX_VALUE;
+        }
+        long next = Long.MAX_VALUE;
+        if (data.getStartTime() > now) {
+            next = data.getStartTime();
+        }
+        if (data.getEndTime() > now) {
+            next = Math.min(next, data.getEndTime());
+        }
+        next = Math.min(next, getNextChangeMs(data.getShortText(), now));
+        next = Math.min(next, getNextChangeMs(data.getShortTitle(), now));
+        next = Math.min(next, getNextChangeMs(data.getLongText(), now));
+        next = Math.min(next, getNextChangeMs(data.getLongTitle(), now));
+        return next;
+    }
+
+    private static long getNextChangeMs(ComplicationText text, long now) {
+        // Plain text never changes, so its next change time is Long.MAX_VALUE.
+        return text != null ? text.getNextChangeTime(now) : Long.MAX_VALUE;
+    }
+
+    /*
+     * ComplicationDrawable invalidates itself when an image finishes loading and when a tap
+     * highlight ends; both need the slot re-rendered.
+     */
+    private final Drawable.Callback mDrawableCallback =
+            new Drawable.Callback() {
+                @Override
+                public void invalidateDrawable(Drawable who) {
+                    int slot = indexOf(who);
+                    if (slot >= 0) {
+                        mValidUntilMs[slot] = 0;
+                        mCallback.onComplicationInvalidated();
+                    }
+                }
+
+                @Override
+                public void scheduleDrawable(Drawable who, Runnable what, long when) {
+                    mHandler.postAtTime(what, who, when);
+                }
+
+                @Override
+                public void unscheduleDrawable(Drawable who, Runnable what) {
+                    mHandler.removeCallbacks(what, who);
+                }
+            };
+}
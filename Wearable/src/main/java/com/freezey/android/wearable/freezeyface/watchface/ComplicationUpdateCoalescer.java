@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import android.os.Handler;
+
+import java.util.Arrays;
+
+/**
+ * Collects complication data updates that arrive within one frame interval of each other and
+ * applies them together, so the engine redraws once instead of once per update. This matters
+ * when the face becomes visible or the provider system refreshes every slot at once.
+ *
+ * <p>A pending set is applied one frame interval after its first update, or earlier if the next
+ * scheduled tick comes first. Only the latest update per complication id is kept, and a set is
+ * applied in ascending id order. The engine also calls {@link #flush} at the start of every
+ * frame, so a frame drawn for any other reason never shows older data than it has received.
+ *
+ * <p>The data type is a parameter, and the delayed flush goes through a {@link Scheduler}, so
+ * the coalescer doesn't depend on the main looper.
+ *
+ * @param <T> complication data, ComplicationData in the watch face
+ */
+class ComplicationUpdateCoalescer<T> {
+
+    /** Longest time an update is held back, one frame at 60 fps. */
+    static final long FRAME_INTERVAL_MS = 16;
+
+    /** Called on the main thread to apply a pending set of updates. */
+    interface Callback<T> {
+        /** Applies the latest data received for a single complication. */
+        void onComplicationDataUpdate(int complicationId, T complicationData);
+
+        /**
+         * Called once after a scheduled set of updates is applied, to request a redraw. Not
+         * called for {@link #flush}, whose caller is already drawing.
+         */
+        void onComplicationUpdatesApplied();
+    }
+
+    /** Runs the delayed flush, on the thread updates are added from. */
+    interface Scheduler {
+        void postDelayed(Runnable runnable, long delayMs);
+
+        void removeCallbacks(Runnable runnable);
+    }
+
+    /** Schedules on a {@link Handler}, the main thread's for the watch face. */
+    static class HandlerScheduler implements Scheduler {
+        private final Handler mHandler;
+
+        HandlerScheduler(Handler handler) {
+            mHandler = handler;
+        }
+
+        @Override
+        public void postDelayed(Runnable runnable, long delayMs) {
+            mHandler.postDelayed(runnable, delayMs);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable runnable) {
+            mHandler.removeCallbacks(runnable);
+        }
+    }
+
+    private final Callback<T> mCallback;
+
+    private final Scheduler mScheduler;
+
+    /*
+     * Latest data per complication id since the last flush, sorted by id; the data itself may be
+     * null. Kept in arrays that only grow, so adding an update doesn't allocate.
+     */
+    private int[] mPendingIds = new int[8];
+    private Object[] mPendingData = new Object[8];
+    private int mPendingCount;
+
+    private long mUpdateCount;
+    private long mSavedRedrawCount;
+
+    private final Runnable mFlushRunnable =
+            new Runnable() {
+                @Override
+                public void run() {
+                    if (flush()) {
+                        mCallback.onComplicationUpdatesApplied();
+                    }
+                }
+            };
+
+    ComplicationUpdateCoalescer(Callback<T> callback, Scheduler scheduler) {
+        mCallback = callback;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Adds an update to the pending set, scheduling it to be applied within one frame interval.
+     *
+     * @param maxDelayMs time until the next scheduled tick; the update is applied by then
+     */
+    void add(int complicationId, T complicationData, long maxDelayMs) {
+        mUpdateCount++;
+        if (mPendingCount > 0) {
+            // Joins the set already scheduled, so it costs no redraw of its own.
+            mSavedRedrawCount++;
+        } else {
+            mScheduler.postDelayed(mFlushRunnable,
+                    Math.max(0, Math.min(FRAME_INTERVAL_MS, maxDelayMs)));
+        }
+
+        int index = Arrays.binarySearch(mPendingIds, 0, mPendingCount, complicationId);
+        if (index >= 0) {
+            mPendingData[index] = complicationData;
+            return;
+        }
+        index = -index - 1;
+        if (mPendingCount == mPendingIds.length) {
+            mPendingIds = Arrays.copyOf(mPendingIds, mPendingCount * 2);
+            mPendingData = Arrays.copyOf(mPendingData, mPendingCount * 2);
+        }
+        System.arraycopy(mPendingIds, index, mPendingIds, index + 1, mPendingCount - index);
+        System.arraycopy(mPendingData, index, mPendingData, index + 1, mPendingCount - index);
+        mPendingIds[index] = complicationId;
+        mPendingData[index] = complicationData;
+        mPendingCount++;
+    }
+
+    /** Applies all pending updates now. Returns false if there were none. */
+    boolean flush() {
+        if (mPendingCount == 0) {
+            return false;
+        }
+        mScheduler.removeCallbacks(mFlushRunnable);
+        for (int i = 0; i < mPendingCount; i++) {
+            @SuppressWarnings("unchecked")
+            T data = (T) mPendingData[i];
+            mCallback.onComplicationDataUpdate(mPendingIds[i], data);
+        }
+        Arrays.fill(mPendingData, 0, mPendingCount, null);
+        mPendingCount = 0;
+        return true;
+    }
+
+    /** Drops all pending updates, e.g. when the engine is destroyed. */
+    void cancel() {
+        mScheduler.removeCallbacks(mFlushRunnable);
+        Arrays.fill(mPendingData, 0, mPendingCount, null);
+        mPendingCount = 0;
+    }
+
+    long getUpdateCount() {
+        return mUpdateCount;
+    }
+
+    long getSavedRedrawCount() {
+        return mSavedRedrawCount;
+    }
+}
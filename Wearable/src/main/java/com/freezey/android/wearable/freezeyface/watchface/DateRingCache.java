@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Labels, widths and rotation angles for the seven-day ring drawn along the top edge of the
+ * watch face. The ring only changes once a day, so everything is built when the local day,
+ * time zone, locale or paint changes and each frame only issues the {@code drawText} calls.
+ */
+class DateRingCache {
+
+    /** Number of days drawn along the ring, centered on today. */
+    static final int DAYS = 7;
+
+    private static final int TODAY_INDEX = DAYS / 2;
+
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+    /* We want the ring to occupy one-third of the outer edge and divide it into 7 days. */
+    private static final float DEGREES_SEPARATION = 360 / 3 / 7;
+
+    private static final float DISTANCE_FROM_EDGE = 25;
+
+    /* Today's labels are drawn larger than the surrounding days. */
+    private static final float TODAY_TEXT_SCALE = 1.4f;
+
+    /*
+     * Rotation for each day, in multiples of DEGREES_SEPARATION. Today is given an extra step of
+     * space on both sides for its larger labels.
+     */
+    private static final int[] ROTATION_STEPS = {-4, -3, -2, 0, 2, 3, 4};
+
+    private final Calendar mCalendar = Calendar.getInstance();
+    private final Date mDate = new Date();
+
+    private DateFormat mDayOfWeekFormat;
+    private DateFormat mDateFormat;
+    private DateFormat mCurrentDateFormat;
+
+    private final String[] mDayOfWeekLabels = new String[DAYS];
+    private final String[] mDateLabels = new String[DAYS];
+    private final float[] mDayOfWeekWidths = new float[DAYS];
+    private final float[] mDateWidths = new float[DAYS];
+    private final float[] mAngles = new float[DAYS];
+
+    private float mTextSize;
+    private float mTodayTextSize;
+
+    /* The labels are valid for times in [mValidFromMs, mValidUntilMs), i.e. one local day. */
+    private long mValidFromMs;
+    private long mValidUntilMs;
+
+    DateRingCache() {
+        for (int i = 0; i < DAYS; i++) {
+            mAngles[i] = ROTATION_STEPS[i] * DEGREES_SEPARATION;
+        }
+        setTimeZoneAndLocale(TimeZone.getDefault(), Locale.getDefault());
+    }
+
+    /**
+     * Rebuilds the formatters for a new time zone or locale. Never called from the draw path.
+     */
+    void setTimeZoneAndLocale(TimeZone timeZone, Locale locale) {
+        mCalendar.setTimeZone(timeZone);
+
+        mDayOfWeekFormat = new SimpleDateFormat("EEE", locale);
+        mDayOfWeekFormat.setTimeZone(timeZone);
+        mDateFormat = new SimpleDateFormat("d", locale);
+        mDateFormat.setTimeZone(timeZone);
+        mCurrentDateFormat = new SimpleDateFormat("MMM d", locale);
+        mCurrentDateFormat.setTimeZone(timeZone);
+
+        invalidate();
+    }
+
+    /** Forces the labels to be rebuilt on the next call to {@link #draw}. */
+    void invalidate() {
+        mValidFromMs = 0;
+        mValidUntilMs = 0;
+    }
+
+    /**
+     * Returns the time at which the ring next changes, i.e. the next local midnight. Only
+     * meaningful after the ring has been drawn at least once.
+     */
+    long getValidUntilMs() {
+        return mValidUntilMs;
+    }
+
+    /** Returns the rotation of the given day's labels, in degrees clockwise from the top. */
+    float getAngle(int day) {
+        return mAngles[day];
+    }
+
+    /**
+     * Draws the ring for the given time, rebuilding the cached labels first if the local day or
+     * the paint's text size changed since the last call.
+     */
+    void draw(Canvas canvas, long now, float centerX, float centerY, Paint paint) {
+        float textSize = paint.getTextSize();
+        if (now < mValidFromMs || now >= mValidUntilMs || textSize != mTextSize) {
+            rebuild(now, paint);
+        }
+
+        canvas.save();
+
+        float previousAngle = 0;
+        for (int i = 0; i < DAYS; i++) {
+            canvas.rotate(mAngles[i] - previousAngle, centerX, centerY);
+            previousAngle = mAngles[i];
+
+            if (i == TODAY_INDEX) {
+                paint.setTextSize(mTodayTextSize);
+            }
+            canvas.drawText(
+                    mDayOfWeekLabels[i],
+                    centerX - (mDayOfWeekWidths[i] / 2),
+                    DISTANCE_FROM_EDGE,
+                    paint);
+            canvas.drawText(
+                    mDateLabels[i],
+                    centerX - (mDateWidths[i] / 2),
+                    DISTANCE_FROM_EDGE + paint.getTextSize(),
+                    paint);
+            if (i == TODAY_INDEX) {
+                paint.setTextSize(textSize);
+            }
+        }
+
+        /* Restore the canvas' original orientation. */
+        canvas.restore();
+    }
+
+    /* Formats and measures every label. Not private, so tests can count how often it runs. */
+    void rebuild(long now, Paint paint) {
+        mTextSize = paint.getTextSize();
+        mTodayTextSize = mTextSize * TODAY_TEXT_SCALE;
+
+        // Finds the bounds of the local day containing "now".
+        mCalendar.setTimeInMillis(now);
+        mCalendar.set(Calendar.HOUR_OF_DAY, 0);
+        mCalendar.set(Calendar.MINUTE, 0);
+        mCalendar.set(Calendar.SECOND, 0);
+        mCalendar.set(Calendar.MILLISECOND, 0);
+        mValidFromMs = mCalendar.getTimeInMillis();
+        mCalendar.add(Calendar.DAY_OF_YEAR, 1);
+        mValidUntilMs = mCalendar.getTimeInMillis();
+
+        for (int i = 0; i < DAYS; i++) {
+            mDate.setTime(now + (i - TODAY_INDEX) * DAY_MS);
+            String dayOfWeek = mDayOfWeekFormat.format(mDate);
+
+            if (i == TODAY_INDEX) {
+                mDayOfWeekLabels[i] = dayOfWeek.substring(0, Math.min(3, dayOfWeek.length()));
+                mDateLabels[i] = mCurrentDateFormat.format(mDate);
+                paint.setTextSize(mTodayTextSize);
+            } else {
+                mDayOfWeekLabels[i] = dayOfWeek.substring(0, Math.min(2, dayOfWeek.length()));
+                mDateLabels[i] = mDateFormat.format(mDate);
+            }
+
+            mDayOfWeekWidths[i] = paint.measureText(mDayOfWeekLabels[i]);
+            mDateWidths[i] = paint.measureText(mDateLabels[i]);
+            paint.setTextSize(mTextSize);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+/**
+ * Advance widths for the eleven glyphs of the time readout (0-9 and ':') and the layout of the
+ * readout built from them.
+ *
+ * <p>Widths are measured once per typeface and text size, so laying out and drawing the
+ * readout on each tick does no text shaping and builds no strings. The layout is centered the
+ * same way as measuring the hour followed by ":01", so the readout doesn't shift as the minutes
+ * change.
+ */
+class DigitGlyphAtlas {
+
+    /** Glyphs in atlas order; a glyph's index is its digit value, or {@link #COLON}. */
+    static final char[] GLYPHS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', ':'};
+
+    static final int COLON = 10;
+
+    static final int NUM_GLYPHS = GLYPHS.length;
+
+    /* The longest readout is "hh:mm". */
+    private static final int MAX_READOUT_LENGTH = 5;
+
+    private final float[] mAdvances = new float[NUM_GLYPHS];
+    private float mTextSize = -1;
+    private Typeface mTypeface;
+    private float mTextScaleX;
+
+    /* Glyph indices and left edges of the current readout. */
+    private final int[] mReadoutGlyphs = new int[MAX_READOUT_LENGTH];
+    private final float[] mReadoutX = new float[MAX_READOUT_LENGTH];
+    private int mReadoutLength;
+    private float mColonX;
+
+    /**
+     * Re-measures the glyph advances if the paint's typeface or text size changed since the last
+     * call, otherwise does nothing.
+     */
+    void update(Paint paint) {
+        if (paint.getTextSize() == mTextSize
+                && paint.getTypeface() == mTypeface
+                && paint.getTextScaleX() == mTextScaleX) {
+            return;
+        }
+        mTextSize = paint.getTextSize();
+        mTypeface = paint.getTypeface();
+        mTextScaleX = paint.getTextScaleX();
+
+        for (int i = 0; i < NUM_GLYPHS; i++) {
+            mAdvances[i] = paint.measureText(GLYPHS, i, 1);
+        }
+    }
+
+    float getAdvance(int glyph) {
+        return mAdvances[glyph];
+    }
+
+    /**
+     * Lays out "h:mm" or "hh:mm" centered on centerX.
+     *
+     * @param hour hour in the range [1, 12]
+     * @param minute minute in the range [0, 59]
+     */
+    void layout(int hour, int minute, float centerX) {
+        int length = 0;
+        if (hour >= 10) {
+            mReadoutGlyphs[length++] = hour / 10;
+        }
+        mReadoutGlyphs[length++] = hour % 10;
+        int colonSlot = length;
+        mReadoutGlyphs[length++] = COLON;
+        mReadoutGlyphs[length++] = minute / 10;
+        mReadoutGlyphs[length++] = minute % 10;
+        mReadoutLength = length;
+
+        float hourWidth = 0;
+        for (int i = 0; i < colonSlot; i++) {
+            hourWidth += mAdvances[mReadoutGlyphs[i]];
+        }
+        float centeringWidth = hourWidth + mAdvances[COLON] + mAdvances[0] + mAdvances[1];
+
+        float x = centerX - (centeringWidth / 2);
+        for (int i = 0; i < length; i++) {
+            mReadoutX[i] = x;
+            x += mAdvances[mReadoutGlyphs[i]];
+        }
+        mColonX = mReadoutX[colonSlot];
+    }
+
+    int getReadoutLength() {
+        return mReadoutLength;
+    }
+
+    int getReadoutGlyph(int slot) {
+        return mReadoutGlyphs[slot];
+    }
+
+    float getReadoutX(int slot) {
+        return mReadoutX[slot];
+    }
+
+    /** Returns the left edge of the colon in the current readout. */
+    float getColonX() {
+        return mColonX;
+    }
+
+    /** Draws a single glyph as text with its left edge at x and baseline at y. */
+    static void drawGlyph(Canvas canvas, int glyph, float x, float y, Paint paint) {
+        canvas.drawText(GLYPHS, glyph, 1, x, y, paint);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import java.util.Calendar;
+
+/**
+ * Draws the time readout, its colon and the battery indicator of the Canvas face, in the paints
+ * and at the geometry it is given.
+ *
+ * <p>The interactive frame, the ambient layer and the JVM benchmark and allocation test all
+ * draw these elements through this class, so a change to any of them shows up in all four.
+ */
+class FaceRenderer {
+
+    private final Paint mDigitPaint;
+    private final Paint mLevelPaint;
+    private final Paint mUsedPaint;
+    private final Paint mMarkerPaint;
+    private final float mMarkerRadius;
+
+    private final DigitGlyphAtlas mDigitGlyphAtlas = new DigitGlyphAtlas();
+
+    private float mCenterX;
+    private float mCenterY;
+    private RectF mBatteryArcBounds = new RectF();
+
+    /* Position of the colon, updated whenever the readout is laid out. */
+    private float mColonX;
+    private float mColonY;
+
+    /**
+     * @param markerPaint paint of the charging marker, see {@link BatteryIndicator}
+     */
+    FaceRenderer(
+            Paint digitPaint,
+            Paint levelPaint,
+            Paint usedPaint,
+            Paint markerPaint,
+            float markerRadius) {
+        mDigitPaint = digitPaint;
+        mLevelPaint = levelPaint;
+        mUsedPaint = usedPaint;
+        mMarkerPaint = markerPaint;
+        mMarkerRadius = markerRadius;
+    }
+
+    /**
+     * Sets where the readout is centered and the oval the battery arcs are drawn on. The bounds
+     * are kept, not copied, so later changes to them apply to the next frame.
+     */
+    void setGeometry(float centerX, float centerY, RectF batteryArcBounds) {
+        mCenterX = centerX;
+        mCenterY = centerY;
+        mBatteryArcBounds = batteryArcBounds;
+    }
+
+    /**
+     * Returns whether the colon is shown at the given time: always without blinking, otherwise
+     * for the first half of every two seconds.
+     */
+    static boolean isColonShown(long now, boolean blinkEnabled) {
+        return !blinkEnabled
+                || (now % (2 * TickScheduler.BLINK_INTERVAL_MS)) < TickScheduler.BLINK_INTERVAL_MS;
+    }
+
+    /**
+     * Draws the hour and minute digits of the calendar's time. Unless withColon, the colon is
+     * left out, to be drawn by {@link #drawColon}.
+     *
+     * @param calendar set to the time to draw; only its fields are read
+     */
+    void drawTimeReadout(Canvas canvas, Calendar calendar, boolean withColon) {
+        int hour = calendar.get(Calendar.HOUR);
+        if (hour == 0) {
+            hour = 12;
+        }
+        mDigitGlyphAtlas.update(mDigitPaint);
+        mDigitGlyphAtlas.layout(hour, calendar.get(Calendar.MINUTE), mCenterX);
+
+        for (int i = 0; i < mDigitGlyphAtlas.getReadoutLength(); i++) {
+            int glyph = mDigitGlyphAtlas.getReadoutGlyph(i);
+            if (glyph == DigitGlyphAtlas.COLON && !withColon) {
+                continue;
+            }
+            DigitGlyphAtlas.drawGlyph(
+                    canvas, glyph, mDigitGlyphAtlas.getReadoutX(i), mCenterY, mDigitPaint);
+        }
+
+        mColonX = mDigitGlyphAtlas.getColonX();
+        mColonY = mCenterY;
+    }
+
+    /**
+     * Draws the colon of the last readout if it is shown at the given time, see
+     * {@link #isColonShown}. Returns whether it was drawn.
+     */
+    boolean drawColon(Canvas canvas, long now, boolean blinkEnabled) {
+        if (!isColonShown(now, blinkEnabled)) {
+            return false;
+        }
+        DigitGlyphAtlas.drawGlyph(canvas, DigitGlyphAtlas.COLON, mColonX, mColonY, mDigitPaint);
+        return true;
+    }
+
+    void drawBatteryIndicator(Canvas canvas, int levelPercent, boolean charging) {
+        BatteryIndicator.draw(canvas, mBatteryArcBounds, levelPercent, charging,
+                mLevelPaint, mUsedPaint, mMarkerPaint, mMarkerRadius);
+    }
+}
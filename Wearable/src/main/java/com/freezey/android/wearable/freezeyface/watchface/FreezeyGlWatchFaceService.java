@@ -0,0 +1,799 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.opengl.GLES20;
+import android.opengl.Matrix;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Message;
+import android.support.wearable.watchface.Gles2WatchFaceService;
+import android.support.wearable.watchface.WatchFaceService;
+import android.support.wearable.watchface.WatchFaceStyle;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import com.freezey.android.wearable.freezeyface.model.WatchFaceSettings;
+import com.freezey.android.wearable.freezeyface.util.Gles2ColoredTriangleBatch;
+import com.freezey.android.wearable.freezeyface.util.Gles2ColoredTriangleList;
+import com.freezey.android.wearable.freezeyface.util.Gles2IndexedTriangleList;
+import com.freezey.android.wearable.freezeyface.util.Gles2MeshBuilder;
+import com.freezey.android.wearable.freezeyface.util.Gles2ProgramCache;
+import com.freezey.android.wearable.freezeyface.util.Gles2State;
+import com.freezey.android.wearable.freezeyface.util.Gles2TexturedQuadList;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * OpenGL ES 2.0 variant of {@link FreezeyWatchFaceService}, selectable as a separate watch face.
+ *
+ * <p>The battery arcs, unread notification indicator and date ring ticks are indexed meshes
+ * tessellated to within {@link #TESSELLATION_TOLERANCE} of the true curves when their inputs
+ * change, merged into a single batch drawn with one draw call. The time readout is drawn as
+ * quads from a glyph atlas texture and the date ring labels from a texture re-rendered once a
+ * day. Complications are only supported by the Canvas face, which remains the default: this
+ * face shows none and doesn't accept taps.
+ *
+ * <p>Ambient mode follows the Canvas face. On low-bit screens nothing is anti-aliased, so the
+ * textures are rasterized and drawn hard-edged. With burn-in protection the digits are drawn as
+ * outlines, the arcs thin, and the frame is shifted by a few pixels each minute.
+ *
+ * <p>Frame timings are kept in the same {@link RenderStats} as the Canvas face, so the two can
+ * be compared with dumpsys on the same watch.
+ */
+public class FreezeyGlWatchFaceService extends Gles2WatchFaceService {
+    private static final String TAG = "FreezeyGlFace";
+
+    // Largest distance, in pixels, between a tessellated arc or circle and the true curve.
+    private static final float TESSELLATION_TOLERANCE = 0.25f;
+
+    // Subdirectory of the code cache that linked shader program binaries are saved in.
+    private static final String PROGRAM_BINARY_DIR = "gl_programs";
+
+    @Override
+    public Engine onCreateEngine() {
+        return new Engine();
+    }
+
+    private class Engine extends Gles2WatchFaceService.Engine {
+        private static final int MSG_UPDATE_TIME = 0;
+
+        private static final float HOUR_TEXT_SIZE = 80;
+        private static final float OUTER_DATES_TEXT_SIZE = 15;
+        private static final float OUTER_DATES_STROKE_WIDTH = 2f;
+
+        private static final float BATTERY_ARC_STROKE_WIDTH = 5f;
+        private static final float BATTERY_USED_STROKE_WIDTH = 2f;
+        private static final float BATTERY_CHARGING_MARKER_RADIUS = 4f;
+
+        // Width of the digit outlines and battery arcs in ambient with burn-in protection.
+        private static final float AMBIENT_OUTLINE_STROKE_WIDTH = 2f;
+
+        private static final float UNREAD_RING_RADIUS = 10f;
+        private static final float UNREAD_DOT_RADIUS = 4f;
+        private static final float UNREAD_DISTANCE_FROM_BOTTOM = 40f;
+
+        // Ticks mark each day of the date ring, between its labels and the edge of the screen.
+        private static final float RING_TICK_OUTER_INSET = 2f;
+        private static final float RING_TICK_LENGTH = 6f;
+        private static final float RING_TICK_WIDTH = 2f;
+
+        private static final float MUTE_ALPHA = 100 / 255f;
+
+        // Vertices the triangle batch has room for before it needs to grow.
+        private static final int TRIANGLE_BATCH_CAPACITY = 2048;
+
+        private Calendar mCalendar;
+        private boolean mRegisteredTimeZoneReceiver = false;
+        private boolean mMuteMode;
+        private boolean mAmbient;
+        private boolean mLowBitAmbient;
+        private boolean mBurnInProtection;
+
+        private int mSurfaceWidth;
+        private int mSurfaceHeight;
+        private float mCenterX;
+        private float mCenterY;
+
+        private int mPrimaryColor;
+
+        /*
+         * Color of every triangle list and quad list, in RGBA order. The triangle lists keep a
+         * reference to this array, so color and mute changes only need it updated in place and
+         * the triangle batch rebuilt.
+         */
+        private final float[] mPrimaryRgba = new float[4];
+
+        // Used to rasterize the glyph atlas and date ring textures; they are tinted when drawn.
+        private Paint mHourPaint;
+        private Paint mOuterDatesPaint;
+
+        private final float[] mMvpMatrix = new float[16];
+
+        // mMvpMatrix shifted by the burn-in offset of the current frame, used for every draw.
+        private final float[] mFrameMvpMatrix = new float[16];
+
+        // Shadowed GL state of this engine's context, made current in every GL callback.
+        private final Gles2State mGlState = new Gles2State();
+
+        private Gles2ColoredTriangleList.Program mTriangleProgram;
+        private Gles2ColoredTriangleBatch.Program mBatchProgram;
+        private Gles2TexturedQuadList.Program mQuadProgram;
+
+        private final Gles2MeshBuilder mMeshBuilder = new Gles2MeshBuilder(TESSELLATION_TOLERANCE);
+
+        private Gles2IndexedTriangleList mRingTicks;
+        private Gles2IndexedTriangleList mUnreadRing;
+        private Gles2IndexedTriangleList mUnreadDot;
+        private Gles2IndexedTriangleList mBatteryLevelArc;
+        private Gles2IndexedTriangleList mBatteryUsedArc;
+        private Gles2IndexedTriangleList mBatteryChargingMarker;
+
+        /*
+         * All triangle lists visible in the current state, in their current colors. Rebuilt when
+         * mTriangleBatchDirty is set by a change in geometry, color, ambient or unread state.
+         */
+        private Gles2ColoredTriangleBatch mTriangleBatch;
+        private boolean mTriangleBatchDirty = true;
+
+        // Battery state the arcs were last tessellated for.
+        private int mBatteryArcsLevel = -1;
+        private boolean mBatteryArcsCharging;
+        private boolean mBatteryArcsOutlined;
+
+        private final DigitGlyphAtlas mDigitGlyphAtlas = new DigitGlyphAtlas();
+        private final GlyphSprites mGlyphSprites = new GlyphSprites();
+        private int mGlyphTextureId;
+        private int mGlyphAtlasWidth;
+        private Gles2TexturedQuadList mReadoutQuads;
+
+        /*
+         * Glyph atlas for ambient on low-bit or burn-in protected screens: aliased on the former,
+         * outlined on the latter. Built on first use after the screen properties are known.
+         */
+        private final GlyphSprites mAmbientGlyphSprites = new GlyphSprites();
+        private int mAmbientGlyphTextureId;
+        private int mAmbientGlyphAtlasWidth;
+        private boolean mAmbientGlyphTextureDirty = true;
+
+        private DateRingCache mDateRingCache;
+        private int mDateRingTextureId;
+        private boolean mDateRingTextureDirty = true;
+        private boolean mDateRingTextureAntiAlias;
+        private Gles2TexturedQuadList mDateRingQuad;
+
+        // Decides when the next interactive update is due, see TickScheduler.
+        private final TickScheduler mTickScheduler = new TickScheduler(TickScheduler.SYSTEM_CLOCK);
+
+        // Frame counts and opt-in per-phase timings, reported through dumpsys.
+        private final RenderStats mRenderStats = new RenderStats();
+
+        // Shared with the Canvas face, so its config activity applies here.
+        private WatchFaceSettings mSettings;
+
+        // The settings the engine's geometry and colors currently reflect.
+        private WatchFaceSettings.Snapshot mAppliedSettings;
+
+        private final WatchFaceSettings.OnSettingsChangedListener mSettingsListener =
+                new WatchFaceSettings.OnSettingsChangedListener() {
+                    @Override
+                    public void onSettingsChanged(
+                            WatchFaceSettings.Snapshot previous,
+                            WatchFaceSettings.Snapshot current) {
+                        updateSettings(current);
+                    }
+                };
+
+        private boolean mUnreadNotificationsPreference;
+        private int mNumberOfUnreadNotifications = 0;
+
+        // Cached battery level and charging state, updated by broadcasts while visible.
+        private final BatteryState mBatteryState =
+                new BatteryState(
+                        new BatteryState.Callback() {
+                            @Override
+                            public void onBatteryStateChanged() {
+                                invalidate();
+                            }
+                        });
+
+        private final BroadcastReceiver mTimeZoneReceiver =
+                new BroadcastReceiver() {
+                    @Override
+                    public void onReceive(Context context, Intent intent) {
+                        mCalendar.setTimeZone(TimeZone.getDefault());
+                        initializeDateFormats();
+                        invalidate();
+                    }
+                };
+
+        // Handler to update the time in interactive mode, at the instants TickScheduler picks.
+        private final Handler mUpdateTimeHandler =
+                new Handler() {
+                    @Override
+                    public void handleMessage(Message message) {
+                        invalidate();
+                        if (shouldTimerBeRunning()) {
+                            long delayMs =
+                                    mTickScheduler.getDelayMs(mDateRingCache.getValidUntilMs());
+                            mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
+                        }
+                    }
+                };
+
+        @Override
+        public void onCreate(SurfaceHolder holder) {
+            Log.d(TAG, "onCreate");
+
+            super.onCreate(holder);
+
+            mSettings = WatchFaceSettings.getInstance(FreezeyGlWatchFaceService.this);
+            mSettings.addListener(mSettingsListener);
+
+            // Lets a recreated engine load its shader programs instead of compiling them.
+            Gles2ProgramCache.setBinaryDirectory(new File(getCodeCacheDir(), PROGRAM_BINARY_DIR));
+
+            mCalendar = Calendar.getInstance();
+            mDateRingCache = new DateRingCache();
+
+            setWatchFaceStyle(
+                    new WatchFaceStyle.Builder(FreezeyGlWatchFaceService.this)
+                            .setHideNotificationIndicator(true)
+                            .build());
+
+            mHourPaint = new Paint();
+            mHourPaint.setColor(Color.WHITE);
+            mHourPaint.setAntiAlias(true);
+            mHourPaint.setTextSize(HOUR_TEXT_SIZE);
+
+            mOuterDatesPaint = new Paint();
+            mOuterDatesPaint.setColor(Color.WHITE);
+            mOuterDatesPaint.setStrokeWidth(OUTER_DATES_STROKE_WIDTH);
+            mOuterDatesPaint.setAntiAlias(true);
+            mOuterDatesPaint.setStyle(Paint.Style.STROKE);
+            mOuterDatesPaint.setTextSize(OUTER_DATES_TEXT_SIZE);
+
+            applySettings(mSettings.getSnapshot());
+            updatePrimaryRgba();
+        }
+
+        private void applySettings(WatchFaceSettings.Snapshot settings) {
+            mAppliedSettings = settings;
+            mPrimaryColor = settings.getMarkerColor();
+            mUnreadNotificationsPreference = settings.isUnreadNotificationsEnabled();
+            mTickScheduler.setBlinkEnabled(settings.isBlinkEnabled());
+        }
+
+        /*
+         * Applies a settings change to the running face, rebuilding only what depends on the
+         * settings that differ from the applied ones.
+         */
+        private void updateSettings(WatchFaceSettings.Snapshot settings) {
+            int changes = settings.diff(mAppliedSettings);
+            applySettings(settings);
+
+            if ((changes & WatchFaceSettings.Snapshot.MARKER_COLOR) != 0) {
+                // Also re-bakes the triangle batch, whose vertices carry the color.
+                updatePrimaryRgba();
+            }
+            if ((changes & WatchFaceSettings.Snapshot.UNREAD_NOTIFICATIONS) != 0) {
+                mTriangleBatchDirty = true;
+            }
+            if ((changes & WatchFaceSettings.Snapshot.BLINK) != 0) {
+                updateTimer();
+            }
+            // The background color setting isn't used by this face.
+            if ((changes & ~WatchFaceSettings.Snapshot.BACKGROUND_COLOR) != 0) {
+                invalidate();
+            }
+        }
+
+        private void initializeDateFormats() {
+            mDateRingCache.setTimeZoneAndLocale(TimeZone.getDefault(), Locale.getDefault());
+            mTickScheduler.setTimeZone(TimeZone.getDefault());
+            mDateRingTextureDirty = true;
+        }
+
+        private void updatePrimaryRgba() {
+            // As on the Canvas face, ambient is white, and low-bit screens can't show the dimming.
+            int color = mAmbient ? Color.WHITE : mPrimaryColor;
+            mPrimaryRgba[0] = Color.red(color) / 255f;
+            mPrimaryRgba[1] = Color.green(color) / 255f;
+            mPrimaryRgba[2] = Color.blue(color) / 255f;
+            mPrimaryRgba[3] = mMuteMode && !isHardEdged() ? MUTE_ALPHA : 1f;
+            mTriangleBatchDirty = true;
+        }
+
+        @Override
+        public void onGlContextCreated() {
+            super.onGlContextCreated();
+            // A new context may reuse the old one's handle and object IDs, so the context
+            // generation is bumped here rather than detected, and every object holding a buffer,
+            // program or texture ID is dropped. Nothing from the old context is deleted: its
+            // objects are already gone, and their IDs may now name objects of this context.
+            mGlState.makeCurrent();
+            mGlState.reset();
+            mRingTicks = null;
+            mUnreadRing = null;
+            mUnreadDot = null;
+            mBatteryLevelArc = null;
+            mBatteryUsedArc = null;
+            mBatteryChargingMarker = null;
+            mBatteryArcsLevel = -1;
+            mTriangleBatchDirty = true;
+
+            // Programs, buffers and textures don't survive a lost context, so all are recreated.
+            mTriangleProgram = Gles2ColoredTriangleList.Program.getInstance();
+            mBatchProgram = Gles2ColoredTriangleBatch.Program.getInstance();
+            mTriangleBatch = new Gles2ColoredTriangleBatch(mBatchProgram, TRIANGLE_BATCH_CAPACITY);
+            mQuadProgram = Gles2TexturedQuadList.Program.getInstance();
+            // The readout is rebuilt every frame, so it is streamed through a ring of VBOs.
+            mReadoutQuads = new Gles2TexturedQuadList(
+                    mQuadProgram, DigitGlyphAtlas.NUM_GLYPHS, true /* useVbo */);
+            mDateRingQuad = new Gles2TexturedQuadList(mQuadProgram, 1);
+            mGlyphTextureId = 0;
+            mAmbientGlyphTextureId = 0;
+            mAmbientGlyphTextureDirty = true;
+            mDateRingTextureId = 0;
+
+            GLES20.glEnable(GLES20.GL_BLEND);
+            GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        }
+
+        @Override
+        public void onGlSurfaceCreated(int width, int height) {
+            super.onGlSurfaceCreated(width, height);
+            mGlState.makeCurrent();
+
+            mSurfaceWidth = width;
+            mSurfaceHeight = height;
+            mCenterX = width / 2f;
+            mCenterY = height / 2f;
+
+            // Maps pixels to clip space with the origin at the top left, like a Canvas.
+            Matrix.orthoM(mMvpMatrix, 0, 0, width, height, 0, -1, 1);
+
+            buildSurfaceGeometry();
+            mBatteryArcsLevel = -1;
+
+            if (mGlyphTextureId != 0) {
+                Gles2TexturedQuadList.deleteTexture(mGlyphTextureId);
+            }
+            mGlyphSprites.buildGlyphs(mHourPaint);
+            Bitmap glyphAtlas = mGlyphSprites.getGlyphAtlas();
+            mGlyphAtlasWidth = glyphAtlas.getWidth();
+            mGlyphTextureId = Gles2TexturedQuadList.loadTexture(glyphAtlas);
+            // Only the cell geometry is needed once the atlas is uploaded.
+            mGlyphSprites.recycle();
+            mDigitGlyphAtlas.update(mHourPaint);
+
+            mAmbientGlyphTextureDirty = true;
+            mDateRingTextureDirty = true;
+        }
+
+        /* Whether ambient is drawn without anti-aliasing, on a low-bit screen. */
+        private boolean isHardEdged() {
+            return mAmbient && mLowBitAmbient;
+        }
+
+        /* Whether the digits and arcs are drawn as thin outlines, to protect against burn-in. */
+        private boolean isOutlined() {
+            return mAmbient && mBurnInProtection;
+        }
+
+        /* Whether the time readout is drawn from the ambient glyph atlas. */
+        private boolean useAmbientGlyphs() {
+            return isHardEdged() || isOutlined();
+        }
+
+        /*
+         * Rasterizes the ambient glyph atlas if the screen properties changed since it was last
+         * built. Its cells are laid out like the interactive atlas, from the same text size.
+         */
+        private void updateAmbientGlyphTexture() {
+            if (!mAmbientGlyphTextureDirty) {
+                return;
+            }
+            mAmbientGlyphTextureDirty = false;
+
+            Paint paint = new Paint(mHourPaint);
+            paint.setAntiAlias(!mLowBitAmbient);
+            if (mBurnInProtection) {
+                paint.setStyle(Paint.Style.STROKE);
+                paint.setStrokeWidth(AMBIENT_OUTLINE_STROKE_WIDTH);
+            }
+            if (mAmbientGlyphTextureId != 0) {
+                Gles2TexturedQuadList.deleteTexture(mAmbientGlyphTextureId);
+            }
+            mAmbientGlyphSprites.buildGlyphs(paint);
+            Bitmap glyphAtlas = mAmbientGlyphSprites.getGlyphAtlas();
+            mAmbientGlyphAtlasWidth = glyphAtlas.getWidth();
+            mAmbientGlyphTextureId = Gles2TexturedQuadList.loadTexture(glyphAtlas);
+            mAmbientGlyphSprites.recycle();
+        }
+
+        /*
+         * Builds the geometry that only depends on the surface size: the date ring ticks and the
+         * unread notification indicator.
+         */
+        private void buildSurfaceGeometry() {
+            float outerRadius = mCenterY - RING_TICK_OUTER_INSET;
+            float innerRadius = outerRadius - RING_TICK_LENGTH;
+            mMeshBuilder.clear();
+            for (int i = 0; i < DateRingCache.DAYS; i++) {
+                double angle = Math.toRadians(mDateRingCache.getAngle(i));
+                float sin = (float) Math.sin(angle);
+                float cos = (float) Math.cos(angle);
+                mMeshBuilder.addLine(
+                        mCenterX + innerRadius * sin, mCenterY - innerRadius * cos,
+                        mCenterX + outerRadius * sin, mCenterY - outerRadius * cos,
+                        RING_TICK_WIDTH);
+            }
+            mRingTicks = mMeshBuilder.build(mTriangleProgram, mPrimaryRgba);
+
+            float unreadY = mSurfaceHeight - UNREAD_DISTANCE_FROM_BOTTOM;
+            mMeshBuilder.clear();
+            mMeshBuilder.addStrokedArc(mCenterX, unreadY, UNREAD_RING_RADIUS, UNREAD_RING_RADIUS,
+                    0, 360, OUTER_DATES_STROKE_WIDTH);
+            mUnreadRing = mMeshBuilder.build(mTriangleProgram, mPrimaryRgba);
+            mMeshBuilder.clear();
+            mMeshBuilder.addDisk(mCenterX, unreadY, UNREAD_DOT_RADIUS);
+            mUnreadDot = mMeshBuilder.build(mTriangleProgram, mPrimaryRgba);
+            mTriangleBatchDirty = true;
+        }
+
+        /*
+         * Re-tessellates the battery arcs and charging marker if the battery state changed since
+         * they were last built.
+         */
+        private void updateBatteryGeometry() {
+            int level = mBatteryState.getLevelPercent();
+            boolean charging = mBatteryState.isCharging();
+            boolean outlined = isOutlined();
+            if (level == mBatteryArcsLevel
+                    && charging == mBatteryArcsCharging
+                    && outlined == mBatteryArcsOutlined) {
+                return;
+            }
+            mBatteryArcsLevel = level;
+            mBatteryArcsCharging = charging;
+            mBatteryArcsOutlined = outlined;
+            mTriangleBatchDirty = true;
+
+            // Same oval as the Canvas face: 1/6th in from either side, around the center.
+            float radiusX = mCenterX * 2f / 3f;
+            float radiusY = mCenterY * 0.2f;
+            float levelSweep = 120 * level * .01f;
+
+            mMeshBuilder.clear();
+            mMeshBuilder.addStrokedArc(mCenterX, mCenterY, radiusX, radiusY,
+                    150 - levelSweep, levelSweep,
+                    outlined ? AMBIENT_OUTLINE_STROKE_WIDTH : BATTERY_ARC_STROKE_WIDTH);
+            mBatteryLevelArc = mMeshBuilder.build(mTriangleProgram, mPrimaryRgba);
+            mMeshBuilder.clear();
+            mMeshBuilder.addStrokedArc(mCenterX, mCenterY, radiusX, radiusY,
+                    30, 120 - levelSweep, BATTERY_USED_STROKE_WIDTH);
+            mBatteryUsedArc = mMeshBuilder.build(mTriangleProgram, mPrimaryRgba);
+
+            if (charging) {
+                double markerAngle = Math.toRadians(150 - levelSweep);
+                float markerX = mCenterX + radiusX * (float) Math.cos(markerAngle);
+                float markerY = mCenterY + radiusY * (float) Math.sin(markerAngle);
+                mMeshBuilder.clear();
+                if (outlined) {
+                    mMeshBuilder.addStrokedArc(markerX, markerY,
+                            BATTERY_CHARGING_MARKER_RADIUS, BATTERY_CHARGING_MARKER_RADIUS,
+                            0, 360, AMBIENT_OUTLINE_STROKE_WIDTH);
+                } else {
+                    mMeshBuilder.addDisk(markerX, markerY, BATTERY_CHARGING_MARKER_RADIUS);
+                }
+                mBatteryChargingMarker = mMeshBuilder.build(mTriangleProgram, mPrimaryRgba);
+            } else {
+                mBatteryChargingMarker = null;
+            }
+        }
+
+        /*
+         * Re-renders the date ring into a texture when the local day, time zone or locale
+         * changed, or when entering or leaving hard-edged ambient. The labels are rasterized with
+         * a Canvas, as GL has no text rendering.
+         */
+        private void updateDateRingTexture(long now) {
+            boolean antiAlias = !isHardEdged();
+            if (!mDateRingTextureDirty
+                    && mDateRingTextureId != 0
+                    && now < mDateRingCache.getValidUntilMs()
+                    && antiAlias == mDateRingTextureAntiAlias) {
+                return;
+            }
+            mDateRingTextureDirty = false;
+            mDateRingTextureAntiAlias = antiAlias;
+            mOuterDatesPaint.setAntiAlias(antiAlias);
+
+            Bitmap bitmap =
+                    Bitmap.createBitmap(mSurfaceWidth, mSurfaceHeight, Bitmap.Config.ARGB_8888);
+            mDateRingCache.draw(new Canvas(bitmap), now, mCenterX, mCenterY, mOuterDatesPaint);
+
+            if (mDateRingTextureId != 0) {
+                Gles2TexturedQuadList.deleteTexture(mDateRingTextureId);
+            }
+            mDateRingTextureId = Gles2TexturedQuadList.loadTexture(bitmap);
+            bitmap.recycle();
+
+            mDateRingQuad.clear();
+            mDateRingQuad.addQuad(0, 0, mSurfaceWidth, mSurfaceHeight, 0, 0, 1, 1);
+        }
+
+        @Override
+        public void onPropertiesChanged(Bundle properties) {
+            super.onPropertiesChanged(properties);
+            mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mBurnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
+            Log.d(TAG, "onPropertiesChanged: low-bit ambient = " + mLowBitAmbient
+                    + ", burn-in protection = " + mBurnInProtection);
+
+            // Textures are only rebuilt in onDraw, where the GL context is current.
+            mAmbientGlyphTextureDirty = true;
+            updatePrimaryRgba();
+            invalidate();
+        }
+
+        @Override
+        public void onTimeTick() {
+            super.onTimeTick();
+            invalidate();
+        }
+
+        @Override
+        public void onAmbientModeChanged(boolean inAmbientMode) {
+            super.onAmbientModeChanged(inAmbientMode);
+            Log.d(TAG, "onAmbientModeChanged: " + inAmbientMode);
+
+            mAmbient = inAmbientMode;
+            mRenderStats.setAmbient(mAmbient);
+            // Also re-bakes the triangle batch, for the ambient color and unread indicator.
+            updatePrimaryRgba();
+            invalidate();
+
+            updateTimer();
+        }
+
+        @Override
+        public void onInterruptionFilterChanged(int interruptionFilter) {
+            super.onInterruptionFilterChanged(interruptionFilter);
+            boolean inMuteMode = (interruptionFilter == WatchFaceService.INTERRUPTION_FILTER_NONE);
+
+            /* Dim display in mute mode. */
+            if (mMuteMode != inMuteMode) {
+                mMuteMode = inMuteMode;
+                updatePrimaryRgba();
+                invalidate();
+            }
+        }
+
+        @Override
+        public void onUnreadCountChanged(int count) {
+            Log.d(TAG, "onUnreadCountChanged(): " + count);
+
+            if (mUnreadNotificationsPreference && mNumberOfUnreadNotifications != count) {
+                mNumberOfUnreadNotifications = count;
+                mTriangleBatchDirty = true;
+                invalidate();
+            }
+        }
+
+        @Override
+        public void onDraw() {
+            mGlState.makeCurrent();
+            mRenderStats.begin(RenderStats.PHASE_ON_DRAW);
+
+            long now = System.currentTimeMillis();
+            mCalendar.setTimeInMillis(now);
+
+            if (isOutlined()) {
+                int minuteOfDay =
+                        mCalendar.get(Calendar.HOUR_OF_DAY) * 60 + mCalendar.get(Calendar.MINUTE);
+                Matrix.translateM(mFrameMvpMatrix, 0, mMvpMatrix, 0,
+                        AmbientRenderer.getBurnInShiftX(minuteOfDay),
+                        AmbientRenderer.getBurnInShiftY(minuteOfDay), 0);
+            } else {
+                System.arraycopy(mMvpMatrix, 0, mFrameMvpMatrix, 0, mMvpMatrix.length);
+            }
+
+            mRenderStats.begin(RenderStats.PHASE_BACKGROUND);
+            GLES20.glClearColor(0, 0, 0, 1);
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+            mRenderStats.end(RenderStats.PHASE_BACKGROUND);
+
+            mRenderStats.begin(RenderStats.PHASE_TRIANGLE_BATCH);
+            updateBatteryGeometry();
+            if (mTriangleBatchDirty) {
+                rebuildTriangleBatch();
+            }
+            mBatchProgram.use();
+            mTriangleBatch.draw(mFrameMvpMatrix);
+            mRenderStats.end(RenderStats.PHASE_TRIANGLE_BATCH);
+
+            mRenderStats.begin(RenderStats.PHASE_WATCH_FACE);
+            mQuadProgram.use();
+            updateDateRingTexture(now);
+            mDateRingQuad.draw(mFrameMvpMatrix, mDateRingTextureId, mPrimaryRgba);
+            drawTimeReadout(now);
+            mRenderStats.end(RenderStats.PHASE_WATCH_FACE);
+
+            mRenderStats.countFullFrame();
+            mRenderStats.end(RenderStats.PHASE_ON_DRAW);
+        }
+
+        private void rebuildTriangleBatch() {
+            mTriangleBatchDirty = false;
+
+            mTriangleBatch.clear();
+            mTriangleBatch.add(mRingTicks);
+            if (mUnreadNotificationsPreference && mNumberOfUnreadNotifications > 0) {
+                mTriangleBatch.add(mUnreadRing);
+                // As on the Canvas face, don't burn the screen with a solid dot in ambient.
+                if (!mAmbient) {
+                    mTriangleBatch.add(mUnreadDot);
+                }
+            }
+            mTriangleBatch.add(mBatteryLevelArc);
+            mTriangleBatch.add(mBatteryUsedArc);
+            if (mBatteryChargingMarker != null) {
+                mTriangleBatch.add(mBatteryChargingMarker);
+            }
+        }
+
+        /*
+         * Lays out the time readout and draws it from the glyph atlas texture, including the
+         * colon when it is shown. Hard-edged glyphs are placed on whole pixels, so the linear
+         * texture filter doesn't blend them with their neighbors.
+         */
+        private void drawTimeReadout(long now) {
+            int hour = mCalendar.get(Calendar.HOUR);
+            if (hour == 0) {
+                hour = 12;
+            }
+            mDigitGlyphAtlas.layout(hour, mCalendar.get(Calendar.MINUTE), mCenterX);
+
+            boolean drawColon =
+                    mAmbient || FaceRenderer.isColonShown(now, mTickScheduler.isBlinkEnabled());
+
+            GlyphSprites sprites = mGlyphSprites;
+            int textureId = mGlyphTextureId;
+            int atlasWidth = mGlyphAtlasWidth;
+            if (useAmbientGlyphs()) {
+                updateAmbientGlyphTexture();
+                sprites = mAmbientGlyphSprites;
+                textureId = mAmbientGlyphTextureId;
+                atlasWidth = mAmbientGlyphAtlasWidth;
+            }
+            boolean hardEdged = isHardEdged();
+
+            float top = mCenterY + sprites.getGlyphOffsetY();
+            if (hardEdged) {
+                top = Math.round(top);
+            }
+            float bottom = top + sprites.getGlyphCellHeight();
+
+            mReadoutQuads.clear();
+            for (int i = 0; i < mDigitGlyphAtlas.getReadoutLength(); i++) {
+                int glyph = mDigitGlyphAtlas.getReadoutGlyph(i);
+                if (glyph == DigitGlyphAtlas.COLON && !drawColon) {
+                    continue;
+                }
+                int atlasX = sprites.getGlyphAtlasX(glyph);
+                int cellWidth = sprites.getGlyphCellWidth(glyph);
+                float left = mDigitGlyphAtlas.getReadoutX(i) + sprites.getGlyphOffsetX(glyph);
+                if (hardEdged) {
+                    left = Math.round(left);
+                }
+                mReadoutQuads.addQuad(
+                        left, top, left + cellWidth, bottom,
+                        (float) atlasX / atlasWidth, 0,
+                        (float) (atlasX + cellWidth) / atlasWidth, 1);
+            }
+            mReadoutQuads.draw(mFrameMvpMatrix, textureId, mPrimaryRgba);
+        }
+
+        @Override
+        public void onVisibilityChanged(boolean visible) {
+            super.onVisibilityChanged(visible);
+
+            if (visible) {
+                // Settings changes are applied as they happen, see mSettingsListener.
+                registerReceiver();
+                // Update time zone in case it changed while we weren't visible.
+                mCalendar.setTimeZone(TimeZone.getDefault());
+                initializeDateFormats();
+                invalidate();
+            } else {
+                unregisterReceiver();
+            }
+
+            updateTimer();
+        }
+
+        /*
+         * Prints render stats as part of "adb shell dumpsys activity service", see RenderStats.
+         */
+        @Override
+        protected void dump(String prefix, FileDescriptor fd, PrintWriter out, String[] args) {
+            super.dump(prefix, fd, out, args);
+            mRenderStats.handleArgs(args);
+            mRenderStats.dump(prefix, out);
+            Gles2ProgramCache.dump(prefix, out);
+        }
+
+        @Override
+        public void onDestroy() {
+            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mSettings.removeListener(mSettingsListener);
+            super.onDestroy();
+        }
+
+        private void registerReceiver() {
+            if (mRegisteredTimeZoneReceiver) {
+                return;
+            }
+            mRegisteredTimeZoneReceiver = true;
+            IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            FreezeyGlWatchFaceService.this.registerReceiver(mTimeZoneReceiver, filter);
+            mBatteryState.register(FreezeyGlWatchFaceService.this);
+        }
+
+        private void unregisterReceiver() {
+            if (!mRegisteredTimeZoneReceiver) {
+                return;
+            }
+            mRegisteredTimeZoneReceiver = false;
+            FreezeyGlWatchFaceService.this.unregisterReceiver(mTimeZoneReceiver);
+            mBatteryState.unregister(FreezeyGlWatchFaceService.this);
+        }
+
+        /**
+         * Starts/stops the {@link #mUpdateTimeHandler} timer based on the state of the watch face.
+         */
+        private void updateTimer() {
+            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            if (shouldTimerBeRunning()) {
+                mUpdateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
+            }
+        }
+
+        /**
+         * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer should
+         * only run in active mode.
+         */
+        private boolean shouldTimerBeRunning() {
+            return isVisible() && !mAmbient;
+        }
+    }
+}
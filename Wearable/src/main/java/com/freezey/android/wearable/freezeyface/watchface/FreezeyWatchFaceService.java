@@ -16,19 +16,24 @@
 
 package com.freezey.android.wearable.freezeyface.watchface;
 
+import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.SharedPreferences;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.PorterDuff;
 import android.graphics.Rect;
-import android.os.BatteryManager;
+import android.graphics.RectF;
+import android.graphics.drawable.Icon;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
+import android.os.MessageQueue;
 import android.support.wearable.complications.ComplicationData;
 import android.support.wearable.complications.rendering.ComplicationDrawable;
 import android.support.wearable.watchface.CanvasWatchFaceService;
@@ -37,93 +42,23 @@ import android.support.wearable.watchface.WatchFaceStyle;
 import android.util.Log;
 import android.util.SparseArray;
 import android.view.SurfaceHolder;
-import com.freezey.android.wearable.freezeyface.R;
+import com.freezey.android.wearable.freezeyface.model.WatchFaceSettings;
 
-import com.freezey.android.wearable.freezeyface.config.FreezeyfaceComplicationConfigRecyclerViewAdapter;
 
-import java.text.SimpleDateFormat;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
 
 public class FreezeyWatchFaceService extends CanvasWatchFaceService {
     private static final String TAG = "FreezeyFace";
 
-    // Unique IDs for each complication. The settings activity that supports allowing users
-    // to select their complication data provider requires numbers to be >= 0.
-    private static final int BACKGROUND_COMPLICATION_ID = 0;
-
-    private static final int LEFT_COMPLICATION_ID = 100;
-    private static final int RIGHT_COMPLICATION_ID = 101;
-
-    // Background, Left and right complication IDs as array for Complication API.
-    private static final int[] COMPLICATION_IDS = {
-        BACKGROUND_COMPLICATION_ID, LEFT_COMPLICATION_ID, RIGHT_COMPLICATION_ID
-    };
-
-    // Left and right dial supported types.
-    private static final int[][] COMPLICATION_SUPPORTED_TYPES = {
-        {ComplicationData.TYPE_LARGE_IMAGE},
-        {
-            ComplicationData.TYPE_RANGED_VALUE,
-            ComplicationData.TYPE_ICON,
-            ComplicationData.TYPE_SHORT_TEXT,
-            ComplicationData.TYPE_SMALL_IMAGE
-        },
-        {
-            ComplicationData.TYPE_RANGED_VALUE,
-            ComplicationData.TYPE_ICON,
-            ComplicationData.TYPE_SHORT_TEXT,
-            ComplicationData.TYPE_SMALL_IMAGE
-        }
-    };
-
-    // Used by {@link FreezeyfaceComplicationConfigRecyclerViewAdapter} to check if complication location
-    // is supported in settings config activity.
-    public static int getComplicationId(
-            FreezeyfaceComplicationConfigRecyclerViewAdapter.ComplicationLocation complicationLocation) {
-        // Add any other supported locations here.
-        switch (complicationLocation) {
-            case BACKGROUND:
-                return BACKGROUND_COMPLICATION_ID;
-            case LEFT:
-                return LEFT_COMPLICATION_ID;
-            case RIGHT:
-                return RIGHT_COMPLICATION_ID;
-            default:
-                return -1;
-        }
-    }
-
-    // Used by {@link FreezeyfaceComplicationConfigRecyclerViewAdapter} to retrieve all complication ids.
-    public static int[] getComplicationIds() {
-        return COMPLICATION_IDS;
-    }
+    // Complication slots from bottom to top, see ComplicationLayout.
+    private static final int[] COMPLICATION_IDS = ComplicationLayout.getComplicationIds();
 
-    // Used by {@link FreezeyfaceComplicationConfigRecyclerViewAdapter} to see which complication types
-    // are supported in the settings config activity.
-    public static int[] getSupportedComplicationTypes(
-            FreezeyfaceComplicationConfigRecyclerViewAdapter.ComplicationLocation complicationLocation) {
-        // Add any other supported locations here.
-        switch (complicationLocation) {
-            case BACKGROUND:
-                return COMPLICATION_SUPPORTED_TYPES[0];
-            case LEFT:
-                return COMPLICATION_SUPPORTED_TYPES[1];
-            case RIGHT:
-                return COMPLICATION_SUPPORTED_TYPES[2];
-            default:
-                return new int[] {};
-        }
-    }
-
-    /*
-     * Update rate in milliseconds for interactive mode. We update once a second to advance the
-     * second hand.
-     */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final int BACKGROUND_COMPLICATION_ID =
+            ComplicationLayout.BACKGROUND_COMPLICATION_ID;
 
     @Override
     public Engine onCreateEngine() {
@@ -133,25 +68,45 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
     private class Engine extends CanvasWatchFaceService.Engine {
         private static final int MSG_UPDATE_TIME = 0;
 
+        // dumpsys arguments that switch between layered and direct rendering, see dump().
+        private static final String LAYERS_ON_ARG = "layers-on";
+        private static final String LAYERS_OFF_ARG = "layers-off";
+
         private static final float HOUR_STROKE_WIDTH = 5f;
         private static final float BATTERY_ARC_STROKE_WIDTH = 5f;
         private static final float BATTERY_USED_STROKE_WIDTH = 2f;
         private static final float OUTER_DATES_STROKE_WIDTH = 2f;
 
-        private static final int SHADOW_RADIUS = 6;
+        private static final float HOUR_TEXT_SIZE = 80;
+        private static final float OUTER_DATES_TEXT_SIZE = 15;
 
-        private static final String COLON_STRING = ":";
+        private static final float BATTERY_CHARGING_MARKER_RADIUS = 4f;
+
+        // Largest share of an ambient frame's pixels that may be lit, weighted by brightness.
+        private static final float AMBIENT_ON_PIXEL_BUDGET = 0.15f;
+
+        /*
+         * Ambient styles, each lighting fewer pixels than the one before. The face steps down
+         * while its frames are over AMBIENT_ON_PIXEL_BUDGET, and starts at full on entering
+         * ambient.
+         */
+        private static final int AMBIENT_STYLE_FULL = 0;
+        private static final int AMBIENT_STYLE_NO_BACKGROUND = 1;
+        private static final int AMBIENT_STYLE_OUTLINE = 2;
 
         private Calendar mCalendar;
+        // Set to the start of the next minute when its ambient layer is rendered ahead.
+        private Calendar mPrerenderCalendar;
         private boolean mRegisteredTimeZoneReceiver = false;
         private boolean mMuteMode;
 
+        private int mSurfaceWidth;
+        private int mSurfaceHeight;
         private float mCenterX;
         private float mCenterY;
 
 
         private int mPrimaryColor;
-        private int mShadowColor;
         private int mBackgroundColor;
 
         private Paint mHourPaint;
@@ -161,12 +116,78 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
 
         private Paint mBackgroundPaint;
 
-        private boolean mShouldDrawColons;
+        // Draws the time readout, colon and battery arcs, created with the paints.
+        private FaceRenderer mFaceRenderer;
+
+        // Bounds of the oval the battery arcs are drawn on, computed in onSurfaceChanged().
+        private final RectF mBatteryArcBounds = new RectF();
+
+        // Decides when the next interactive update is due, see TickScheduler.
+        private final TickScheduler mTickScheduler = new TickScheduler(TickScheduler.SYSTEM_CLOCK);
+
+        /*
+         * Whether to rasterize the elements that change at most once a minute into an offscreen
+         * layer. When false, every element is drawn directly to the screen on every frame. On
+         * by default, switched with dumpsys to compare the frame times of both paths.
+         */
+        private boolean mLayeredRendering = true;
+
+        /*
+         * Offscreen layer holding the date ring, battery arcs, unread indicator and the hour and
+         * minute digits. It is only re-rendered when the minute changes or mStaticLayerDirty is
+         * set by a change in colors, ambient, mute, unread or battery state.
+         */
+        private Bitmap mStaticLayerBitmap;
+        private Canvas mStaticLayerCanvas;
+        private boolean mStaticLayerDirty = true;
+        private int mStaticLayerMinuteOfDay = -1;
+
+        /*
+         * The last full frame (background, complications and static layer) without the colon.
+         * Frames where only the colon blinks restore this instead of redrawing everything. It is
+         * fully redrawn when the static layer is stale or mFrameDirty is set by a complication
+         * data or state change.
+         */
+        private Bitmap mFrameBitmap;
+        private Canvas mFrameCanvas;
+        private boolean mFrameDirty = true;
+
+        // Draws the face's own elements in ambient mode, in place of the interactive paths.
+        private final AmbientRenderer mAmbientRenderer =
+                new AmbientRenderer(HOUR_TEXT_SIZE, OUTER_DATES_TEXT_SIZE);
+
+        // Frame counts and opt-in per-phase timings, reported through dumpsys.
+        private final RenderStats mRenderStats = new RenderStats();
+
+        // Measures the lit share of ambient frames, in idle time after each one.
+        private final OnPixelRatioAnalyzer mOnPixelRatioAnalyzer =
+                new OnPixelRatioAnalyzer(AMBIENT_ON_PIXEL_BUDGET);
+        private int mAmbientStyle = AMBIENT_STYLE_FULL;
+
+        // When the last onTimeTick() arrived, cleared once its frame is drawn.
+        private long mTimeTickNanos;
+
+        /*
+         * Renders the next minute's ambient layer once the looper has nothing left to do after
+         * an ambient frame, so the next onTimeTick() only swaps it in and blits it. Also checks
+         * the frame against the on-pixel budget.
+         */
+        private final MessageQueue.IdleHandler mAmbientPrerenderHandler =
+                new MessageQueue.IdleHandler() {
+                    @Override
+                    public boolean queueIdle() {
+                        mAmbientPrerenderScheduled = false;
+                        if (mAmbient && isVisible()) {
+                            enforceOnPixelBudget();
+                            prerenderNextAmbientMinute();
+                        }
+                        return false;
+                    }
+                };
+        private boolean mAmbientPrerenderScheduled;
 
-        private Date mDate;
-        private SimpleDateFormat mDayOfWeekFormat;
-        private java.text.DateFormat mDateFormat;
-        private java.text.DateFormat mCurrentDateFormat;
+        // Labels, widths and angles for the outer date ring, rebuilt once per local day.
+        private DateRingCache mDateRingCache;
 
 
         /* Maps active complication ids to the data for that complication. Note: Data will only be
@@ -179,61 +200,115 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
          */
         private SparseArray<ComplicationDrawable> mComplicationDrawableSparseArray;
 
+        /*
+         * Each complication rendered into its own bitmap, re-rendered only when its data, the
+         * ambient or color state, or its time-dependent text changes.
+         */
+        private ComplicationRenderCache mComplicationRenderCache;
+
+        /*
+         * The background complication's large image, decoded off the UI thread at the surface
+         * size and drawn by drawBackground() instead of its ComplicationDrawable.
+         */
+        private BackgroundImageLoader mBackgroundImageLoader;
+
+        // Pixel bounds of each complication slot, computed in onSurfaceChanged().
+        private final ComplicationLayout mComplicationLayout = new ComplicationLayout();
+        private final Rect mComplicationBounds = new Rect();
+
+        // Topmost complication for each part of the screen, rebuilt in onSurfaceChanged().
+        private final ComplicationHitGrid mComplicationHitGrid = new ComplicationHitGrid();
+
+        private final ComplicationUpdateCoalescer<ComplicationData> mComplicationUpdateCoalescer =
+                new ComplicationUpdateCoalescer<>(
+                        new ComplicationUpdateCoalescer.Callback<ComplicationData>() {
+                            @Override
+                            public void onComplicationDataUpdate(
+                                    int complicationId, ComplicationData complicationData) {
+                                applyComplicationData(complicationId, complicationData);
+                            }
+
+                            @Override
+                            public void onComplicationUpdatesApplied() {
+                                invalidateFrame();
+                            }
+                        },
+                        new ComplicationUpdateCoalescer.HandlerScheduler(new Handler()));
+
         private boolean mAmbient;
         private boolean mLowBitAmbient;
         private boolean mBurnInProtection;
 
-        // Used to pull user's preferences for background color, highlight color, and visual
-        // indicating there are unread notifications.
-        SharedPreferences mSharedPref;
+        // User's preferences for highlight color, blinking, and the unread notifications visual.
+        private WatchFaceSettings mSettings;
+
+        // The settings the engine's paints and caches currently reflect.
+        private WatchFaceSettings.Snapshot mAppliedSettings;
+
+        // Applies a settings change made while the face is running, e.g. from the config activity.
+        private final WatchFaceSettings.OnSettingsChangedListener mSettingsListener =
+                new WatchFaceSettings.OnSettingsChangedListener() {
+                    @Override
+                    public void onSettingsChanged(
+                            WatchFaceSettings.Snapshot previous,
+                            WatchFaceSettings.Snapshot current) {
+                        updateSettings(current);
+                    }
+                };
 
         // User's preference for if they want visual shown to indicate unread notifications.
         private boolean mUnreadNotificationsPreference;
         private int mNumberOfUnreadNotifications = 0;
 
+        // Cached battery level and charging state, updated by broadcasts while visible.
+        private final BatteryState mBatteryState =
+                new BatteryState(
+                        new BatteryState.Callback() {
+                            @Override
+                            public void onBatteryStateChanged() {
+                                mStaticLayerDirty = true;
+                                invalidate();
+                            }
+                        });
+
         private final BroadcastReceiver mTimeZoneReceiver =
                 new BroadcastReceiver() {
                     @Override
                     public void onReceive(Context context, Intent intent) {
                         mCalendar.setTimeZone(TimeZone.getDefault());
+                        mPrerenderCalendar.setTimeZone(TimeZone.getDefault());
+                        initializeDateFormats();
                         invalidate();
                     }
                 };
 
-        // Handler to update the time once a second in interactive mode.
+        // Handler to update the time in interactive mode, at the instants TickScheduler picks.
         private final Handler mUpdateTimeHandler =
                 new Handler() {
                     @Override
                     public void handleMessage(Message message) {
                         invalidate();
                         if (shouldTimerBeRunning()) {
-                            long timeMs = System.currentTimeMillis();
                             long delayMs =
-                                    INTERACTIVE_UPDATE_RATE_MS
-                                            - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
+                                    mTickScheduler.getDelayMs(mDateRingCache.getValidUntilMs());
                             mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
                         }
                     }
                 };
 
-        private String formatTwoDigitNumber(int hour) {
-            return String.format("%02d", hour);
-        }
-
         @Override
         public void onCreate(SurfaceHolder holder) {
             Log.d(TAG, "onCreate");
 
             super.onCreate(holder);
 
-            // Used throughout watch face to pull user's preferences.
-            Context context = getApplicationContext();
-            mSharedPref =
-                    context.getSharedPreferences(
-                            getString(R.string.analog_complication_preference_file_key),
-                            Context.MODE_PRIVATE);
+            // Starts as the defaults if the settings haven't loaded yet, the listener follows up.
+            mSettings = WatchFaceSettings.getInstance(FreezeyWatchFaceService.this);
+            mSettings.addListener(mSettingsListener);
 
             mCalendar = Calendar.getInstance();
+            mPrerenderCalendar = Calendar.getInstance();
+            mDateRingCache = new DateRingCache();
 
             setWatchFaceStyle(
                     new WatchFaceStyle.Builder(FreezeyWatchFaceService.this)
@@ -241,27 +316,67 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
                             .setHideNotificationIndicator(true)
                             .build());
 
-            loadSavedPreferences();
+            applySettings(mSettings.getSnapshot());
             initializeComplicationsAndBackground();
             initializeWatchFace();
         }
 
-        // Pulls all user's preferences for watch face appearance.
-        private void loadSavedPreferences() {
-
+        // Copies the user's preferences for watch face appearance into the engine's fields.
+        private void applySettings(WatchFaceSettings.Snapshot settings) {
+            mAppliedSettings = settings;
             mBackgroundColor = Color.BLACK;
+            mPrimaryColor = settings.getMarkerColor();
+            mUnreadNotificationsPreference = settings.isUnreadNotificationsEnabled();
 
-            String markerColorResourceName =
-                    getApplicationContext().getString(R.string.saved_marker_color);
+            // In no-blink mode the colon is always drawn and the face wakes once a minute.
+            mTickScheduler.setBlinkEnabled(settings.isBlinkEnabled());
+        }
 
-            // Set defaults for colors
-            mPrimaryColor = mSharedPref.getInt(markerColorResourceName, Color.BLUE);
+        /*
+         * Applies a settings change to the running face, rebuilding only what depends on the
+         * settings that differ from the applied ones. The background color setting isn't used
+         * by this face, so changing it costs nothing.
+         */
+        private void updateSettings(WatchFaceSettings.Snapshot settings) {
+            int changes = settings.diff(mAppliedSettings);
+            applySettings(settings);
+
+            if ((changes & WatchFaceSettings.Snapshot.MARKER_COLOR) != 0) {
+                setPaintColor(mHourPaint, mPrimaryColor);
+                setPaintColor(mOuterDatesPaint, mPrimaryColor);
+                setPaintColor(mBatteryArcPaint, mPrimaryColor);
+                setPaintColor(mBatteryUsedPaint, mPrimaryColor);
+                setComplicationsActiveAndAmbientColors(mPrimaryColor);
+                mStaticLayerDirty = true;
+            }
+            if ((changes & WatchFaceSettings.Snapshot.UNREAD_NOTIFICATIONS) != 0) {
+                mStaticLayerDirty = true;
+            }
+            if ((changes & WatchFaceSettings.Snapshot.BLINK) != 0) {
+                updateTimer();
+            }
+            if (mStaticLayerDirty || (changes & WatchFaceSettings.Snapshot.BLINK) != 0) {
+                invalidateFrame();
+            }
+        }
 
-            String unreadNotificationPreferenceResourceName =
-                    getApplicationContext().getString(R.string.saved_unread_notifications_pref);
+        // Changes a paint's color, keeping its alpha, which carries the mute mode dimming.
+        private void setPaintColor(Paint paint, int color) {
+            int alpha = paint.getAlpha();
+            paint.setColor(color);
+            paint.setAlpha(alpha);
+        }
 
-            mUnreadNotificationsPreference =
-                    mSharedPref.getBoolean(unreadNotificationPreferenceResourceName, true);
+        /*
+         * Rebuilds the outer date ring's formatters and the tick scheduler's time zone. Called
+         * whenever the time zone or locale changes, never from the draw path.
+         */
+        private void initializeDateFormats() {
+            mDateRingCache.setTimeZoneAndLocale(TimeZone.getDefault(), Locale.getDefault());
+            mTickScheduler.setTimeZone(TimeZone.getDefault());
+            mStaticLayerDirty = true;
+            // A layer staged for the next minute shows the old zone's time.
+            mAmbientRenderer.invalidate();
         }
 
         private void initializeComplicationsAndBackground() {
@@ -273,26 +388,38 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
 
             mActiveComplicationDataSparseArray = new SparseArray<>(COMPLICATION_IDS.length);
 
-            // Creates a ComplicationDrawable for each location where the user can render a
-            // complication on the watch face. In this watch face, we create one for left, right,
-            // and background, but you could add many more.
-            ComplicationDrawable leftComplicationDrawable =
-                    new ComplicationDrawable(getApplicationContext());
-
-            ComplicationDrawable rightComplicationDrawable =
-                    new ComplicationDrawable(getApplicationContext());
+            // Creates a ComplicationDrawable for each slot in ComplicationLayout, kept in a
+            // SparseArray to simplify setting styles and ambient properties for all of them.
+            mComplicationDrawableSparseArray = new SparseArray<>(COMPLICATION_IDS.length);
 
-            ComplicationDrawable backgroundComplicationDrawable =
-                    new ComplicationDrawable(getApplicationContext());
+            for (int i = 0; i < COMPLICATION_IDS.length; i++) {
+                mComplicationDrawableSparseArray.put(
+                        COMPLICATION_IDS[i], new ComplicationDrawable(getApplicationContext()));
+            }
 
-            // Adds new complications to a SparseArray to simplify setting styles and ambient
-            // properties for all complications, i.e., iterate over them all.
-            mComplicationDrawableSparseArray = new SparseArray<>(COMPLICATION_IDS.length);
+            mComplicationRenderCache =
+                    new ComplicationRenderCache(
+                            new ComplicationRenderCache.Callback() {
+                                @Override
+                                public void onComplicationInvalidated() {
+                                    invalidateFrame();
+                                }
+                            });
+            for (int i = 0; i < COMPLICATION_IDS.length; i++) {
+                mComplicationRenderCache.add(
+                        COMPLICATION_IDS[i],
+                        mComplicationDrawableSparseArray.get(COMPLICATION_IDS[i]));
+            }
 
-            mComplicationDrawableSparseArray.put(LEFT_COMPLICATION_ID, leftComplicationDrawable);
-            mComplicationDrawableSparseArray.put(RIGHT_COMPLICATION_ID, rightComplicationDrawable);
-            mComplicationDrawableSparseArray.put(
-                    BACKGROUND_COMPLICATION_ID, backgroundComplicationDrawable);
+            mBackgroundImageLoader =
+                    new BackgroundImageLoader(
+                            getApplicationContext(),
+                            new BackgroundImageLoader.Callback() {
+                                @Override
+                                public void onBackgroundImageChanged() {
+                                    invalidateFrame();
+                                }
+                            });
 
             setComplicationsActiveAndAmbientColors(mPrimaryColor);
             setActiveComplications(COMPLICATION_IDS);
@@ -305,14 +432,13 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
             mHourPaint.setStrokeWidth(HOUR_STROKE_WIDTH);
             mHourPaint.setAntiAlias(true);
             mHourPaint.setStrokeCap(Paint.Cap.ROUND);
-            mHourPaint.setShadowLayer(SHADOW_RADIUS, 0, 0, mShadowColor);
+            mHourPaint.setTextSize(HOUR_TEXT_SIZE);
 
             mBatteryArcPaint = new Paint();
             mBatteryArcPaint.setColor(mPrimaryColor);
             mBatteryArcPaint.setStrokeWidth(BATTERY_ARC_STROKE_WIDTH);
             mBatteryArcPaint.setAntiAlias(true);
             mBatteryArcPaint.setStrokeCap(Paint.Cap.ROUND);
-            mBatteryArcPaint.setShadowLayer(SHADOW_RADIUS, 0,0,mShadowColor);
             mBatteryArcPaint.setStyle(Paint.Style.STROKE);
             
             mBatteryUsedPaint = new Paint();
@@ -320,7 +446,6 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
             mBatteryUsedPaint.setStrokeWidth(BATTERY_USED_STROKE_WIDTH);
             mBatteryUsedPaint.setAntiAlias(true);
             mBatteryUsedPaint.setStrokeCap(Paint.Cap.ROUND);
-            mBatteryUsedPaint.setShadowLayer(SHADOW_RADIUS, 0,0,mShadowColor);
             mBatteryUsedPaint.setStyle(Paint.Style.STROKE);
 
             mOuterDatesPaint = new Paint();
@@ -328,8 +453,14 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
             mOuterDatesPaint.setStrokeWidth(OUTER_DATES_STROKE_WIDTH);
             mOuterDatesPaint.setAntiAlias(true);
             mOuterDatesPaint.setStyle(Paint.Style.STROKE);
-            mOuterDatesPaint.setShadowLayer(SHADOW_RADIUS, 0, 0, mShadowColor);
-            mOuterDatesPaint.setTextSize(15);
+            mOuterDatesPaint.setTextSize(OUTER_DATES_TEXT_SIZE);
+
+            mFaceRenderer = new FaceRenderer(
+                    mHourPaint,
+                    mBatteryArcPaint,
+                    mBatteryUsedPaint,
+                    mBatteryArcPaint,
+                    BATTERY_CHARGING_MARKER_RADIUS);
         }
 
         /* Sets active/ambient mode colors for all complications.
@@ -361,11 +492,20 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
                     complicationDrawable.setRangedValuePrimaryColorAmbient(Color.WHITE);
                 }
             }
+            mComplicationRenderCache.invalidateAll();
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mSettings.removeListener(mSettingsListener);
+            Looper.myQueue().removeIdleHandler(mAmbientPrerenderHandler);
+            releaseLayers();
+            mAmbientRenderer.recycle();
+            mOnPixelRatioAnalyzer.recycle();
+            mComplicationRenderCache.recycle();
+            mBackgroundImageLoader.recycle();
+            mComplicationUpdateCoalescer.cancel();
             super.onDestroy();
         }
 
@@ -387,25 +527,57 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
                 complicationDrawable.setLowBitAmbient(mLowBitAmbient);
                 complicationDrawable.setBurnInProtection(mBurnInProtection);
             }
+            mComplicationRenderCache.invalidateAll();
+            mAmbientRenderer.setDeviceProperties(mLowBitAmbient, mBurnInProtection);
+            setAmbientStyle(AMBIENT_STYLE_FULL);
+            mFrameDirty = true;
         }
 
         /*
-         * Called when there is updated data for a complication id.
+         * Called when there is updated data for a complication id. Updates arriving together
+         * are applied by applyComplicationData() in one batch, with a single redraw.
          */
         @Override
         public void onComplicationDataUpdate(
                 int complicationId, ComplicationData complicationData) {
             Log.d(TAG, "onComplicationDataUpdate() id: " + complicationId);
 
+            long maxDelayMs = Long.MAX_VALUE;
+            if (shouldTimerBeRunning()) {
+                maxDelayMs = mTickScheduler.getDelayMs(mDateRingCache.getValidUntilMs());
+            }
+            mComplicationUpdateCoalescer.add(complicationId, complicationData, maxDelayMs);
+        }
+
+        private void applyComplicationData(int complicationId, ComplicationData complicationData) {
             // Adds/updates active complication data in the array.
             mActiveComplicationDataSparseArray.put(complicationId, complicationData);
 
             // Updates correct ComplicationDrawable with updated data.
             ComplicationDrawable complicationDrawable =
                     mComplicationDrawableSparseArray.get(complicationId);
-            complicationDrawable.setComplicationData(complicationData);
 
-            invalidate();
+            if (complicationId == BACKGROUND_COMPLICATION_ID) {
+                Icon largeImage = getBackgroundImage(complicationData);
+                mBackgroundImageLoader.setImage(largeImage);
+                // While the loader owns the image, the drawable gets no data, so it doesn't
+                // decode the image a second time. Taps are handled by onTapCommand() instead.
+                complicationDrawable.setComplicationData(
+                        largeImage == null ? complicationData : null);
+                mComplicationRenderCache.setDrawn(complicationId, largeImage == null);
+            } else {
+                complicationDrawable.setComplicationData(complicationData);
+            }
+            mComplicationRenderCache.setComplicationData(complicationId, complicationData);
+        }
+
+        /* Returns the image the background loader draws for the given data, or null if none. */
+        private Icon getBackgroundImage(ComplicationData complicationData) {
+            if (complicationData != null
+                    && complicationData.getType() == ComplicationData.TYPE_LARGE_IMAGE) {
+                return complicationData.getLargeImage();
+            }
+            return null;
         }
 
         @Override
@@ -413,29 +585,41 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
             Log.d(TAG, "OnTapCommand()");
             switch (tapType) {
                 case TAP_TYPE_TAP:
-
-                    // If your background complication is the first item in your array, you need
-                    // to walk backward through the array to make sure the tap isn't for a
-                    // complication above the background complication.
-                    for (int i = COMPLICATION_IDS.length - 1; i >= 0; i--) {
-                        int complicationId = COMPLICATION_IDS[i];
-                        ComplicationDrawable complicationDrawable =
-                                mComplicationDrawableSparseArray.get(complicationId);
-
-                        boolean successfulTap = complicationDrawable.onTap(x, y);
-
-                        if (successfulTap) {
-                            return;
-                        }
+                    // The grid already knows which complication is on top at this point.
+                    int complicationId = mComplicationHitGrid.getComplicationId(x, y);
+                    if (complicationId == ComplicationHitGrid.NO_COMPLICATION) {
+                        break;
+                    }
+                    ComplicationData complicationData =
+                            mActiveComplicationDataSparseArray.get(complicationId);
+                    if (complicationId == BACKGROUND_COMPLICATION_ID
+                            && getBackgroundImage(complicationData) != null) {
+                        // The drawable has no data while the loader draws the image.
+                        sendTapAction(complicationData);
+                    } else {
+                        mComplicationDrawableSparseArray.get(complicationId).onTap(x, y);
                     }
                     break;
             }
         }
 
+        private void sendTapAction(ComplicationData complicationData) {
+            PendingIntent tapAction = complicationData.getTapAction();
+            if (tapAction == null) {
+                return;
+            }
+            try {
+                tapAction.send();
+            } catch (PendingIntent.CanceledException e) {
+                Log.w(TAG, "Background complication tap action was canceled", e);
+            }
+        }
+
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            invalidate();
+            mTimeTickNanos = System.nanoTime();
+            invalidateFrame();
         }
 
         @Override
@@ -444,8 +628,14 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
             Log.d(TAG, "onAmbientModeChanged: " + inAmbientMode);
 
             mAmbient = inAmbientMode;
+            mRenderStats.setAmbient(mAmbient);
+            if (mAmbient) {
+                // The frame may fit the budget again, e.g. with a different background image.
+                setAmbientStyle(AMBIENT_STYLE_FULL);
+            }
 
-            updateWatchPaintStyles();
+            // The interactive paints keep their style, only the layer needs redrawing.
+            mStaticLayerDirty = true;
 
             // Update drawable complications' ambient state.
             // Note: ComplicationDrawable handles switching between active/ambient colors, we just
@@ -456,40 +646,14 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
                 complicationDrawable = mComplicationDrawableSparseArray.get(COMPLICATION_IDS[i]);
                 complicationDrawable.setInAmbientMode(mAmbient);
             }
+            mComplicationRenderCache.invalidateAll();
+            mAmbientRenderer.invalidate();
+            mFrameDirty = true;
 
             // Check and trigger whether or not timer should be running (only in active mode).
             updateTimer();
         }
 
-        private void updateWatchPaintStyles() {
-            if (mAmbient) {
-
-                mBackgroundPaint.setColor(Color.BLACK);
-
-//                mHourPaint.setColor(Color.WHITE);
-//                mOuterDatesPaint.setColor(Color.WHITE);
-
-                mHourPaint.setAntiAlias(false);
-                mOuterDatesPaint.setAntiAlias(false);
-
-                mHourPaint.clearShadowLayer();
-                mOuterDatesPaint.clearShadowLayer();
-
-            } else {
-
-                mBackgroundPaint.setColor(mBackgroundColor);
-
-                mHourPaint.setColor(mPrimaryColor);
-                mOuterDatesPaint.setColor(mPrimaryColor);
-
-                mHourPaint.setAntiAlias(true);
-                mOuterDatesPaint.setAntiAlias(true);
-
-                mHourPaint.setShadowLayer(SHADOW_RADIUS, 0, 0, mShadowColor);
-                mOuterDatesPaint.setShadowLayer(SHADOW_RADIUS, 0, 0, mShadowColor);
-            }
-        }
-
         @Override
         public void onInterruptionFilterChanged(int interruptionFilter) {
             super.onInterruptionFilterChanged(interruptionFilter);
@@ -500,10 +664,20 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
                 mMuteMode = inMuteMode;
                 mHourPaint.setAlpha(inMuteMode ? 100 : 255);
                 mOuterDatesPaint.setAlpha(inMuteMode ? 100 : 255);
+                mAmbientRenderer.setMuted(inMuteMode);
+                mStaticLayerDirty = true;
                 invalidate();
             }
         }
 
+        /*
+         * Requests a full redraw on the next frame, rather than a colon-only update.
+         */
+        private void invalidateFrame() {
+            mFrameDirty = true;
+            invalidate();
+        }
+
         @Override
         public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
             super.onSurfaceChanged(holder, format, width, height);
@@ -513,68 +687,298 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
              * insets, so that, on round watches with a "chin", the watch face is centered on the
              * entire screen, not just the usable portion.
              */
+            mSurfaceWidth = width;
+            mSurfaceHeight = height;
             mCenterX = width / 2f;
             mCenterY = height / 2f;
 
-            /*
-             * Calculates location bounds for right and left circular complications. Please note,
-             * we are not demonstrating a long text complication in this watch face.
-             *
-             * We suggest using at least 1/4 of the screen width for circular (or squared)
-             * complications and 2/3 of the screen width for wide rectangular complications for
-             * better readability.
-             */
-
-            // For most Wear devices, width and height are the same, so we just chose one (width).
-            int sizeOfComplication = width / 4;
-            int midpointOfScreen = width / 2;
-
-            int horizontalOffset = (midpointOfScreen - sizeOfComplication) / 2;
-            int verticalOffset = midpointOfScreen - (sizeOfComplication / 2);
-
-            Rect leftBounds =
-                    // Left, Top, Right, Bottom
-                    new Rect(
-                            horizontalOffset,
-                            verticalOffset,
-                            (horizontalOffset + sizeOfComplication),
-                            (verticalOffset + sizeOfComplication));
-
-            ComplicationDrawable leftComplicationDrawable =
-                    mComplicationDrawableSparseArray.get(LEFT_COMPLICATION_ID);
-            leftComplicationDrawable.setBounds(leftBounds);
+            //Arc begins 1/6th from the left and ends 1/6th from the right
+            mBatteryArcBounds.set(
+                    mCenterX / 3f, mCenterY * 0.8f, mCenterX * 10f / 6f, mCenterY * 1.2f);
+            mFaceRenderer.setGeometry(mCenterX, mCenterY, mBatteryArcBounds);
+
+            // Slot bounds are fractions of the screen, see ComplicationLayout. Hit regions are
+            // added bottom to top; taps outside the circle of a round screen hit nothing.
+            mComplicationLayout.setSurfaceSize(width, height);
+            mComplicationHitGrid.reset(width, height);
+            boolean isScreenRound = getResources().getConfiguration().isScreenRound();
+            for (int slot = 0; slot < ComplicationLayout.getSlotCount(); slot++) {
+                int complicationId = ComplicationLayout.getComplicationIdAt(slot);
+                mComplicationLayout.getBounds(slot, mComplicationBounds);
+
+                mComplicationDrawableSparseArray.get(complicationId)
+                        .setBounds(mComplicationBounds);
+                mComplicationRenderCache.onBoundsChanged(complicationId);
+
+                Rect bounds = mComplicationBounds;
+                int shape = ComplicationLayout.getShape(slot);
+                if (shape == ComplicationLayout.SHAPE_OVAL
+                        || (shape == ComplicationLayout.SHAPE_SCREEN && isScreenRound)) {
+                    mComplicationHitGrid.addOval(
+                            complicationId, bounds.left, bounds.top, bounds.right, bounds.bottom);
+                } else {
+                    mComplicationHitGrid.addRect(
+                            complicationId, bounds.left, bounds.top, bounds.right, bounds.bottom);
+                }
+            }
+            mBackgroundImageLoader.setSize(width, height);
+            mAmbientRenderer.setSurfaceSize(width, height, mBatteryArcBounds);
+            mOnPixelRatioAnalyzer.setSurfaceSize(width, height);
 
-            Rect rightBounds =
-                    // Left, Top, Right, Bottom
-                    new Rect(
-                            (midpointOfScreen + horizontalOffset),
-                            verticalOffset,
-                            (midpointOfScreen + horizontalOffset + sizeOfComplication),
-                            (verticalOffset + sizeOfComplication));
+            if (mLayeredRendering) {
+                allocateLayers();
+            }
+        }
 
-            ComplicationDrawable rightComplicationDrawable =
-                    mComplicationDrawableSparseArray.get(RIGHT_COMPLICATION_ID);
-            rightComplicationDrawable.setBounds(rightBounds);
+        /* Creates the static layer and frame bitmaps at the surface size. */
+        private void allocateLayers() {
+            releaseLayers();
+            mStaticLayerBitmap =
+                    Bitmap.createBitmap(mSurfaceWidth, mSurfaceHeight, Bitmap.Config.ARGB_8888);
+            mStaticLayerCanvas = new Canvas(mStaticLayerBitmap);
+            mStaticLayerDirty = true;
+
+            mFrameBitmap =
+                    Bitmap.createBitmap(mSurfaceWidth, mSurfaceHeight, Bitmap.Config.ARGB_8888);
+            mFrameCanvas = new Canvas(mFrameBitmap);
+            mFrameDirty = true;
+        }
 
-            Rect screenForBackgroundBound =
-                    // Left, Top, Right, Bottom
-                    new Rect(0, 0, width, height);
+        private void releaseLayers() {
+            if (mStaticLayerBitmap != null) {
+                mStaticLayerBitmap.recycle();
+                mStaticLayerBitmap = null;
+                mStaticLayerCanvas = null;
+            }
+            if (mFrameBitmap != null) {
+                mFrameBitmap.recycle();
+                mFrameBitmap = null;
+                mFrameCanvas = null;
+            }
+        }
 
-            ComplicationDrawable backgroundComplicationDrawable =
-                    mComplicationDrawableSparseArray.get(BACKGROUND_COMPLICATION_ID);
-            backgroundComplicationDrawable.setBounds(screenForBackgroundBound);
+        /*
+         * Switches between layered and direct rendering. The render stats are reset, so the
+         * next dump only has frames of the path now in use.
+         */
+        private void setLayeredRendering(boolean enabled) {
+            if (mLayeredRendering == enabled) {
+                return;
+            }
+            mLayeredRendering = enabled;
+            if (!enabled) {
+                releaseLayers();
+            } else if (mSurfaceWidth > 0 && mSurfaceHeight > 0) {
+                allocateLayers();
+            }
+            mRenderStats.reset();
+            invalidateFrame();
         }
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
+            mRenderStats.begin(RenderStats.PHASE_ON_DRAW);
+
+            // Updates still waiting for their batch belong in this frame.
+            if (mComplicationUpdateCoalescer.flush()) {
+                mFrameDirty = true;
+            }
+
             long now = System.currentTimeMillis();
             mCalendar.setTimeInMillis(now);
 
+            if (mAmbient) {
+                drawAmbientFrame(canvas, now);
+                mRenderStats.countFullFrame();
+                mRenderStats.end(RenderStats.PHASE_ON_DRAW);
+                recordTimeTickLatency();
+
+                if (!mAmbientPrerenderScheduled) {
+                    mAmbientPrerenderScheduled = true;
+                    Looper.myQueue().addIdleHandler(mAmbientPrerenderHandler);
+                }
+                return;
+            }
+
+            if (mLayeredRendering && mFrameBitmap != null) {
+                if (mFrameDirty
+                        || isStaticLayerStale()
+                        || mComplicationRenderCache.needsRender(now)) {
+                    drawBackgroundAndComplications(mFrameCanvas, now);
+                    updateStaticLayer(now);
+                    mFrameCanvas.drawBitmap(mStaticLayerBitmap, 0, 0, null);
+                    mFrameDirty = false;
+                    mRenderStats.countFullFrame();
+                } else {
+                    mRenderStats.countPartialFrame();
+                }
+
+                // The surface isn't guaranteed to hold the previous frame, so the whole backing
+                // bitmap is restored, then only the colon is painted on top.
+                canvas.drawBitmap(mFrameBitmap, 0, 0, null);
+            } else {
+                drawBackgroundAndComplications(canvas, now);
+                drawStaticElements(canvas, now);
+                mRenderStats.countFullFrame();
+            }
+
+            drawColon(canvas, now);
+
+            mRenderStats.end(RenderStats.PHASE_ON_DRAW);
+            recordTimeTickLatency();
+        }
+
+        /*
+         * Records the time from the last onTimeTick() to the end of the frame it requested,
+         * which includes waiting for the frame to be scheduled.
+         */
+        private void recordTimeTickLatency() {
+            if (mTimeTickNanos != 0 && mRenderStats.isEnabled()) {
+                mRenderStats.record(
+                        RenderStats.PHASE_TICK_TO_FRAME, System.nanoTime() - mTimeTickNanos);
+            }
+            mTimeTickNanos = 0;
+        }
+
+        /*
+         * Renders the ambient layer for the start of the next minute, with the battery and
+         * unread state as they are now. A change to either before the tick means the staged
+         * layer no longer matches and the tick renders its own.
+         */
+        private void prerenderNextAmbientMinute() {
+            mPrerenderCalendar.setTimeInMillis(System.currentTimeMillis());
+            mPrerenderCalendar.set(Calendar.SECOND, 0);
+            mPrerenderCalendar.set(Calendar.MILLISECOND, 0);
+            mPrerenderCalendar.add(Calendar.MINUTE, 1);
+
+            mRenderStats.begin(RenderStats.PHASE_AMBIENT_PRERENDER);
+            mAmbientRenderer.prerender(
+                    mPrerenderCalendar,
+                    mPrerenderCalendar.getTimeInMillis(),
+                    mDateRingCache,
+                    mBatteryState,
+                    mUnreadNotificationsPreference && mNumberOfUnreadNotifications > 0);
+            mRenderStats.end(RenderStats.PHASE_AMBIENT_PRERENDER);
+        }
+
+        /*
+         * Draws an ambient frame: the background and complications, then the ambient layer,
+         * all shifted together for burn-in protection. Reads no state that needs formatting or
+         * IPC, see AmbientRenderer.
+         */
+        private void drawAmbientFrame(Canvas canvas, long now) {
+            mRenderStats.begin(RenderStats.PHASE_WATCH_FACE);
+            mAmbientRenderer.update(
+                    mCalendar,
+                    now,
+                    mDateRingCache,
+                    mBatteryState,
+                    mUnreadNotificationsPreference && mNumberOfUnreadNotifications > 0);
+            mRenderStats.end(RenderStats.PHASE_WATCH_FACE);
+
+            composeAmbientFrame(canvas, now);
+        }
+
+        /* Draws an ambient frame from the layer picked by the last AmbientRenderer.update(). */
+        private void composeAmbientFrame(Canvas canvas, long now) {
+            mRenderStats.begin(RenderStats.PHASE_BACKGROUND);
             drawBackground(canvas);
+            mRenderStats.end(RenderStats.PHASE_BACKGROUND);
+
+            canvas.save();
+            canvas.translate(mAmbientRenderer.getShiftX(), mAmbientRenderer.getShiftY());
+            mRenderStats.begin(RenderStats.PHASE_COMPLICATIONS);
             drawComplications(canvas, now);
+            mRenderStats.end(RenderStats.PHASE_COMPLICATIONS);
+            mAmbientRenderer.draw(canvas);
+            canvas.restore();
+        }
+
+        /*
+         * Draws the last ambient frame again for the on-pixel probe. Nothing is timed, counted
+         * or rendered, so the stats and the complication counters only cover frames shown.
+         */
+        private void composeAmbientProbe(Canvas probe, long now) {
+            drawBackground(probe);
+
+            probe.save();
+            probe.translate(mAmbientRenderer.getShiftX(), mAmbientRenderer.getShiftY());
+            mComplicationRenderCache.drawCached(probe, now);
+            mAmbientRenderer.draw(probe);
+            probe.restore();
+        }
+
+        /*
+         * Measures the frame on screen and, if it lights more than AMBIENT_ON_PIXEL_BUDGET,
+         * steps down to the next ambient style and redraws. Over several idle passes this keeps
+         * stepping down until the frame fits or there is no leaner style left.
+         */
+        private void enforceOnPixelBudget() {
+            Canvas probe = mOnPixelRatioAnalyzer.beginFrame();
+            if (probe == null) {
+                return;
+            }
+            composeAmbientProbe(probe, System.currentTimeMillis());
+            mOnPixelRatioAnalyzer.endFrame();
+
+            if (mOnPixelRatioAnalyzer.isOverBudget() && mAmbientStyle < AMBIENT_STYLE_OUTLINE) {
+                setAmbientStyle(mAmbientStyle + 1);
+                invalidateFrame();
+            }
+        }
+
+        private void setAmbientStyle(int ambientStyle) {
+            mAmbientStyle = ambientStyle;
+            mAmbientRenderer.setReducedStyle(ambientStyle >= AMBIENT_STYLE_OUTLINE);
+        }
+
+        private void drawBackgroundAndComplications(Canvas canvas, long now) {
+            mRenderStats.begin(RenderStats.PHASE_BACKGROUND);
+            drawBackground(canvas);
+            mRenderStats.end(RenderStats.PHASE_BACKGROUND);
+
+            mRenderStats.begin(RenderStats.PHASE_COMPLICATIONS);
+            drawComplications(canvas, now);
+            mRenderStats.end(RenderStats.PHASE_COMPLICATIONS);
+        }
+
+        /*
+         * Draws the elements that change at most once a minute, i.e. the static layer's content.
+         */
+        private void drawStaticElements(Canvas canvas, long now) {
+            mRenderStats.begin(RenderStats.PHASE_UNREAD);
             drawUnreadNotificationIcon(canvas);
-            drawWatchFace(canvas);
+            mRenderStats.end(RenderStats.PHASE_UNREAD);
+
+            mRenderStats.begin(RenderStats.PHASE_WATCH_FACE);
+            drawWatchFace(canvas, now);
+            mRenderStats.end(RenderStats.PHASE_WATCH_FACE);
+
+            mRenderStats.begin(RenderStats.PHASE_BATTERY);
             drawBatteryIndicator(canvas);
+            mRenderStats.end(RenderStats.PHASE_BATTERY);
+        }
+
+        private boolean isStaticLayerStale() {
+            int minuteOfDay =
+                    mCalendar.get(Calendar.HOUR_OF_DAY) * 60 + mCalendar.get(Calendar.MINUTE);
+            return mStaticLayerDirty || minuteOfDay != mStaticLayerMinuteOfDay;
+        }
+
+        /*
+         * Re-renders the offscreen layer if the minute changed or one of its other inputs was
+         * marked dirty since the last frame.
+         */
+        private void updateStaticLayer(long now) {
+            if (!isStaticLayerStale()) {
+                return;
+            }
+            mStaticLayerDirty = false;
+            mStaticLayerMinuteOfDay =
+                    mCalendar.get(Calendar.HOUR_OF_DAY) * 60 + mCalendar.get(Calendar.MINUTE);
+
+            mStaticLayerCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            drawStaticElements(mStaticLayerCanvas, now);
         }
 
         private void drawUnreadNotificationIcon(Canvas canvas) {
@@ -598,146 +1002,45 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
 
         private void drawBackground(Canvas canvas) {
 
-            if (mAmbient && (mLowBitAmbient || mBurnInProtection)) {
+            if (mAmbient
+                    && (mLowBitAmbient
+                            || mBurnInProtection
+                            || mAmbientStyle >= AMBIENT_STYLE_NO_BACKGROUND)) {
                 canvas.drawColor(Color.BLACK);
 
+            } else if (mBackgroundImageLoader.getBitmap(mAmbient) != null) {
+                canvas.drawBitmap(mBackgroundImageLoader.getBitmap(mAmbient), 0, 0, null);
+
             } else {
                 canvas.drawColor(mBackgroundColor);
             }
         }
 
         private void drawComplications(Canvas canvas, long currentTimeMillis) {
-            int complicationId;
-            ComplicationDrawable complicationDrawable;
-
-            for (int i = 0; i < COMPLICATION_IDS.length; i++) {
-                complicationId = COMPLICATION_IDS[i];
-                complicationDrawable = mComplicationDrawableSparseArray.get(complicationId);
-
-                complicationDrawable.draw(canvas, currentTimeMillis);
-            }
+            mComplicationRenderCache.draw(canvas, currentTimeMillis);
         }
 
-        private void drawWatchFace(Canvas canvas) {
+        private void drawWatchFace(Canvas canvas, long now) {
 
             /*
              * Draw the day and dates across the top edge of the circle
              */
+            mDateRingCache.draw(canvas, now, mCenterX, mCenterY, mOuterDatesPaint);
 
-            final float mDegreesSeparation = 360 / 3 / 7; //We want it to occupy one-third of the outer edge and divide into 7 days
-            final float mDistanceFromEdge = 25;
-            /*
-             * Save the canvas state before we can begin to rotate it.
-             */
-            canvas.save();
-
-
-            mHourPaint.setTextSize(40);
-            mDate = new Date();
-            long now = System.currentTimeMillis();
-            long timeToDraw = now - 3*24*60*60*1000;
-            mDate.setTime(timeToDraw);
-            mDayOfWeekFormat = new SimpleDateFormat("EEE", Locale.getDefault());
-            mDayOfWeekFormat.setCalendar(mCalendar);
-            mDateFormat = new SimpleDateFormat("d", Locale.getDefault());
-            mDateFormat.setCalendar(mCalendar);
-            mCurrentDateFormat = new SimpleDateFormat("MMM d", Locale.getDefault());
-
-
-            /*
-             * Draw the first date
-             */
-            canvas.rotate((mDegreesSeparation * -4), mCenterX, mCenterY); //Rotate back to the first day to draw
-            for (int i = 1; i <= 7; i++){
-                float prevTextSize = mOuterDatesPaint.getTextSize();
-                if (timeToDraw == now) {
-                    canvas.rotate(mDegreesSeparation, mCenterX, mCenterY);
-                    mOuterDatesPaint.setTextSize(mOuterDatesPaint.getTextSize() * 1.4f);
-                    canvas.drawText(mDayOfWeekFormat.format(mDate).substring(0, 3), mCenterX - (mOuterDatesPaint.measureText(mDayOfWeekFormat.format(mDate).substring(0, 3)) / 2), mDistanceFromEdge, mOuterDatesPaint);
-                    canvas.drawText(mCurrentDateFormat.format(mDate), mCenterX - (mOuterDatesPaint.measureText(mCurrentDateFormat.format(mDate)) / 2), mDistanceFromEdge + mOuterDatesPaint.getTextSize(), mOuterDatesPaint);
-                    mOuterDatesPaint.setTextSize(prevTextSize);
-                    canvas.rotate(mDegreesSeparation, mCenterX, mCenterY);
-                } else {
-                    canvas.drawText(mDayOfWeekFormat.format(mDate).substring(0, 2), mCenterX - (mOuterDatesPaint.measureText(mDayOfWeekFormat.format(mDate).substring(0, 2)) / 2), mDistanceFromEdge, mOuterDatesPaint);
-                    canvas.drawText(mDateFormat.format(mDate), mCenterX - (mOuterDatesPaint.measureText(mDateFormat.format(mDate)) / 2), mDistanceFromEdge + mOuterDatesPaint.getTextSize(), mOuterDatesPaint);
-                }
-
-                timeToDraw = timeToDraw + 24*60*60*1000;
-                mDate.setTime(timeToDraw);
-
-                canvas.rotate(mDegreesSeparation, mCenterX, mCenterY);
-            }
-
-            /* Restore the canvas' original orientation. */
-            canvas.restore();
-
-
-            String hourString;
-            int hour = mCalendar.get(Calendar.HOUR);
-            if (hour == 0) {
-                hour = 12;
-            }
-            hourString = String.valueOf(hour);
-            mHourPaint.setTextSize(80);
-            float hourxOffset = mCenterX - (mHourPaint.measureText(hourString + ":01") / 2);
-            float houryOffset = mCenterY;
-
-            canvas.drawText(hourString, hourxOffset, houryOffset, mHourPaint);
-
-            hourxOffset += mHourPaint.measureText(hourString);
-
-            // In ambient and mute modes, always draw the first colon. Otherwise, draw the
-            // first colon for the first half of each second.
-            mShouldDrawColons = (System.currentTimeMillis() % 2000) < 1000;
-            if (isInAmbientMode() || mShouldDrawColons) {
-                canvas.drawText(COLON_STRING, hourxOffset, houryOffset, mHourPaint);
-            }
-            hourxOffset += mHourPaint.measureText(COLON_STRING);
-//
-            // Draw the minutes.
-            String minuteString = formatTwoDigitNumber(mCalendar.get(Calendar.MINUTE));
-            canvas.drawText(minuteString, hourxOffset, houryOffset, mHourPaint);
+            // The colon blinks, so it is drawn by drawColon() on top of the layer.
+            mFaceRenderer.drawTimeReadout(canvas, mCalendar, false);
         }
 
-        private void drawBatteryIndicator(Canvas canvas){
-            IntentFilter ifilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-            Intent batteryStatus = FreezeyWatchFaceService.this.registerReceiver(null, ifilter);
-            int level;
-            //Level
-            level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        private void drawColon(Canvas canvas, long now) {
+            // In ambient, mute and no-blink modes, always draw the colon. Otherwise, draw it for
+            // the first half of each second.
+            mFaceRenderer.drawColon(
+                    canvas, now, mTickScheduler.isBlinkEnabled() && !isInAmbientMode());
+        }
 
-            //Arc begins 1/6th from the left and ends 1/6th from the right
-            float left = mCenterX / 3f;
-            float top = mCenterY*0.8f;
-            float right = mCenterX * 10f / 6f;
-            float bottom = mCenterY * 1.2f;
-            float maxArcLength = 120;
-            float startRight = 150 - maxArcLength*level*.01f;
-            float arcLength = maxArcLength*level*.01f;
-
-            canvas.drawArc(
-                    left,
-                    top,
-                    right,
-                    bottom,
-                    startRight,
-                    arcLength,
-                    false,
-                    mBatteryArcPaint
-            );
-
-            arcLength = maxArcLength - arcLength;
-            startRight = 30f;
-            canvas.drawArc(
-                    left,
-                    top,
-                    right,
-                    bottom,
-                    startRight,
-                    arcLength,
-                    false,
-                    mBatteryUsedPaint
-            );
+        private void drawBatteryIndicator(Canvas canvas) {
+            mFaceRenderer.drawBatteryIndicator(
+                    canvas, mBatteryState.getLevelPercent(), mBatteryState.isCharging());
         }
 
         @Override
@@ -745,22 +1048,13 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
             super.onVisibilityChanged(visible);
 
             if (visible) {
-
-                // Preferences might have changed since last time watch face was visible.
-                loadSavedPreferences();
-
-                // With the rest of the watch face, we update the paint colors based on
-                // ambient/active mode callbacks, but because the ComplicationDrawable handles
-                // the active/ambient colors, we only need to update the complications' colors when
-                // the user actually makes a change to the highlight color, not when the watch goes
-                // in and out of ambient mode.
-                setComplicationsActiveAndAmbientColors(mPrimaryColor);
-                updateWatchPaintStyles();
-
+                // Settings changes are applied as they happen, see mSettingsListener.
                 registerReceiver();
                 // Update time zone in case it changed while we weren't visible.
                 mCalendar.setTimeZone(TimeZone.getDefault());
-                invalidate();
+                mPrerenderCalendar.setTimeZone(TimeZone.getDefault());
+                initializeDateFormats();
+                invalidateFrame();
             } else {
                 unregisterReceiver();
             }
@@ -769,6 +1063,44 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
             updateTimer();
         }
 
+        /*
+         * Prints render stats as part of "adb shell dumpsys activity service". Also accepts the
+         * stats-on, stats-off and stats-reset arguments, see RenderStats, and layers-on and
+         * layers-off to switch between layered and direct rendering.
+         */
+        @Override
+        protected void dump(String prefix, FileDescriptor fd, PrintWriter out, String[] args) {
+            super.dump(prefix, fd, out, args);
+
+            if (args != null) {
+                for (String arg : args) {
+                    if (LAYERS_ON_ARG.equals(arg)) {
+                        setLayeredRendering(true);
+                    } else if (LAYERS_OFF_ARG.equals(arg)) {
+                        setLayeredRendering(false);
+                    }
+                }
+            }
+
+            mRenderStats.handleArgs(args);
+            mRenderStats.dump(prefix, out);
+            out.println(prefix + "Layered rendering: " + (mLayeredRendering ? "on" : "off"));
+            out.println(prefix + "Complications: rendered="
+                    + mComplicationRenderCache.getRenderCount()
+                    + " cached=" + mComplicationRenderCache.getBlitCount()
+                    + " updates=" + mComplicationUpdateCoalescer.getUpdateCount()
+                    + " savedRedraws=" + mComplicationUpdateCoalescer.getSavedRedrawCount());
+            out.println(prefix + "Ambient: frames=" + mAmbientRenderer.getFrameCount()
+                    + " layersRendered=" + mAmbientRenderer.getLayerRenderCount()
+                    + " prerendered=" + mAmbientRenderer.getPrerenderCount()
+                    + " swappedIn=" + mAmbientRenderer.getStagedSwapCount());
+            out.println(prefix + "Ambient on-pixel ratio: last="
+                    + Math.round(mOnPixelRatioAnalyzer.getLastRatio() * 100) + "%"
+                    + " budget=" + Math.round(mOnPixelRatioAnalyzer.getBudget() * 100) + "%"
+                    + " measured=" + mOnPixelRatioAnalyzer.getMeasureCount()
+                    + " style=" + mAmbientStyle);
+        }
+
         @Override
         public void onUnreadCountChanged(int count) {
             Log.d(TAG, "onUnreadCountChanged(): " + count);
@@ -777,6 +1109,7 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
 
                 if (mNumberOfUnreadNotifications != count) {
                     mNumberOfUnreadNotifications = count;
+                    mStaticLayerDirty = true;
                     invalidate();
                 }
             }
@@ -788,7 +1121,9 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
             }
             mRegisteredTimeZoneReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
             FreezeyWatchFaceService.this.registerReceiver(mTimeZoneReceiver, filter);
+            mBatteryState.register(FreezeyWatchFaceService.this);
         }
 
         private void unregisterReceiver() {
@@ -797,6 +1132,7 @@ public class FreezeyWatchFaceService extends CanvasWatchFaceService {
             }
             mRegisteredTimeZoneReceiver = false;
             FreezeyWatchFaceService.this.unregisterReceiver(mTimeZoneReceiver);
+            mBatteryState.unregister(FreezeyWatchFaceService.this);
         }
 
         /**
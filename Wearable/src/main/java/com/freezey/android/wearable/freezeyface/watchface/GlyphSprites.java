@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * Pre-rendered sprites for the digits and colon of the time readout, in a single atlas bitmap
+ * with one cell per glyph. The GL face uploads the atlas as a texture, as GL has no text
+ * rendering, and draws the readout as quads laid out from the cell geometry.
+ */
+class GlyphSprites {
+
+    private static final int NUM_GLYPHS = DigitGlyphAtlas.NUM_GLYPHS;
+
+    /* Atlas with one cell per glyph, laid out left to right. */
+    private Bitmap mGlyphAtlas;
+    private final int[] mGlyphAtlasX = new int[NUM_GLYPHS];
+    private final int[] mGlyphCellWidth = new int[NUM_GLYPHS];
+    private final int[] mGlyphOffsetX = new int[NUM_GLYPHS];
+    private int mGlyphCellHeight;
+    private int mGlyphOffsetY;
+
+    /**
+     * Renders each glyph in {@link DigitGlyphAtlas#GLYPHS} with the given text paint.
+     *
+     * @param textPaint paint with the readout's typeface, text size and style
+     */
+    void buildGlyphs(Paint textPaint) {
+        Paint paint = new Paint(textPaint);
+        paint.setAlpha(255);
+
+        // Room for the stroke of outlined glyphs, and for anti-aliasing.
+        int padding = (int) Math.ceil(paint.getStrokeWidth()) + 1;
+        Paint.FontMetricsInt fontMetrics = paint.getFontMetricsInt();
+        mGlyphOffsetY = fontMetrics.top - padding;
+        mGlyphCellHeight = fontMetrics.bottom - fontMetrics.top + 2 * padding;
+
+        Rect bounds = new Rect();
+        int atlasWidth = 0;
+        for (int i = 0; i < NUM_GLYPHS; i++) {
+            paint.getTextBounds(DigitGlyphAtlas.GLYPHS, i, 1, bounds);
+            float advance = paint.measureText(DigitGlyphAtlas.GLYPHS, i, 1);
+
+            int left = Math.min(0, bounds.left) - padding;
+            int right = Math.max((int) Math.ceil(advance), bounds.right) + padding;
+            mGlyphOffsetX[i] = left;
+            mGlyphCellWidth[i] = right - left;
+            mGlyphAtlasX[i] = atlasWidth;
+            atlasWidth += mGlyphCellWidth[i];
+        }
+
+        recycle();
+        mGlyphAtlas = Bitmap.createBitmap(atlasWidth, mGlyphCellHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(mGlyphAtlas);
+        for (int i = 0; i < NUM_GLYPHS; i++) {
+            canvas.drawText(
+                    DigitGlyphAtlas.GLYPHS, i, 1,
+                    mGlyphAtlasX[i] - mGlyphOffsetX[i],
+                    -mGlyphOffsetY,
+                    paint);
+        }
+    }
+
+    /*
+     * Atlas geometry. Each cell is offset from the glyph's origin, its left edge on the
+     * baseline, by getGlyphOffsetX() and getGlyphOffsetY().
+     */
+
+    Bitmap getGlyphAtlas() {
+        return mGlyphAtlas;
+    }
+
+    int getGlyphAtlasX(int glyph) {
+        return mGlyphAtlasX[glyph];
+    }
+
+    int getGlyphCellWidth(int glyph) {
+        return mGlyphCellWidth[glyph];
+    }
+
+    int getGlyphOffsetX(int glyph) {
+        return mGlyphOffsetX[glyph];
+    }
+
+    int getGlyphCellHeight() {
+        return mGlyphCellHeight;
+    }
+
+    int getGlyphOffsetY() {
+        return mGlyphOffsetY;
+    }
+
+    /** Releases the atlas bitmap; the cell geometry stays valid. */
+    void recycle() {
+        if (mGlyphAtlas != null) {
+            mGlyphAtlas.recycle();
+            mGlyphAtlas = null;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+
+import java.util.Arrays;
+
+/**
+ * Measures how much of an ambient frame is lit, the main power cost of an OLED screen.
+ *
+ * <p>The caller draws the frame a second time into a probe bitmap the size of the surface,
+ * between {@link #beginFrame} and {@link #endFrame}. The probe is read back {@link #SCALE} rows
+ * at a time and box-downsampled: each block of SCALE by SCALE pixels is averaged, so thin
+ * outlines count for the share of the block they cover however they fall on the pixel grid.
+ * The blocks' luminances are binned into a histogram, and the on-pixel ratio is the mean
+ * luminance over the blocks: 1 for a fully white frame, 0.3 for a frame lit at 30% brightness.
+ * Nearly black blocks count as off. The probe, its row buffer and the histogram are allocated
+ * once per surface size, so a measurement allocates nothing.
+ */
+class OnPixelRatioAnalyzer {
+
+    /** Side of the blocks the probe is averaged over, in pixels. */
+    static final int SCALE = 8;
+
+    static final int HISTOGRAM_BINS = 16;
+
+    /* Luminance below the first bin's upper edge is treated as off. */
+    private static final int OFF_BINS = 1;
+
+    private final float mBudget;
+
+    private Bitmap mProbeBitmap;
+    private Canvas mProbeCanvas;
+    private int[] mRows = new int[0];
+    private final int[] mHistogram = new int[HISTOGRAM_BINS];
+    private int mBlockCount;
+
+    private float mLastRatio = -1;
+    private long mMeasureCount;
+
+    /**
+     * @param budget largest on-pixel ratio a frame may have, e.g. 0.15f for 15%
+     */
+    OnPixelRatioAnalyzer(float budget) {
+        mBudget = budget;
+    }
+
+    void setSurfaceSize(int width, int height) {
+        if (mProbeBitmap != null) {
+            mProbeBitmap.recycle();
+        }
+        // 16 bits per pixel is plenty for a luminance estimate and halves the probe's memory.
+        mProbeBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        mProbeCanvas = new Canvas(mProbeBitmap);
+        mRows = new int[width * SCALE];
+    }
+
+    /**
+     * Clears the probe and returns a canvas, in surface coordinates, to draw the frame into.
+     * Returns null if there is no surface yet.
+     */
+    Canvas beginFrame() {
+        if (mProbeCanvas == null) {
+            return null;
+        }
+        mProbeCanvas.drawColor(Color.BLACK, PorterDuff.Mode.SRC);
+        mProbeCanvas.save();
+        return mProbeCanvas;
+    }
+
+    /** Measures the frame drawn since {@link #beginFrame} and returns its on-pixel ratio. */
+    float endFrame() {
+        mProbeCanvas.restore();
+        int width = mProbeBitmap.getWidth();
+        int height = mProbeBitmap.getHeight();
+
+        resetHistogram();
+        for (int y = 0; y < height; y += SCALE) {
+            int rows = Math.min(SCALE, height - y);
+            mProbeBitmap.getPixels(mRows, 0, width, 0, y, width, rows);
+            addRows(mRows, width, rows);
+        }
+        mLastRatio = computeRatio();
+        mMeasureCount++;
+        return mLastRatio;
+    }
+
+    void resetHistogram() {
+        Arrays.fill(mHistogram, 0);
+        mBlockCount = 0;
+    }
+
+    /**
+     * Bins the blocks of a band of up to {@link #SCALE} rows of opaque ARGB pixels, stored row
+     * after row. Blocks cut off by the right edge are averaged over the pixels they have.
+     */
+    void addRows(int[] pixels, int width, int rows) {
+        for (int left = 0; left < width; left += SCALE) {
+            int right = Math.min(left + SCALE, width);
+            int sum = 0;
+            for (int row = 0; row < rows; row++) {
+                int offset = row * width;
+                for (int x = left; x < right; x++) {
+                    sum += getLuminance(pixels[offset + x]);
+                }
+            }
+            int luminance = sum / ((right - left) * rows);
+            mHistogram[luminance * HISTOGRAM_BINS / 256]++;
+            mBlockCount++;
+        }
+    }
+
+    /** Returns the on-pixel ratio of the blocks added since {@link #resetHistogram}. */
+    float computeRatio() {
+        if (mBlockCount == 0) {
+            return 0;
+        }
+        float lit = 0;
+        for (int bin = OFF_BINS; bin < HISTOGRAM_BINS; bin++) {
+            // Each bin counts at the luminance of its center.
+            lit += mHistogram[bin] * (bin + 0.5f) / HISTOGRAM_BINS;
+        }
+        return lit / mBlockCount;
+    }
+
+    /** Returns whether the last measured frame lit more than the budget allows. */
+    boolean isOverBudget() {
+        return mLastRatio > mBudget;
+    }
+
+    /** Returns the last measured on-pixel ratio, or -1 before the first measurement. */
+    float getLastRatio() {
+        return mLastRatio;
+    }
+
+    float getBudget() {
+        return mBudget;
+    }
+
+    long getMeasureCount() {
+        return mMeasureCount;
+    }
+
+    void recycle() {
+        if (mProbeBitmap != null) {
+            mProbeBitmap.recycle();
+            mProbeBitmap = null;
+            mProbeCanvas = null;
+        }
+    }
+
+    /* Rec. 601 luma in [0, 255]; the probe is opaque, so alpha is ignored. */
+    private static int getLuminance(int pixel) {
+        int red = (pixel >> 16) & 0xff;
+        int green = (pixel >> 8) & 0xff;
+        int blue = pixel & 0xff;
+        return (red * 77 + green * 150 + blue * 29) >> 8;
+    }
+}
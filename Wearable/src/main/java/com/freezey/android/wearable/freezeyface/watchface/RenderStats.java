@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Opt-in per-phase timing of the watch face's draw path.
+ *
+ * <p>Samples are kept in fixed-size ring buffers of primitive longs, one per phase and mode
+ * (interactive or ambient), so recording a sample never allocates. Percentiles are only
+ * computed when the stats are dumped. Frame counts, including how many frames were drawn in
+ * full versus as a colon-only update, are always kept, even while timing is disabled.
+ *
+ * <p>To use it on a watch:
+ * <pre>
+ * adb shell dumpsys activity service \
+ *     com.freezey.android.wearable.freezeyface/.watchface.FreezeyWatchFaceService [args]</pre>
+ *
+ * where args may be stats-on, stats-off or stats-reset. The Canvas face also accepts layers-off
+ * and layers-on, which switch it to drawing every element directly on every frame and back,
+ * resetting the stats; comparing the onDraw percentiles of both runs gives the saving of its
+ * offscreen layers. The OpenGL face, .watchface.FreezeyGlWatchFaceService, records its frames
+ * the same way and accepts the same stats arguments.
+ */
+class RenderStats {
+
+    static final int PHASE_ON_DRAW = 0;
+    static final int PHASE_BACKGROUND = 1;
+    static final int PHASE_COMPLICATIONS = 2;
+    static final int PHASE_WATCH_FACE = 3;
+    static final int PHASE_BATTERY = 4;
+    static final int PHASE_UNREAD = 5;
+    static final int PHASE_TRIANGLE_BATCH = 6;
+    static final int PHASE_TICK_TO_FRAME = 7;
+    static final int PHASE_AMBIENT_PRERENDER = 8;
+
+    private static final String[] PHASE_NAMES = {
+        "onDraw",
+        "drawBackground",
+        "drawComplications",
+        "drawWatchFace",
+        "drawBatteryIndicator",
+        "drawUnreadNotificationIcon",
+        "drawTriangleBatch",
+        "onTimeTickToFrame",
+        "ambientPrerender"
+    };
+
+    private static final int NUM_PHASES = PHASE_NAMES.length;
+
+    private static final int MODE_INTERACTIVE = 0;
+    private static final int MODE_AMBIENT = 1;
+
+    private static final String[] MODE_NAMES = {"interactive", "ambient"};
+
+    private static final int NUM_MODES = MODE_NAMES.length;
+
+    /** Number of samples kept per phase and mode. */
+    private static final int CAPACITY = 512;
+
+    /** Arguments accepted by {@link #handleArgs}. */
+    private static final String ARG_ENABLE = "stats-on";
+    private static final String ARG_DISABLE = "stats-off";
+    private static final String ARG_RESET = "stats-reset";
+
+    private final long[][][] mSamples = new long[NUM_MODES][NUM_PHASES][CAPACITY];
+
+    /* Total number of samples recorded per mode and phase; the ring index is this % CAPACITY. */
+    private final long[][] mSampleCounts = new long[NUM_MODES][NUM_PHASES];
+
+    private final long[] mPhaseStartNanos = new long[NUM_PHASES];
+
+    private final long[] mFrameCounts = new long[NUM_MODES];
+    private final long[] mFullFrameCounts = new long[NUM_MODES];
+    private final long[] mPartialFrameCounts = new long[NUM_MODES];
+
+    /* Scratch space for computing percentiles at dump time. */
+    private final long[] mSortBuffer = new long[CAPACITY];
+
+    private boolean mEnabled;
+    private int mMode = MODE_INTERACTIVE;
+
+    boolean isEnabled() {
+        return mEnabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    /** Selects which mode's buffers subsequent samples are recorded into. */
+    void setAmbient(boolean ambient) {
+        mMode = ambient ? MODE_AMBIENT : MODE_INTERACTIVE;
+    }
+
+    void begin(int phase) {
+        if (mEnabled) {
+            mPhaseStartNanos[phase] = System.nanoTime();
+        }
+    }
+
+    void end(int phase) {
+        if (mEnabled) {
+            record(phase, System.nanoTime() - mPhaseStartNanos[phase]);
+        }
+    }
+
+    /** Records a single sample, in nanoseconds, for the given phase. */
+    void record(int phase, long nanos) {
+        long count = mSampleCounts[mMode][phase]++;
+        mSamples[mMode][phase][(int) (count % CAPACITY)] = nanos;
+    }
+
+    /** Counts a frame that was drawn in full. */
+    void countFullFrame() {
+        mFrameCounts[mMode]++;
+        mFullFrameCounts[mMode]++;
+    }
+
+    /** Counts a frame where only the colon was updated. */
+    void countPartialFrame() {
+        mFrameCounts[mMode]++;
+        mPartialFrameCounts[mMode]++;
+    }
+
+    void reset() {
+        for (int mode = 0; mode < NUM_MODES; mode++) {
+            Arrays.fill(mSampleCounts[mode], 0);
+            mFrameCounts[mode] = 0;
+            mFullFrameCounts[mode] = 0;
+            mPartialFrameCounts[mode] = 0;
+        }
+    }
+
+    /** Applies any stats arguments passed to dumpsys. */
+    void handleArgs(String[] args) {
+        if (args == null) {
+            return;
+        }
+        for (String arg : args) {
+            if (ARG_ENABLE.equals(arg)) {
+                setEnabled(true);
+            } else if (ARG_DISABLE.equals(arg)) {
+                setEnabled(false);
+            } else if (ARG_RESET.equals(arg)) {
+                reset();
+            }
+        }
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.print("RenderStats: timing ");
+        writer.println(mEnabled ? "enabled" : "disabled");
+
+        for (int mode = 0; mode < NUM_MODES; mode++) {
+            writer.print(prefix);
+            writer.print("  ");
+            writer.print(MODE_NAMES[mode]);
+            writer.print(": frames=");
+            writer.print(mFrameCounts[mode]);
+            writer.print(" full=");
+            writer.print(mFullFrameCounts[mode]);
+            writer.print(" colonOnly=");
+            writer.println(mPartialFrameCounts[mode]);
+
+            for (int phase = 0; phase < NUM_PHASES; phase++) {
+                int size = (int) Math.min(mSampleCounts[mode][phase], CAPACITY);
+                if (size == 0) {
+                    continue;
+                }
+                System.arraycopy(mSamples[mode][phase], 0, mSortBuffer, 0, size);
+                Arrays.sort(mSortBuffer, 0, size);
+
+                writer.print(prefix);
+                writer.print("    ");
+                writer.print(PHASE_NAMES[phase]);
+                writer.print(": n=");
+                writer.print(mSampleCounts[mode][phase]);
+                writer.print(" p50=");
+                writer.print(percentile(size, 50) / 1000);
+                writer.print("us p95=");
+                writer.print(percentile(size, 95) / 1000);
+                writer.print("us p99=");
+                writer.print(percentile(size, 99) / 1000);
+                writer.println("us");
+            }
+        }
+    }
+
+    /* Nearest-rank percentile of the first size entries of the sorted buffer. */
+    private long percentile(int size, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * size);
+        return mSortBuffer[Math.max(0, rank - 1)];
+    }
+}
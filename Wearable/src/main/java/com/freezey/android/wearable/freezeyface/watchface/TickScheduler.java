@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes when the watch face next changes visibly in interactive mode, so the engine can
+ * post exactly one update message for that instant instead of waking on a fixed interval.
+ *
+ * <p>The visible changes are the colon blink (every second, unless blinking is disabled), the
+ * minute rollover and the date ring's day change. Battery changes don't need a tick: they are
+ * delivered by broadcast and invalidate the face directly.
+ *
+ * <p>The current time comes from a {@link Clock}, so the schedule can be checked against a
+ * fake clock.
+ */
+class TickScheduler {
+
+    /** Source of the current wall clock time. */
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    /** The system wall clock. */
+    static final Clock SYSTEM_CLOCK =
+            new Clock() {
+                @Override
+                public long currentTimeMillis() {
+                    return System.currentTimeMillis();
+                }
+            };
+
+    /* The colon is shown for the first half of every two seconds, so it toggles each second. */
+    static final long BLINK_INTERVAL_MS = TimeUnit.SECONDS.toMillis(1);
+
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Clock mClock;
+
+    private boolean mBlinkEnabled = true;
+
+    private TimeZone mTimeZone = TimeZone.getDefault();
+
+    TickScheduler(Clock clock) {
+        mClock = clock;
+    }
+
+    /**
+     * Enables or disables the colon blink. With blinking disabled the colon is always drawn and
+     * interactive wakeups drop to once per minute.
+     */
+    void setBlinkEnabled(boolean blinkEnabled) {
+        mBlinkEnabled = blinkEnabled;
+    }
+
+    boolean isBlinkEnabled() {
+        return mBlinkEnabled;
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mTimeZone = timeZone;
+    }
+
+    /**
+     * Returns the first instant after the clock's current time at which something visible
+     * changes.
+     *
+     * @param nextDayChangeMs next time the date ring changes, or 0 if unknown
+     */
+    long getNextChangeMs(long nextDayChangeMs) {
+        return getNextChangeMs(mClock.currentTimeMillis(), nextDayChangeMs);
+    }
+
+    /** Returns the delay from the clock's current time until {@link #getNextChangeMs}. */
+    long getDelayMs(long nextDayChangeMs) {
+        long nowMs = mClock.currentTimeMillis();
+        return getNextChangeMs(nowMs, nextDayChangeMs) - nowMs;
+    }
+
+    private long getNextChangeMs(long nowMs, long nextDayChangeMs) {
+        long next;
+        if (mBlinkEnabled) {
+            next = nowMs - (nowMs % BLINK_INTERVAL_MS) + BLINK_INTERVAL_MS;
+        } else {
+            // Local minutes start on the zone's offset, which isn't always a whole minute.
+            long localMs = nowMs + mTimeZone.getOffset(nowMs);
+            next = nowMs - (localMs % MINUTE_MS) + MINUTE_MS;
+        }
+
+        if (nextDayChangeMs > nowMs && nextDayChangeMs < next) {
+            next = nextDayChangeMs;
+        }
+        return next;
+    }
+}
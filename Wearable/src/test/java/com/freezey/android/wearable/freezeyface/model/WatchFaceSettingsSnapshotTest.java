@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.model;
+
+import static com.freezey.android.wearable.freezeyface.model.WatchFaceSettings.Snapshot.ALL;
+import static com.freezey.android.wearable.freezeyface.model.WatchFaceSettings.Snapshot.BACKGROUND_COLOR;
+import static com.freezey.android.wearable.freezeyface.model.WatchFaceSettings.Snapshot.BLINK;
+import static com.freezey.android.wearable.freezeyface.model.WatchFaceSettings.Snapshot.MARKER_COLOR;
+import static com.freezey.android.wearable.freezeyface.model.WatchFaceSettings.Snapshot.UNREAD_NOTIFICATIONS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.freezey.android.wearable.freezeyface.model.WatchFaceSettings.Snapshot;
+
+import org.junit.Test;
+
+public class WatchFaceSettingsSnapshotTest {
+
+    private static final int RED = 0xFFFF0000;
+    private static final int BLUE = 0xFF0000FF;
+    private static final int BLACK = 0xFF000000;
+    private static final int GRAY = 0xFF888888;
+
+    private static final Snapshot BASE = new Snapshot(BLUE, BLACK, true, true);
+
+    @Test
+    public void sameValuesHaveNoDiff() {
+        Snapshot same = new Snapshot(BLUE, BLACK, true, true);
+
+        assertEquals(0, BASE.diff(same));
+        assertEquals(BASE, same);
+        assertEquals(BASE.hashCode(), same.hashCode());
+    }
+
+    @Test
+    public void nullDiffsEverything() {
+        assertEquals(ALL, BASE.diff(null));
+        assertFalse(BASE.equals(null));
+    }
+
+    @Test
+    public void eachSettingHasItsOwnFlag() {
+        assertEquals(MARKER_COLOR, BASE.diff(new Snapshot(RED, BLACK, true, true)));
+        assertEquals(BACKGROUND_COLOR, BASE.diff(new Snapshot(BLUE, GRAY, true, true)));
+        assertEquals(UNREAD_NOTIFICATIONS, BASE.diff(new Snapshot(BLUE, BLACK, false, true)));
+        assertEquals(BLINK, BASE.diff(new Snapshot(BLUE, BLACK, true, false)));
+    }
+
+    @Test
+    public void flagsCombine() {
+        Snapshot colors = new Snapshot(RED, GRAY, true, true);
+        Snapshot everything = new Snapshot(RED, GRAY, false, false);
+
+        assertEquals(MARKER_COLOR | BACKGROUND_COLOR, BASE.diff(colors));
+        assertEquals(ALL, BASE.diff(everything));
+        assertNotEquals(BASE, colors);
+    }
+
+    @Test
+    public void diffIsSymmetric() {
+        Snapshot other = new Snapshot(RED, BLACK, false, true);
+
+        assertEquals(BASE.diff(other), other.diff(BASE));
+    }
+
+    @Test
+    public void flagsAreDistinctBits() {
+        int[] flags = {MARKER_COLOR, BACKGROUND_COLOR, UNREAD_NOTIFICATIONS, BLINK};
+        int seen = 0;
+        for (int flag : flags) {
+            assertEquals(1, Integer.bitCount(flag));
+            assertEquals(0, seen & flag);
+            seen |= flag;
+        }
+        assertEquals(ALL, seen);
+    }
+
+    @Test
+    public void defaultsMatchTheBaselineFace() {
+        Snapshot defaults = Snapshot.DEFAULTS;
+
+        assertEquals(BLUE, defaults.getMarkerColor());
+        assertEquals(BLACK, defaults.getBackgroundColor());
+        assertTrue(defaults.isUnreadNotificationsEnabled());
+        assertTrue(defaults.isBlinkEnabled());
+    }
+}
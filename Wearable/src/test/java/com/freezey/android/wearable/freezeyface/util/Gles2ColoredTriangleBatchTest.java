@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.opengl.GLES20;
+
+import com.freezey.android.wearable.freezeyface.util.Gles2StateTest.RecordingGl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Counts the GL calls of batched frames: one draw per frame however many lists are batched,
+ * the matrix uploaded only when it changes and the buffers only when the batch is rebuilt.
+ */
+public class Gles2ColoredTriangleBatchTest {
+
+    private static final int LISTS = 5;
+
+    private static final float[] IDENTITY = {
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0,
+            0, 0, 0, 1,
+    };
+
+    private static final float[] RED = {1, 0, 0, 1};
+
+    private RecordingGl mGl;
+    private Gles2State mState;
+    private Gles2ColoredTriangleBatch.Program mProgram;
+    private Gles2ColoredTriangleBatch mBatch;
+
+    @Before
+    public void setUp() {
+        mGl = new RecordingGl();
+        mState = new Gles2State(mGl);
+        mState.makeCurrent();
+
+        mProgram = new Gles2ColoredTriangleBatch.Program(9);
+        mBatch = new Gles2ColoredTriangleBatch(mProgram, 16 /* initialCapacity */);
+        addLists();
+    }
+
+    @Test
+    public void listsAreDrawnWithOneCallPerFrame() {
+        drawFrame(IDENTITY);
+        drawFrame(IDENTITY);
+
+        assertEquals(2, mGl.count("drawElements"));
+        assertEquals(2, mGl.count("drawElements " + 3 * LISTS));
+        assertEquals(1, mGl.count("useProgram"));
+    }
+
+    @Test
+    public void unchangedMatrixIsUploadedOnce() {
+        drawFrame(IDENTITY);
+        drawFrame(IDENTITY.clone());
+
+        assertEquals(1, mGl.count("uniformMatrix4fv"));
+    }
+
+    @Test
+    public void changedMatrixIsUploadedAgain() {
+        float[] translated = IDENTITY.clone();
+        translated[12] = 0.5f;
+
+        drawFrame(IDENTITY);
+        drawFrame(translated);
+        drawFrame(translated);
+
+        assertEquals(2, mGl.count("uniformMatrix4fv"));
+    }
+
+    @Test
+    public void buffersAreUploadedOnceUntilRebuilt() {
+        drawFrame(IDENTITY);
+        drawFrame(IDENTITY);
+
+        assertEquals(1, mGl.count("bufferData " + GLES20.GL_ARRAY_BUFFER));
+        assertEquals(1, mGl.count("bufferData " + GLES20.GL_ELEMENT_ARRAY_BUFFER));
+
+        mBatch.clear();
+        addLists();
+        drawFrame(IDENTITY);
+        drawFrame(IDENTITY);
+
+        assertEquals(2, mGl.count("bufferData " + GLES20.GL_ARRAY_BUFFER));
+        assertEquals(2, mGl.count("bufferData " + GLES20.GL_ELEMENT_ARRAY_BUFFER));
+        assertEquals(4, mGl.count("drawElements"));
+    }
+
+    @Test
+    public void newContextGetsNewBuffers() {
+        drawFrame(IDENTITY);
+        mState.reset();
+        drawFrame(IDENTITY);
+
+        assertEquals(4, mGl.count("genBuffers"));
+        assertEquals(2, mGl.count("bufferData " + GLES20.GL_ARRAY_BUFFER));
+        assertEquals(2, mGl.count("bufferData " + GLES20.GL_ELEMENT_ARRAY_BUFFER));
+    }
+
+    @Test
+    public void emptyBatchDrawsNothing() {
+        mBatch.clear();
+
+        drawFrame(IDENTITY);
+
+        assertEquals(0, mGl.count("drawElements"));
+        assertEquals(0, mGl.count("bufferData"));
+    }
+
+    @Test
+    public void stripTrianglesKeepTheStripsWinding() {
+        // A zigzag of four triangles, after the LISTS triangles added in setUp.
+        float[] coords = {
+                0, 1, 0,
+                0, 0, 0,
+                1, 1, 0,
+                1, 0, 0,
+                2, 1, 0,
+                2, 0, 0,
+        };
+        mBatch.add(new Gles2IndexedTriangleList(
+                null /* program */, GLES20.GL_TRIANGLE_STRIP, coords, null /* indices */, RED));
+
+        short[] indices = mBatch.copyIndices();
+        int first = 3 * LISTS;
+        assertTriangles(indices, first,
+                0, 1, 2,
+                // Odd triangles have their first two vertices swapped.
+                2, 1, 3,
+                2, 3, 4,
+                4, 3, 5);
+        assertTrianglesHaveOneWinding(coords, indices, first);
+    }
+
+    @Test
+    public void fanTrianglesShareTheFirstVertex() {
+        // The center is the last vertex, listed first by the indices.
+        float[] coords = {
+                1, 0, 0,
+                0, 1, 0,
+                -1, 0, 0,
+                0, -1, 0,
+                0, 0, 0,
+        };
+        short[] fanIndices = {4, 0, 1, 2, 3};
+        mBatch.add(new Gles2IndexedTriangleList(
+                null /* program */, GLES20.GL_TRIANGLE_FAN, coords, fanIndices, RED));
+
+        short[] indices = mBatch.copyIndices();
+        int first = 3 * LISTS;
+        assertTriangles(indices, first,
+                4, 0, 1,
+                4, 1, 2,
+                4, 2, 3);
+        assertTrianglesHaveOneWinding(coords, indices, first);
+    }
+
+    /* Adds LISTS one-triangle lists, as separate shapes of a face would be. */
+    private void addLists() {
+        for (int i = 0; i < LISTS; i++) {
+            float[] coords = {
+                    i, 0, 0,
+                    i + 1, 0, 0,
+                    i, 1, 0,
+            };
+            mBatch.add(new Gles2ColoredTriangleList(null /* program */, coords, RED));
+        }
+    }
+
+    private void drawFrame(float[] mvpMatrix) {
+        mProgram.use();
+        mBatch.draw(mvpMatrix);
+    }
+
+    /*
+     * Checks the indices of a list added after the lists of setUp. Those take up the first
+     * `first` vertices and indices, so the list's own vertex numbers are offset by first.
+     */
+    private static void assertTriangles(short[] indices, int first, int... expected) {
+        assertEquals(first + expected.length, indices.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("index " + i, first + expected[i], indices[first + i]);
+        }
+    }
+
+    /* Every triangle of the last list added is non-degenerate and counterclockwise. */
+    private static void assertTrianglesHaveOneWinding(
+            float[] coords, short[] indices, int first) {
+        for (int i = first; i < indices.length; i += 3) {
+            int a = 3 * (indices[i] - first);
+            int b = 3 * (indices[i + 1] - first);
+            int c = 3 * (indices[i + 2] - first);
+            float area = (coords[b] - coords[a]) * (coords[c + 1] - coords[a + 1])
+                    - (coords[c] - coords[a]) * (coords[b + 1] - coords[a + 1]);
+            assertTrue("triangle " + (i - first) / 3, area > 0);
+        }
+    }
+}
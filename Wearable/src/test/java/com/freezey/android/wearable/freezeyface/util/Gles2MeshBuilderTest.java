@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class Gles2MeshBuilderTest {
+
+    private static final float TOLERANCE = 0.25f;
+    private static final float EPSILON = 1e-3f;
+
+    private Gles2MeshBuilder mBuilder;
+
+    @Before
+    public void setUp() {
+        mBuilder = new Gles2MeshBuilder(TOLERANCE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveTolerance() {
+        new Gles2MeshBuilder(0);
+    }
+
+    @Test
+    public void segmentCountIsTheFewestWithinTolerance() {
+        float[] radii = {2, 10, 50, 100, 180};
+        for (float radius : radii) {
+            int segments = mBuilder.getSegmentCount(radius, 360);
+            assertTrue(chordError(radius, 360f / segments) <= TOLERANCE + 1e-6);
+            if (segments > 8) {
+                assertTrue(chordError(radius, 360f / (segments - 1)) > TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void largerCurvesGetMoreSegments() {
+        assertTrue(mBuilder.getSegmentCount(180, 360) > mBuilder.getSegmentCount(20, 360));
+        assertTrue(mBuilder.getSegmentCount(100, 360) > mBuilder.getSegmentCount(100, 90));
+    }
+
+    @Test
+    public void tinyCirclesKeepAMinimumOfSegments() {
+        assertEquals(8, mBuilder.getSegmentCount(0.1f, 360));
+        assertEquals(8, mBuilder.getSegmentCount(1, 360));
+        assertEquals(1, mBuilder.getSegmentCount(1, 1));
+    }
+
+    @Test
+    public void sweepDirectionDoesntChangeSegmentCount() {
+        assertEquals(mBuilder.getSegmentCount(100, 120), mBuilder.getSegmentCount(100, -120));
+    }
+
+    @Test
+    public void openArcIsABandOfTwoNPlusTwoVertices() {
+        mBuilder.addStrokedArc(200, 200, 100, 100, -90, 90, 10);
+
+        int segments = mBuilder.getSegmentCount(105, 90);
+        assertEquals(2 * segments + 2, mBuilder.getVertexCount());
+        assertEquals(6 * segments, mBuilder.getIndexCount());
+        assertIndicesInRange();
+        assertTrianglesHaveOneWinding();
+
+        float[] coords = mBuilder.copyCoords();
+        // Starts at 12 o'clock (y points down) and ends at 3 o'clock.
+        assertVertex(coords, 0, 200, 105);
+        assertVertex(coords, 1, 200, 95);
+        assertVertex(coords, 2 * segments, 295, 200);
+        assertVertex(coords, 2 * segments + 1, 305, 200);
+    }
+
+    @Test
+    public void arcVerticesLieOnTheStrokeEdges() {
+        mBuilder.addStrokedArc(0, 0, 100, 100, 30, 200, 8);
+
+        float[] coords = mBuilder.copyCoords();
+        for (int i = 0; i < mBuilder.getVertexCount(); i++) {
+            float radius = (float) Math.hypot(coords[3 * i], coords[3 * i + 1]);
+            assertEquals(i % 2 == 0 ? 96 : 104, radius, EPSILON);
+            assertEquals(0, coords[3 * i + 2], 0);
+        }
+    }
+
+    @Test
+    public void closedArcSharesItsFirstVertices() {
+        mBuilder.addStrokedArc(0, 0, 50, 50, 0, 360, 4);
+
+        int segments = mBuilder.getSegmentCount(52, 360);
+        assertEquals(2 * segments, mBuilder.getVertexCount());
+        assertEquals(6 * segments, mBuilder.getIndexCount());
+        assertIndicesInRange();
+        assertTrianglesHaveOneWinding();
+
+        // The last segment wraps around to the first pair of vertices.
+        short[] indices = mBuilder.copyIndices();
+        assertEquals(0, indices[indices.length - 1]);
+    }
+
+    @Test
+    public void emptyShapesAddNothing() {
+        mBuilder.addStrokedArc(0, 0, 50, 50, 0, 0, 4);
+        mBuilder.addLine(10, 10, 10, 10, 2);
+
+        assertEquals(0, mBuilder.getVertexCount());
+        assertEquals(0, mBuilder.getIndexCount());
+    }
+
+    @Test
+    public void diskIsAFanAroundItsCenter() {
+        mBuilder.addDisk(20, 30, 40);
+
+        int segments = mBuilder.getSegmentCount(40, 360);
+        assertEquals(segments + 1, mBuilder.getVertexCount());
+        assertEquals(3 * segments, mBuilder.getIndexCount());
+        assertIndicesInRange();
+        assertTrianglesHaveOneWinding();
+
+        float[] coords = mBuilder.copyCoords();
+        assertVertex(coords, 0, 20, 30);
+        for (int i = 1; i <= segments; i++) {
+            float radius = (float) Math.hypot(coords[3 * i] - 20, coords[3 * i + 1] - 30);
+            assertEquals(40, radius, EPSILON);
+        }
+    }
+
+    @Test
+    public void lineIsAQuadOfTheGivenWidth() {
+        mBuilder.addLine(0, 0, 10, 0, 4);
+
+        assertEquals(4, mBuilder.getVertexCount());
+        assertEquals(6, mBuilder.getIndexCount());
+        assertTrianglesHaveOneWinding();
+
+        float[] coords = mBuilder.copyCoords();
+        assertVertex(coords, 0, 0, 2);
+        assertVertex(coords, 1, 0, -2);
+        assertVertex(coords, 2, 10, -2);
+        assertVertex(coords, 3, 10, 2);
+    }
+
+    @Test
+    public void laterShapesIndexTheirOwnVertices() {
+        mBuilder.addLine(0, 0, 10, 0, 4);
+        mBuilder.addDisk(0, 0, 5);
+
+        short[] indices = mBuilder.copyIndices();
+        for (int i = 6; i < indices.length; i++) {
+            assertTrue(indices[i] >= 4);
+        }
+        assertIndicesInRange();
+    }
+
+    @Test
+    public void clearStartsAnEmptyMesh() {
+        mBuilder.addDisk(0, 0, 100);
+
+        mBuilder.clear();
+        mBuilder.addLine(0, 0, 10, 0, 4);
+
+        assertEquals(4, mBuilder.getVertexCount());
+        assertEquals(12, mBuilder.copyCoords().length);
+        assertEquals(0, mBuilder.copyIndices()[0]);
+    }
+
+    @Test
+    public void refusesMoreVerticesThanShortIndicesAddress() {
+        try {
+            for (int i = 0; i < Gles2IndexedTriangleList.MAX_VERTICES / 4 + 1; i++) {
+                mBuilder.addLine(0, 0, 10, 0, 4);
+            }
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            assertEquals(Gles2IndexedTriangleList.MAX_VERTICES, mBuilder.getVertexCount());
+        }
+    }
+
+    /* Largest distance between a chord spanning angle degrees and its arc. */
+    private static double chordError(float radius, float angle) {
+        return radius * (1 - Math.cos(Math.toRadians(angle) / 2));
+    }
+
+    private void assertIndicesInRange() {
+        for (short index : mBuilder.copyIndices()) {
+            int vertex = index & 0xffff;
+            assertTrue(vertex < mBuilder.getVertexCount());
+        }
+    }
+
+    /* Every triangle is non-degenerate and wound the same way as the first one. */
+    private void assertTrianglesHaveOneWinding() {
+        float[] coords = mBuilder.copyCoords();
+        short[] indices = mBuilder.copyIndices();
+        float firstArea = 0;
+        for (int i = 0; i < indices.length; i += 3) {
+            int a = 3 * indices[i];
+            int b = 3 * indices[i + 1];
+            int c = 3 * indices[i + 2];
+            float area = (coords[b] - coords[a]) * (coords[c + 1] - coords[a + 1])
+                    - (coords[c] - coords[a]) * (coords[b + 1] - coords[a + 1]);
+            if (i == 0) {
+                firstArea = area;
+            }
+            assertTrue("triangle " + i / 3, area * firstArea > 0);
+        }
+    }
+
+    private static void assertVertex(float[] coords, int vertex, float x, float y) {
+        assertEquals(x, coords[3 * vertex], EPSILON);
+        assertEquals(y, coords[3 * vertex + 1], EPSILON);
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.util;
+
+import static org.junit.Assert.assertEquals;
+
+import com.freezey.android.wearable.freezeyface.util.Gles2StateTest.RecordingGl;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks when programs are compiled and when saved binaries are used instead, including the
+ * fallbacks to compiling when a binary can't be used.
+ */
+public class Gles2ProgramCacheTest {
+
+    private static final String VERTEX = "vertex";
+    private static final String FRAGMENT = "fragment";
+    private static final String OTHER_FRAGMENT = "other fragment";
+
+    private final MemoryBinaryStore mStore = new MemoryBinaryStore();
+
+    @After
+    public void tearDown() {
+        Gles2ProgramCache.setBinaryStore(null);
+    }
+
+    @Test
+    public void programIsCompiledOncePerContextPerKey() {
+        RecordingGl gl = new RecordingGl();
+        Gles2State state = makeContextCurrent(gl);
+
+        int programId = Gles2ProgramCache.getProgramId(VERTEX, FRAGMENT);
+        assertEquals(programId, Gles2ProgramCache.getProgramId(VERTEX, FRAGMENT));
+        Gles2ProgramCache.getProgramId(VERTEX, OTHER_FRAGMENT);
+        assertEquals(2, gl.count("linkProgram"));
+
+        RecordingGl otherGl = new RecordingGl();
+        makeContextCurrent(otherGl);
+        Gles2ProgramCache.getProgramId(VERTEX, FRAGMENT);
+        assertEquals(1, otherGl.count("linkProgram"));
+
+        state.makeCurrent();
+        assertEquals(programId, Gles2ProgramCache.getProgramId(VERTEX, FRAGMENT));
+        assertEquals(2, gl.count("linkProgram"));
+    }
+
+    @Test
+    public void savedBinaryIsLoadedByALaterContext() {
+        Gles2ProgramCache.setBinaryStore(mStore);
+        makeContextCurrent(new RecordingGl());
+        Gles2ProgramCache.getProgramId(VERTEX, FRAGMENT);
+        assertEquals(1, mStore.mWriteCount);
+
+        RecordingGl gl = new RecordingGl();
+        makeContextCurrent(gl);
+        int loaded = Gles2ProgramCache.getLoadedCount();
+        Gles2ProgramCache.getProgramId(VERTEX, FRAGMENT);
+
+        assertEquals(1, gl.count("programBinary"));
+        assertEquals(0, gl.count("linkProgram"));
+        assertEquals(loaded + 1, Gles2ProgramCache.getLoadedCount());
+    }
+
+    @Test
+    public void binaryFromAnotherDriverIsIgnored() {
+        Gles2ProgramCache.setBinaryStore(mStore);
+        makeContextCurrent(new RecordingGl());
+        Gles2ProgramCache.getProgramId(VERTEX, FRAGMENT);
+
+        RecordingGl gl = new RecordingGl();
+        gl.mRenderer = "Other GPU";
+        makeContextCurrent(gl);
+        int rejected = Gles2ProgramCache.getRejectedCount();
+        Gles2ProgramCache.getProgramId(VERTEX, FRAGMENT);
+
+        assertEquals(0, gl.count("programBinary"));
+        assertEquals(1, gl.count("linkProgram"));
+        assertEquals(0, mStore.mDeleteCount);
+        assertEquals(rejected, Gles2ProgramCache.getRejectedCount());
+
+        // Saved again for the new driver, which loads it from then on.
+        assertEquals(2, mStore.mWriteCount);
+        RecordingGl laterGl = new RecordingGl();
+        laterGl.mRenderer = "Other GPU";
+        makeContextCurrent(laterGl);
+        Gles2ProgramCache.getProgramId(VERTEX, FRAGMENT);
+        assertEquals(1, laterGl.count("programBinary"));
+        assertEquals(0, laterGl.count("linkProgram"));
+    }
+
+    @Test
+    public void rejectedBinaryIsDeletedAndTheProgramCompiled() {
+        Gles2ProgramCache.setBinaryStore(mStore);
+        makeContextCurrent(new RecordingGl());
+        Gles2ProgramCache.getProgramId(VERTEX, FRAGMENT);
+
+        RecordingGl gl = new RecordingGl();
+        gl.mRejectBinaries = true;
+        makeContextCurrent(gl);
+        int rejected = Gles2ProgramCache.getRejectedCount();
+        int compiled = Gles2ProgramCache.getCompiledCount();
+        int programId = Gles2ProgramCache.getProgramId(VERTEX, FRAGMENT);
+
+        // Program 1 gets the binary, shaders 2 and 3 and program 4 are compiled instead.
+        assertEquals(Arrays.asList("programBinary 1", "deleteProgram 1",
+                "compileShader 2", "compileShader 3", "linkProgram 4"), gl.mCalls);
+        assertEquals(4, programId);
+        assertEquals(1, mStore.mDeleteCount);
+        assertEquals(rejected + 1, Gles2ProgramCache.getRejectedCount());
+        assertEquals(compiled + 1, Gles2ProgramCache.getCompiledCount());
+    }
+
+    @Test
+    public void corruptBinaryIsDeletedAndTheProgramCompiled() {
+        Gles2ProgramCache.setBinaryStore(mStore);
+        makeContextCurrent(new RecordingGl());
+        Gles2ProgramCache.getProgramId(VERTEX, FRAGMENT);
+        for (Map.Entry<String, byte[]> entry : mStore.mContents.entrySet()) {
+            byte[] contents = entry.getValue();
+            byte[] truncated = new byte[contents.length - 1];
+            System.arraycopy(contents, 0, truncated, 0, truncated.length);
+            entry.setValue(truncated);
+        }
+
+        RecordingGl gl = new RecordingGl();
+        makeContextCurrent(gl);
+        Gles2ProgramCache.getProgramId(VERTEX, FRAGMENT);
+
+        assertEquals(0, gl.count("programBinary"));
+        assertEquals(1, gl.count("linkProgram"));
+        assertEquals(1, mStore.mDeleteCount);
+    }
+
+    @Test
+    public void binariesArentUsedWithoutOpenGlEs3() {
+        Gles2ProgramCache.setBinaryStore(mStore);
+        RecordingGl gl = new RecordingGl();
+        gl.mVersion = "OpenGL ES 2.0";
+        makeContextCurrent(gl);
+
+        Gles2ProgramCache.getProgramId(VERTEX, FRAGMENT);
+
+        assertEquals(1, gl.count("linkProgram"));
+        assertEquals(0, mStore.mReadCount);
+        assertEquals(0, mStore.mWriteCount);
+    }
+
+    private static Gles2State makeContextCurrent(RecordingGl gl) {
+        Gles2State state = new Gles2State(gl);
+        state.makeCurrent();
+        return state;
+    }
+
+    /* Keeps binaries in memory and writes them right away. */
+    private static final class MemoryBinaryStore implements Gles2ProgramCache.BinaryStore {
+        final Map<String, byte[]> mContents = new HashMap<>();
+        int mReadCount;
+        int mWriteCount;
+        int mDeleteCount;
+
+        @Override
+        public byte[] read(String key) {
+            mReadCount++;
+            return mContents.get(key);
+        }
+
+        @Override
+        public void write(String key, byte[] contents) {
+            mWriteCount++;
+            mContents.put(key, contents);
+        }
+
+        @Override
+        public void delete(String key) {
+            mDeleteCount++;
+            mContents.remove(key);
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class Gles2StateTest {
+
+    private RecordingGl mGl;
+    private Gles2State mState;
+
+    @Before
+    public void setUp() {
+        mGl = new RecordingGl();
+        mState = new Gles2State(mGl);
+        mState.makeCurrent();
+    }
+
+    @Test
+    public void redundantUseProgramIsSkipped() {
+        Gles2State.useProgram(3);
+        Gles2State.useProgram(3);
+        Gles2State.useProgram(4);
+        Gles2State.useProgram(4);
+        Gles2State.useProgram(3);
+
+        assertEquals(Arrays.asList("useProgram 3", "useProgram 4", "useProgram 3"), mGl.mCalls);
+    }
+
+    @Test
+    public void arrayAndElementBindingsAreTrackedSeparately() {
+        Gles2State.bindArrayBuffer(5);
+        Gles2State.bindElementArrayBuffer(5);
+        Gles2State.bindArrayBuffer(5);
+        Gles2State.bindElementArrayBuffer(5);
+        Gles2State.bindArrayBuffer(0);
+
+        assertEquals(Arrays.asList(
+                "bindBuffer " + GLES20.GL_ARRAY_BUFFER + " 5",
+                "bindBuffer " + GLES20.GL_ELEMENT_ARRAY_BUFFER + " 5",
+                "bindBuffer " + GLES20.GL_ARRAY_BUFFER + " 0"),
+                mGl.mCalls);
+    }
+
+    @Test
+    public void attribArraysAreEnabledAndDisabledOnce() {
+        Gles2State.enableVertexAttribArray(0);
+        Gles2State.enableVertexAttribArray(1);
+        Gles2State.enableVertexAttribArray(0);
+        Gles2State.disableVertexAttribArray(1);
+        Gles2State.disableVertexAttribArray(1);
+        Gles2State.disableVertexAttribArray(2);
+        Gles2State.enableVertexAttribArray(1);
+
+        assertEquals(Arrays.asList(
+                "enable 0", "enable 1", "disable 1", "enable 1"), mGl.mCalls);
+    }
+
+    @Test
+    public void deletingABoundBufferUnbindsIt() {
+        int bufferId = Gles2State.genBuffer();
+        Gles2State.bindArrayBuffer(bufferId);
+        Gles2State.deleteBuffer(bufferId);
+        Gles2State.bindArrayBuffer(bufferId);
+
+        assertEquals(Arrays.asList(
+                "genBuffers " + bufferId,
+                "bindBuffer " + GLES20.GL_ARRAY_BUFFER + " " + bufferId,
+                "deleteBuffers " + bufferId,
+                "bindBuffer " + GLES20.GL_ARRAY_BUFFER + " " + bufferId),
+                mGl.mCalls);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failedGenBufferThrows() {
+        mGl.mNextBufferId = 0;
+
+        Gles2State.genBuffer();
+    }
+
+    @Test
+    public void eachContextKeepsItsOwnState() {
+        RecordingGl otherGl = new RecordingGl();
+        Gles2State other = new Gles2State(otherGl);
+
+        // Same calls in both contexts, as two engines drawing the same face would make.
+        Gles2State.useProgram(3);
+        Gles2State.bindArrayBuffer(7);
+        Gles2State.enableVertexAttribArray(0);
+        other.makeCurrent();
+        Gles2State.useProgram(3);
+        Gles2State.bindArrayBuffer(7);
+        Gles2State.enableVertexAttribArray(0);
+        mState.makeCurrent();
+        Gles2State.useProgram(3);
+        Gles2State.bindArrayBuffer(7);
+        Gles2State.enableVertexAttribArray(0);
+
+        List<String> expected = Arrays.asList(
+                "useProgram 3", "bindBuffer " + GLES20.GL_ARRAY_BUFFER + " 7", "enable 0");
+        assertEquals(expected, mGl.mCalls);
+        assertEquals(expected, otherGl.mCalls);
+    }
+
+    @Test
+    public void sharedObjectsBelongToOneContext() {
+        Object program = new Object();
+        Gles2State.putShared(Gles2StateTest.class, program);
+
+        Gles2State other = new Gles2State(new RecordingGl());
+        other.makeCurrent();
+        assertNull(Gles2State.getShared(Gles2StateTest.class));
+
+        mState.makeCurrent();
+        assertSame(program, Gles2State.getShared(Gles2StateTest.class));
+    }
+
+    @Test
+    public void resetForgetsTheShadowedState() {
+        Gles2State.useProgram(3);
+        Gles2State.bindArrayBuffer(7);
+        Gles2State.bindElementArrayBuffer(8);
+        Gles2State.enableVertexAttribArray(0);
+        mGl.mCalls.clear();
+
+        mState.reset();
+        Gles2State.useProgram(3);
+        Gles2State.bindArrayBuffer(7);
+        Gles2State.bindElementArrayBuffer(8);
+        Gles2State.enableVertexAttribArray(0);
+
+        assertEquals(Arrays.asList(
+                "useProgram 3",
+                "bindBuffer " + GLES20.GL_ARRAY_BUFFER + " 7",
+                "bindBuffer " + GLES20.GL_ELEMENT_ARRAY_BUFFER + " 8",
+                "enable 0"),
+                mGl.mCalls);
+    }
+
+    @Test
+    public void resetMovesToANewGeneration() {
+        int generation = Gles2State.getContextGeneration();
+
+        mState.reset();
+
+        assertNotEquals(generation, Gles2State.getContextGeneration());
+    }
+
+    @Test
+    public void generationsAreUniqueAcrossContexts() {
+        Set<Integer> generations = new HashSet<>();
+        generations.add(Gles2State.getContextGeneration());
+        for (int i = 0; i < 3; i++) {
+            Gles2State other = new Gles2State(new RecordingGl());
+            other.makeCurrent();
+            assertTrue(generations.add(Gles2State.getContextGeneration()));
+            other.reset();
+            assertTrue(generations.add(Gles2State.getContextGeneration()));
+        }
+    }
+
+    @Test
+    public void resetDropsSharedObjects() {
+        Gles2State.putShared(Gles2StateTest.class, new Object());
+
+        mState.reset();
+
+        assertNull(Gles2State.getShared(Gles2StateTest.class));
+    }
+
+    /**
+     * Records the GL calls made through the state, in order. Programs link unless their binary
+     * is rejected, and read back mBinary as their binary.
+     */
+    static class RecordingGl implements Gles2State.Gl {
+        final List<String> mCalls = new ArrayList<>();
+        int mNextBufferId = 1;
+        int mNextLocation;
+
+        String mRenderer = "Test GPU";
+        String mVersion = "OpenGL ES 3.0";
+        boolean mRejectBinaries;
+        byte[] mBinary = {1, 2, 3, 4};
+        private int mNextObjectId = 1;
+        private final Set<Integer> mLinkedPrograms = new HashSet<>();
+
+        @Override
+        public void glUseProgram(int program) {
+            mCalls.add("useProgram " + program);
+        }
+
+        @Override
+        public void glBindBuffer(int target, int buffer) {
+            mCalls.add("bindBuffer " + target + " " + buffer);
+        }
+
+        @Override
+        public void glGenBuffers(int n, int[] buffers, int offset) {
+            for (int i = 0; i < n; i++) {
+                buffers[offset + i] = mNextBufferId == 0 ? 0 : mNextBufferId++;
+                mCalls.add("genBuffers " + buffers[offset + i]);
+            }
+        }
+
+        @Override
+        public void glDeleteBuffers(int n, int[] buffers, int offset) {
+            for (int i = 0; i < n; i++) {
+                mCalls.add("deleteBuffers " + buffers[offset + i]);
+            }
+        }
+
+        @Override
+        public void glEnableVertexAttribArray(int index) {
+            mCalls.add("enable " + index);
+        }
+
+        @Override
+        public void glDisableVertexAttribArray(int index) {
+            mCalls.add("disable " + index);
+        }
+
+        @Override
+        public int glGetUniformLocation(int program, String name) {
+            return mNextLocation++;
+        }
+
+        @Override
+        public int glGetAttribLocation(int program, String name) {
+            return mNextLocation++;
+        }
+
+        @Override
+        public void glUniformMatrix4fv(
+                int location, int count, boolean transpose, float[] value, int offset) {
+            mCalls.add("uniformMatrix4fv " + location);
+        }
+
+        @Override
+        public void glVertexAttribPointer(
+                int index, int size, int type, boolean normalized, int stride, int offset) {
+            mCalls.add("vertexAttribPointer " + index);
+        }
+
+        @Override
+        public void glBufferData(int target, int size, Buffer data, int usage) {
+            mCalls.add("bufferData " + target + " " + size);
+        }
+
+        @Override
+        public void glDrawElements(int mode, int count, int type, int offset) {
+            mCalls.add("drawElements " + count);
+        }
+
+        @Override
+        public String glGetString(int name) {
+            return name == GLES20.GL_RENDERER ? mRenderer
+                    : name == GLES20.GL_VERSION ? mVersion : null;
+        }
+
+        @Override
+        public void glGetIntegerv(int pname, int[] params, int offset) {
+            params[offset] = pname == GLES30.GL_NUM_PROGRAM_BINARY_FORMATS ? 1 : 0;
+        }
+
+        @Override
+        public int glGetError() {
+            return GLES20.GL_NO_ERROR;
+        }
+
+        @Override
+        public int glCreateShader(int type) {
+            return mNextObjectId++;
+        }
+
+        @Override
+        public void glShaderSource(int shader, String string) {}
+
+        @Override
+        public void glCompileShader(int shader) {
+            mCalls.add("compileShader " + shader);
+        }
+
+        @Override
+        public int glCreateProgram() {
+            return mNextObjectId++;
+        }
+
+        @Override
+        public void glAttachShader(int program, int shader) {}
+
+        @Override
+        public void glLinkProgram(int program) {
+            mCalls.add("linkProgram " + program);
+            mLinkedPrograms.add(program);
+        }
+
+        @Override
+        public void glDeleteProgram(int program) {
+            mCalls.add("deleteProgram " + program);
+            mLinkedPrograms.remove(program);
+        }
+
+        @Override
+        public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+            if (pname == GLES20.GL_LINK_STATUS) {
+                params[offset] = mLinkedPrograms.contains(program) ? 1 : 0;
+            } else if (pname == GLES30.GL_PROGRAM_BINARY_LENGTH) {
+                params[offset] = mBinary.length;
+            }
+        }
+
+        @Override
+        public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+            mCalls.add("programBinary " + program);
+            if (!mRejectBinaries) {
+                mLinkedPrograms.add(program);
+            }
+        }
+
+        @Override
+        public void glGetProgramBinary(int program, int bufSize, int[] length,
+                int lengthOffset, int[] binaryFormat, int binaryFormatOffset, Buffer binary) {
+            length[lengthOffset] = mBinary.length;
+            binaryFormat[binaryFormatOffset] = 1;
+            ((ByteBuffer) binary).put(mBinary);
+        }
+
+        /** Returns how many recorded calls start with the given name. */
+        int count(String name) {
+            int count = 0;
+            for (String call : mCalls) {
+                if (call.equals(name) || call.startsWith(name + " ")) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
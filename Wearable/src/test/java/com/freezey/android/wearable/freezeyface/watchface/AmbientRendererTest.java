@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that ambient frames only read cached state: the date ring is formatted once a day, the
+ * battery is never queried, and the layer is rendered once a minute, allocating nothing.
+ */
+public class AmbientRendererTest {
+
+    private static final long SECOND_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /* Slack for the measurement itself; a single formatted label would be far above it. */
+    private static final long MAX_ALLOCATED_BYTES = 1024;
+
+    private static final long START_MS = utc(2017, Calendar.MARCH, 1, 10, 0);
+
+    private final Calendar mCalendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    private final CountingDateRingCache mDateRingCache = new CountingDateRingCache();
+    private final FakeBatteryState mBatteryState = new FakeBatteryState();
+    private final FakeGraphics mGraphics = new FakeGraphics();
+
+    private AmbientRenderer mRenderer;
+
+    @Before
+    public void setUp() {
+        mDateRingCache.setTimeZoneAndLocale(TimeZone.getTimeZone("UTC"), Locale.US);
+        mBatteryState.mLevelPercent = 73;
+        mBatteryState.mCharging = true;
+
+        mRenderer = new AmbientRenderer(80, 15, mGraphics);
+        // Fields are set directly, RectF's methods aren't available in JVM tests.
+        RectF batteryArcBounds = new RectF();
+        batteryArcBounds.left = 67;
+        batteryArcBounds.top = 160;
+        batteryArcBounds.right = 333;
+        batteryArcBounds.bottom = 240;
+        mRenderer.setSurfaceSize(400, 400, batteryArcBounds);
+    }
+
+    @Test
+    public void ticksWithinADayFormatTheDateRingOnce() {
+        // A tick every second for six hours, each minute's layer rendered on its first tick.
+        long now = tickEverySecond(START_MS, TimeUnit.HOURS.toMillis(6));
+
+        assertEquals(1, mDateRingCache.mRebuildCount);
+        assertEquals((now - START_MS) / MINUTE_MS, mRenderer.getLayerRenderCount());
+        assertTrue(mGraphics.getDrawCount() > 0);
+    }
+
+    @Test
+    public void theDateRingIsFormattedAgainOnlyAtMidnight() {
+        long beforeMidnight = utc(2017, Calendar.MARCH, 1, 23, 58);
+        tickEverySecond(beforeMidnight, 4 * MINUTE_MS);
+
+        assertEquals(2, mDateRingCache.mRebuildCount);
+    }
+
+    @Test
+    public void ticksWithinAMinuteRenderNothing() {
+        tick(START_MS);
+        int draws = mGraphics.getDrawCount();
+
+        tickEverySecond(START_MS + SECOND_MS, 59 * SECOND_MS);
+
+        assertEquals(1, mRenderer.getLayerRenderCount());
+        assertEquals(draws, mGraphics.getDrawCount());
+        assertEquals(60, mRenderer.getFrameCount());
+    }
+
+    @Test
+    public void batteryChangesRenderFromTheCachedState() {
+        tick(START_MS);
+        mBatteryState.mLevelPercent = 72;
+        tick(START_MS + SECOND_MS);
+        tick(START_MS + 2 * SECOND_MS);
+
+        // Nothing is registered, so the only way to see the change is the cached level.
+        assertEquals(2, mRenderer.getLayerRenderCount());
+        assertEquals(1, mDateRingCache.mRebuildCount);
+    }
+
+    @Test
+    public void prerenderedMinutesAreSwappedIn() {
+        tick(START_MS);
+        mCalendar.setTimeInMillis(START_MS + MINUTE_MS);
+        assertTrue(mRenderer.prerender(
+                mCalendar, START_MS + MINUTE_MS, mDateRingCache, mBatteryState, false));
+        tick(START_MS + MINUTE_MS);
+
+        assertEquals(1, mRenderer.getLayerRenderCount());
+        assertEquals(1, mRenderer.getPrerenderCount());
+        assertEquals(1, mRenderer.getStagedSwapCount());
+        assertEquals(1, mDateRingCache.mRebuildCount);
+    }
+
+    @Test
+    public void ambientFramesDontAllocate() {
+        long now = tickEverySecond(START_MS, TimeUnit.HOURS.toMillis(1));
+
+        long before = AllocationCounter.getAllocatedBytes();
+        tickEverySecond(now, TimeUnit.HOURS.toMillis(1));
+        long allocated = AllocationCounter.getAllocatedBytes() - before;
+
+        assertTrue("allocated " + allocated + " bytes in an hour of ticks",
+                allocated <= MAX_ALLOCATED_BYTES);
+    }
+
+    /* Ticks once a second for the given duration, returns the time after the last tick. */
+    private long tickEverySecond(long startMs, long durationMs) {
+        long now = startMs;
+        for (; now < startMs + durationMs; now += SECOND_MS) {
+            tick(now);
+        }
+        return now;
+    }
+
+    private void tick(long now) {
+        mCalendar.setTimeInMillis(now);
+        mRenderer.update(mCalendar, now, mDateRingCache, mBatteryState, false);
+    }
+
+    private static long utc(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    /* Counts how often the labels are formatted. */
+    private static final class CountingDateRingCache extends DateRingCache {
+        int mRebuildCount;
+
+        @Override
+        void rebuild(long now, Paint paint) {
+            mRebuildCount++;
+            super.rebuild(now, paint);
+        }
+    }
+
+    /* Battery state set by the test, which fails if anything registers for broadcasts. */
+    private static final class FakeBatteryState extends BatteryState {
+        int mLevelPercent;
+        boolean mCharging;
+
+        FakeBatteryState() {
+            super(null);
+        }
+
+        @Override
+        void register(Context context) {
+            throw new AssertionError("battery receiver registered while drawing");
+        }
+
+        @Override
+        void unregister(Context context) {
+            throw new AssertionError("battery receiver unregistered while drawing");
+        }
+
+        @Override
+        int getLevelPercent() {
+            return mLevelPercent;
+        }
+
+        @Override
+        boolean isCharging() {
+            return mCharging;
+        }
+    }
+
+    /* Fake text paints, and counting canvases in place of layer bitmaps. */
+    private static final class FakeGraphics implements AmbientRenderer.Graphics {
+        private final ArrayList<CountingCanvas> mCanvases = new ArrayList<>();
+
+        @Override
+        public Paint createPaint() {
+            return new FakeTextPaint();
+        }
+
+        @Override
+        public Bitmap createLayerBitmap(int width, int height) {
+            return null;
+        }
+
+        @Override
+        public Canvas createLayerCanvas(Bitmap bitmap) {
+            CountingCanvas canvas = new CountingCanvas();
+            mCanvases.add(canvas);
+            return canvas;
+        }
+
+        int getDrawCount() {
+            int count = 0;
+            for (CountingCanvas canvas : mCanvases) {
+                count += canvas.mDrawCount;
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Checks how far background images are subsampled while they are decoded. */
+public class BackgroundImageLoaderTest {
+
+    @Test
+    public void photosAreSubsampledToAtLeastTheSurfaceSize() {
+        // 4000x3000 / 4 = 1000x750 still covers 400x400, / 8 = 500x375 would not.
+        assertEquals(4, BackgroundImageLoader.getSampleSize(4000, 3000, 400, 400));
+    }
+
+    @Test
+    public void theShorterSideLimitsTheSampleSize() {
+        assertEquals(2, BackgroundImageLoader.getSampleSize(1000, 4000, 400, 400));
+        assertEquals(2, BackgroundImageLoader.getSampleSize(4000, 1000, 400, 400));
+    }
+
+    @Test
+    public void exactMultiplesAreSubsampledAllTheWay() {
+        assertEquals(2, BackgroundImageLoader.getSampleSize(800, 800, 400, 400));
+        assertEquals(8, BackgroundImageLoader.getSampleSize(3200, 3200, 400, 400));
+    }
+
+    @Test
+    public void imagesNoLargerThanTheSurfaceArentSubsampled() {
+        assertEquals(1, BackgroundImageLoader.getSampleSize(400, 400, 400, 400));
+        assertEquals(1, BackgroundImageLoader.getSampleSize(799, 2000, 400, 400));
+        assertEquals(1, BackgroundImageLoader.getSampleSize(100, 50, 400, 400));
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+/**
+ * Checks the draw calls of the battery indicator against the shape the face has always drawn:
+ * both arcs whole, unclipped and in their own paints, meeting at the battery level.
+ */
+public class BatteryIndicatorTest {
+
+    private static final float DELTA = 1e-4f;
+
+    private final Paint mLevelPaint = new Paint();
+    private final Paint mUsedPaint = new Paint();
+    private final RectF mBounds = new RectF();
+    private final RecordingCanvas mCanvas = new RecordingCanvas();
+
+    @Before
+    public void setUp() {
+        // Fields are set directly, RectF's methods aren't available in JVM tests.
+        mBounds.left = 67;
+        mBounds.top = 160;
+        mBounds.right = 333;
+        mBounds.bottom = 240;
+    }
+
+    @Test
+    public void arcsMeetAtTheLevel() {
+        BatteryIndicator.draw(mCanvas, mBounds, 40, false, mLevelPaint, mUsedPaint, 4);
+
+        assertEquals(2, mCanvas.mArcs.size());
+        Arc level = mCanvas.mArcs.get(0);
+        Arc used = mCanvas.mArcs.get(1);
+        assertSame(mLevelPaint, level.mPaint);
+        assertSame(mUsedPaint, used.mPaint);
+
+        // The level arc ends at 150 degrees, the used arc starts at 30, and they meet at the
+        // split, 40% of the way from the left.
+        assertEquals(150, level.mStartAngle + level.mSweepAngle, DELTA);
+        assertEquals(48, level.mSweepAngle, DELTA);
+        assertEquals(30, used.mStartAngle, DELTA);
+        assertEquals(level.mStartAngle, used.mStartAngle + used.mSweepAngle, DELTA);
+    }
+
+    @Test
+    public void arcsAreDrawnWholeOnTheOval() {
+        BatteryIndicator.draw(mCanvas, mBounds, 73, false, mLevelPaint, mUsedPaint, 4);
+
+        // Clipping either arc at the split would cut off the round caps where they meet.
+        assertEquals(0, mCanvas.mClipCount);
+        assertEquals(0, mCanvas.mSaveCount);
+        for (Arc arc : mCanvas.mArcs) {
+            assertEquals(mBounds.left, arc.mLeft, DELTA);
+            assertEquals(mBounds.top, arc.mTop, DELTA);
+            assertEquals(mBounds.right, arc.mRight, DELTA);
+            assertEquals(mBounds.bottom, arc.mBottom, DELTA);
+        }
+    }
+
+    @Test
+    public void fullAndEmptyBatteriesLeaveOneArcEmpty() {
+        BatteryIndicator.draw(mCanvas, mBounds, 100, false, mLevelPaint, mUsedPaint, 4);
+        assertEquals(120, mCanvas.mArcs.get(0).mSweepAngle, DELTA);
+        assertEquals(0, mCanvas.mArcs.get(1).mSweepAngle, DELTA);
+
+        mCanvas.mArcs.clear();
+        BatteryIndicator.draw(mCanvas, mBounds, 0, false, mLevelPaint, mUsedPaint, 4);
+        assertEquals(0, mCanvas.mArcs.get(0).mSweepAngle, DELTA);
+        assertEquals(120, mCanvas.mArcs.get(1).mSweepAngle, DELTA);
+    }
+
+    @Test
+    public void chargingMarkerSitsWhereTheArcsMeet() {
+        BatteryIndicator.draw(mCanvas, mBounds, 50, true, mLevelPaint, mUsedPaint, 4);
+
+        // At 50% the arcs meet at the bottom of the oval.
+        assertEquals(1, mCanvas.mCircleCount);
+        assertEquals(200, mCanvas.mCircleX, DELTA);
+        assertEquals(240, mCanvas.mCircleY, DELTA);
+        assertSame(mLevelPaint, mCanvas.mCirclePaint);
+    }
+
+    @Test
+    public void noChargingMarkerWhileDischarging() {
+        BatteryIndicator.draw(mCanvas, mBounds, 50, false, mLevelPaint, mUsedPaint, 4);
+
+        assertEquals(0, mCanvas.mCircleCount);
+    }
+
+    private static final class Arc {
+        float mLeft;
+        float mTop;
+        float mRight;
+        float mBottom;
+        float mStartAngle;
+        float mSweepAngle;
+        Paint mPaint;
+    }
+
+    /* Records arcs and circles, and counts clips, instead of drawing them. */
+    private static final class RecordingCanvas extends CountingCanvas {
+        final ArrayList<Arc> mArcs = new ArrayList<>();
+        int mClipCount;
+        int mCircleCount;
+        float mCircleX;
+        float mCircleY;
+        Paint mCirclePaint;
+
+        @Override
+        public void drawArc(float left, float top, float right, float bottom, float startAngle,
+                float sweepAngle, boolean useCenter, Paint paint) {
+            super.drawArc(left, top, right, bottom, startAngle, sweepAngle, useCenter, paint);
+            Arc arc = new Arc();
+            arc.mLeft = left;
+            arc.mTop = top;
+            arc.mRight = right;
+            arc.mBottom = bottom;
+            arc.mStartAngle = startAngle;
+            arc.mSweepAngle = sweepAngle;
+            arc.mPaint = paint;
+            mArcs.add(arc);
+        }
+
+        @Override
+        public void drawCircle(float cx, float cy, float radius, Paint paint) {
+            super.drawCircle(cx, cy, radius, paint);
+            mCircleCount++;
+            mCircleX = cx;
+            mCircleY = cy;
+            mCirclePaint = paint;
+        }
+
+        @Override
+        public boolean clipRect(float left, float top, float right, float bottom) {
+            mClipCount++;
+            return true;
+        }
+
+        @Override
+        public boolean clipRect(RectF rect) {
+            mClipCount++;
+            return true;
+        }
+    }
+}
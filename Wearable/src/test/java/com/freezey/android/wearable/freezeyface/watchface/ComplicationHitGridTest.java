@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import static com.freezey.android.wearable.freezeyface.watchface.ComplicationHitGrid.NO_COMPLICATION;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ComplicationHitGridTest {
+
+    private static final int BACKGROUND = 0;
+    private static final int LEFT = 1;
+    private static final int RIGHT = 2;
+
+    private ComplicationHitGrid mGrid;
+
+    @Before
+    public void setUp() {
+        mGrid = new ComplicationHitGrid();
+        mGrid.reset(400, 400);
+    }
+
+    @Test
+    public void emptyGridHitsNothing() {
+        assertEquals(NO_COMPLICATION, mGrid.getComplicationId(200, 200));
+    }
+
+    @Test
+    public void rectHitsInsideAndMissesOutside() {
+        mGrid.addRect(LEFT, 40, 160, 120, 240);
+
+        assertEquals(LEFT, mGrid.getComplicationId(40, 160));
+        assertEquals(LEFT, mGrid.getComplicationId(80, 200));
+        assertEquals(LEFT, mGrid.getComplicationId(119, 239));
+        assertEquals(NO_COMPLICATION, mGrid.getComplicationId(36, 200));
+        assertEquals(NO_COMPLICATION, mGrid.getComplicationId(120, 200));
+        assertEquals(NO_COMPLICATION, mGrid.getComplicationId(80, 240));
+    }
+
+    @Test
+    public void ovalMissesItsBoundsCorners() {
+        mGrid.addOval(RIGHT, 280, 160, 360, 240);
+
+        assertEquals(RIGHT, mGrid.getComplicationId(320, 200));
+        assertEquals(RIGHT, mGrid.getComplicationId(282, 200));
+        assertEquals(RIGHT, mGrid.getComplicationId(320, 162));
+        assertEquals(NO_COMPLICATION, mGrid.getComplicationId(284, 164));
+        assertEquals(NO_COMPLICATION, mGrid.getComplicationId(356, 236));
+    }
+
+    @Test
+    public void laterRegionsAreOnTop() {
+        mGrid.addOval(BACKGROUND, 0, 0, 400, 400);
+        mGrid.addRect(LEFT, 40, 160, 120, 240);
+
+        assertEquals(LEFT, mGrid.getComplicationId(80, 200));
+        assertEquals(BACKGROUND, mGrid.getComplicationId(200, 200));
+        // Outside the round background.
+        assertEquals(NO_COMPLICATION, mGrid.getComplicationId(4, 4));
+    }
+
+    @Test
+    public void emptyOvalAddsNothing() {
+        mGrid.addOval(LEFT, 100, 100, 100, 200);
+
+        assertEquals(NO_COMPLICATION, mGrid.getComplicationId(100, 150));
+    }
+
+    @Test
+    public void regionsAreClippedToTheScreen() {
+        mGrid.addRect(LEFT, -40, -40, 40, 40);
+
+        assertEquals(LEFT, mGrid.getComplicationId(0, 0));
+        assertEquals(NO_COMPLICATION, mGrid.getComplicationId(-1, 0));
+        assertEquals(NO_COMPLICATION, mGrid.getComplicationId(400, 399));
+        assertEquals(NO_COMPLICATION, mGrid.getComplicationId(399, 400));
+    }
+
+    @Test
+    public void resetClearsRegionsAndResizes() {
+        mGrid.addRect(LEFT, 0, 0, 400, 400);
+
+        mGrid.reset(320, 290);
+
+        assertEquals(NO_COMPLICATION, mGrid.getComplicationId(10, 10));
+        mGrid.addRect(RIGHT, 0, 0, 320, 290);
+        assertEquals(RIGHT, mGrid.getComplicationId(319, 287));
+        assertEquals(NO_COMPLICATION, mGrid.getComplicationId(330, 100));
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ComplicationUpdateCoalescerTest {
+
+    private RecordingCallback mCallback;
+    private FakeScheduler mScheduler;
+    private ComplicationUpdateCoalescer<String> mCoalescer;
+
+    @Before
+    public void setUp() {
+        mCallback = new RecordingCallback();
+        mScheduler = new FakeScheduler();
+        mCoalescer = new ComplicationUpdateCoalescer<>(mCallback, mScheduler);
+    }
+
+    @Test
+    public void burstIsAppliedOnceAfterOneFrame() {
+        mCoalescer.add(3, "c", Long.MAX_VALUE);
+        mCoalescer.add(1, "a", Long.MAX_VALUE);
+        mCoalescer.add(2, "b", Long.MAX_VALUE);
+
+        assertEquals(0, mCallback.mApplied.size());
+        assertEquals(ComplicationUpdateCoalescer.FRAME_INTERVAL_MS, mScheduler.mDelayMs);
+        assertEquals(1, mScheduler.mPostCount);
+
+        mScheduler.run();
+
+        assertEquals(Arrays.asList("1=a", "2=b", "3=c"), mCallback.mApplied);
+        assertEquals(1, mCallback.mRedrawCount);
+        assertEquals(3, mCoalescer.getUpdateCount());
+        assertEquals(2, mCoalescer.getSavedRedrawCount());
+    }
+
+    @Test
+    public void latestUpdatePerIdWins() {
+        mCoalescer.add(2, "old", Long.MAX_VALUE);
+        mCoalescer.add(1, "a", Long.MAX_VALUE);
+        mCoalescer.add(2, "new", Long.MAX_VALUE);
+        mCoalescer.add(2, null, Long.MAX_VALUE);
+        mCoalescer.add(2, "newest", Long.MAX_VALUE);
+
+        mScheduler.run();
+
+        assertEquals(Arrays.asList("1=a", "2=newest"), mCallback.mApplied);
+    }
+
+    @Test
+    public void nullDataIsApplied() {
+        mCoalescer.add(4, null, Long.MAX_VALUE);
+
+        mScheduler.run();
+
+        assertEquals(Arrays.asList("4=null"), mCallback.mApplied);
+    }
+
+    @Test
+    public void setIsAppliedByTheNextTick() {
+        mCoalescer.add(1, "a", 5);
+        assertEquals(5, mScheduler.mDelayMs);
+
+        mCoalescer.add(2, "b", 0);
+        // Only the first update of a set schedules.
+        assertEquals(1, mScheduler.mPostCount);
+
+        mCoalescer.flush();
+        mCoalescer.add(3, "c", -10);
+        assertEquals(0, mScheduler.mDelayMs);
+    }
+
+    @Test
+    public void flushAppliesWithoutRedrawAndUnschedules() {
+        mCoalescer.add(2, "b", Long.MAX_VALUE);
+        mCoalescer.add(1, "a", Long.MAX_VALUE);
+
+        assertTrue(mCoalescer.flush());
+
+        assertEquals(Arrays.asList("1=a", "2=b"), mCallback.mApplied);
+        assertEquals(0, mCallback.mRedrawCount);
+        assertNull(mScheduler.mPending);
+        assertFalse(mCoalescer.flush());
+    }
+
+    @Test
+    public void updatesAfterAFlushStartANewSet() {
+        mCoalescer.add(1, "a", Long.MAX_VALUE);
+        mCoalescer.flush();
+        mCallback.mApplied.clear();
+
+        mCoalescer.add(1, "b", Long.MAX_VALUE);
+
+        assertEquals(2, mScheduler.mPostCount);
+        mScheduler.run();
+        assertEquals(Arrays.asList("1=b"), mCallback.mApplied);
+        assertEquals(1, mCallback.mRedrawCount);
+    }
+
+    @Test
+    public void manyIdsStayOrdered() {
+        for (int id = 20; id > 0; id--) {
+            mCoalescer.add(id, "v" + id, Long.MAX_VALUE);
+        }
+
+        mScheduler.run();
+
+        assertEquals(20, mCallback.mApplied.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals((i + 1) + "=v" + (i + 1), mCallback.mApplied.get(i));
+        }
+    }
+
+    @Test
+    public void cancelDropsPendingUpdates() {
+        mCoalescer.add(1, "a", Long.MAX_VALUE);
+
+        mCoalescer.cancel();
+
+        assertNull(mScheduler.mPending);
+        assertFalse(mCoalescer.flush());
+        assertEquals(0, mCallback.mApplied.size());
+    }
+
+    private static class RecordingCallback
+            implements ComplicationUpdateCoalescer.Callback<String> {
+        final List<String> mApplied = new ArrayList<>();
+        int mRedrawCount;
+
+        @Override
+        public void onComplicationDataUpdate(int complicationId, String complicationData) {
+            mApplied.add(complicationId + "=" + complicationData);
+        }
+
+        @Override
+        public void onComplicationUpdatesApplied() {
+            mRedrawCount++;
+        }
+    }
+
+    /** Holds the one runnable the coalescer schedules, run by the test. */
+    private static class FakeScheduler implements ComplicationUpdateCoalescer.Scheduler {
+        Runnable mPending;
+        long mDelayMs = -1;
+        int mPostCount;
+
+        @Override
+        public void postDelayed(Runnable runnable, long delayMs) {
+            mPending = runnable;
+            mDelayMs = delayMs;
+            mPostCount++;
+        }
+
+        @Override
+        public void removeCallbacks(Runnable runnable) {
+            if (mPending == runnable) {
+                mPending = null;
+            }
+        }
+
+        void run() {
+            Runnable runnable = mPending;
+            mPending = null;
+            runnable.run();
+        }
+    }
+}
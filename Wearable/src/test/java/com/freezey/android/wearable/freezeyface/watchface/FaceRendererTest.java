@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/** Checks which glyphs of the readout are drawn, and when the colon blinks. */
+public class FaceRendererTest {
+
+    private final Calendar mCalendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    private final CountingCanvas mCanvas = new CountingCanvas();
+    private FaceRenderer mFaceRenderer;
+
+    @Before
+    public void setUp() {
+        FakeTextPaint digitPaint = new FakeTextPaint();
+        digitPaint.setTextSize(80);
+        Paint paint = new Paint();
+        mFaceRenderer = new FaceRenderer(digitPaint, paint, paint, paint, 4);
+        mFaceRenderer.setGeometry(200, 200, new RectF());
+
+        mCalendar.clear();
+        mCalendar.set(2017, Calendar.MARCH, 1, 22, 7, 0);
+    }
+
+    @Test
+    public void readoutLeavesTheColonOutUnlessAsked() {
+        // "10:07"
+        mFaceRenderer.drawTimeReadout(mCanvas, mCalendar, false);
+        assertEquals(4, mCanvas.mDrawCount);
+
+        mFaceRenderer.drawTimeReadout(mCanvas, mCalendar, true);
+        assertEquals(4 + 5, mCanvas.mDrawCount);
+    }
+
+    @Test
+    public void colonBlinksEverySecond() {
+        assertTrue(FaceRenderer.isColonShown(0, true));
+        assertTrue(FaceRenderer.isColonShown(999, true));
+        assertFalse(FaceRenderer.isColonShown(1000, true));
+        assertFalse(FaceRenderer.isColonShown(1999, true));
+        assertTrue(FaceRenderer.isColonShown(2000, true));
+    }
+
+    @Test
+    public void colonIsSteadyWithoutBlinking() {
+        mFaceRenderer.drawTimeReadout(mCanvas, mCalendar, false);
+
+        assertTrue(mFaceRenderer.drawColon(mCanvas, 1500, false));
+        assertFalse(mFaceRenderer.drawColon(mCanvas, 1500, true));
+        assertEquals(4 + 1, mCanvas.mDrawCount);
+    }
+}
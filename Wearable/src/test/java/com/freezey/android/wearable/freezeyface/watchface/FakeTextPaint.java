@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+/**
+ * Paint that keeps its text size and measures every character as half the text size wide, so
+ * text layout code can run in a JVM unit test. Other settings are ignored.
+ */
+class FakeTextPaint extends Paint {
+    private float mTextSize = 12;
+
+    @Override
+    public float getTextSize() {
+        return mTextSize;
+    }
+
+    @Override
+    public void setTextSize(float textSize) {
+        mTextSize = textSize;
+    }
+
+    @Override
+    public void setColor(int color) {}
+
+    @Override
+    public void setAlpha(int alpha) {}
+
+    @Override
+    public void setAntiAlias(boolean antiAlias) {}
+
+    @Override
+    public void setFilterBitmap(boolean filter) {}
+
+    @Override
+    public void setStyle(Style style) {}
+
+    @Override
+    public void setStrokeCap(Cap cap) {}
+
+    @Override
+    public void setStrokeWidth(float width) {}
+
+    @Override
+    public Typeface getTypeface() {
+        return null;
+    }
+
+    @Override
+    public float getTextScaleX() {
+        return 1;
+    }
+
+    @Override
+    public float measureText(String text) {
+        return text.length() * mTextSize / 2;
+    }
+
+    @Override
+    public float measureText(char[] text, int index, int count) {
+        return count * mTextSize / 2;
+    }
+}
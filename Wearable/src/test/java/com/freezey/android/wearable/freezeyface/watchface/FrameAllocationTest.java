@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that the Canvas face's interactive frames allocate nothing once its caches are built,
+ * so they don't cause garbage collections.
+ *
+ * <p>Frames are drawn the way onDraw() draws them with layered rendering and timing enabled:
+ * the static layer's date ring, readout and battery arcs when the minute changes, the layer's
+ * blit and the colon on every frame, each phase recorded in {@link RenderStats}. The drawing
+ * goes through the face's own {@link DateRingCache} and {@link FaceRenderer}; only the
+ * sequencing of onDraw() is repeated here, as the engine can't run outside the platform.
+ */
+public class FrameAllocationTest {
+
+    private static final int WARMUP_FRAMES = 20000;
+    private static final int MEASURED_FRAMES = 20000;
+
+    /* Slack for the measurement itself; a single allocation per frame would be far above it. */
+    private static final long MAX_ALLOCATED_BYTES = 1024;
+
+    private static final long START_MS = utc(2017, Calendar.MARCH, 1, 10, 0);
+
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Calendar mCalendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    private final DateRingCache mDateRingCache = new DateRingCache();
+    private final FakeTextPaint mDatePaint = new FakeTextPaint();
+    private final FakeTextPaint mHourPaint = new FakeTextPaint();
+    private final RenderStats mRenderStats = new RenderStats();
+    private final CountingCanvas mCanvas = new CountingCanvas();
+    private final CountingCanvas mStaticLayerCanvas = new CountingCanvas();
+    private FaceRenderer mFaceRenderer;
+
+    private long mNowMs;
+    private long mStaticLayerMinute = -1;
+
+    @Before
+    public void setUp() {
+        mDateRingCache.setTimeZoneAndLocale(TimeZone.getTimeZone("UTC"), Locale.US);
+        mHourPaint.setTextSize(80);
+        Paint levelPaint = new Paint();
+        mFaceRenderer = new FaceRenderer(mHourPaint, levelPaint, new Paint(), levelPaint, 4);
+        // Fields are set directly, RectF's methods aren't available in JVM tests.
+        RectF batteryArcBounds = new RectF();
+        batteryArcBounds.left = 67;
+        batteryArcBounds.top = 160;
+        batteryArcBounds.right = 333;
+        batteryArcBounds.bottom = 240;
+        mFaceRenderer.setGeometry(200, 200, batteryArcBounds);
+        mRenderStats.setEnabled(true);
+    }
+
+    @Test
+    public void interactiveFramesDontAllocate() {
+        mNowMs = START_MS;
+        drawFrames(WARMUP_FRAMES);
+
+        long before = AllocationCounter.getAllocatedBytes();
+        drawFrames(MEASURED_FRAMES);
+        long allocated = AllocationCounter.getAllocatedBytes() - before;
+
+        assertTrue("allocated " + allocated + " bytes in " + MEASURED_FRAMES + " frames",
+                allocated <= MAX_ALLOCATED_BYTES);
+    }
+
+    @Test
+    public void firstFrameRendersTheStaticLayer() {
+        mNowMs = START_MS;
+        drawFrames(1);
+
+        // Two labels per day of the ring, "10:00" without its colon, and the two battery arcs
+        // with the charging marker.
+        assertEquals(2 * DateRingCache.DAYS + 4 + 3, mStaticLayerCanvas.mDrawCount);
+        assertEquals(0, mStaticLayerCanvas.mSaveCount);
+        // The layer's blit, then the colon in the first half of the second.
+        assertEquals(2, mCanvas.mDrawCount);
+    }
+
+    @Test
+    public void laterFramesInTheMinuteOnlyBlitAndDrawTheColon() {
+        mNowMs = START_MS;
+        drawFrames(1);
+        int layerDraws = mStaticLayerCanvas.mDrawCount;
+
+        drawFrames(9);
+
+        assertEquals(layerDraws, mStaticLayerCanvas.mDrawCount);
+        // Ten blits, and the colon in all but the last frame, a second into the minute.
+        assertEquals(10 + 9, mCanvas.mDrawCount);
+    }
+
+    @Test
+    public void dateRingIsValidUntilTheNextLocalMidnight() {
+        mNowMs = START_MS;
+        drawFrames(1);
+
+        assertEquals(utc(2017, Calendar.MARCH, 2, 0, 0), mDateRingCache.getValidUntilMs());
+    }
+
+    /* One frame every 100ms, as the colon blink would draw them, all within the same day. */
+    private void drawFrames(int count) {
+        for (int i = 0; i < count; i++) {
+            mNowMs += 100;
+            if (mNowMs >= START_MS + TimeUnit.HOURS.toMillis(1)) {
+                mNowMs = START_MS;
+            }
+            drawFrame(mNowMs);
+        }
+    }
+
+    /* The layered interactive path of FreezeyWatchFaceService.Engine.onDraw(). */
+    private void drawFrame(long now) {
+        mRenderStats.begin(RenderStats.PHASE_ON_DRAW);
+        mCalendar.setTimeInMillis(now);
+
+        long minute = now / MINUTE_MS;
+        if (minute != mStaticLayerMinute) {
+            mStaticLayerMinute = minute;
+
+            mRenderStats.begin(RenderStats.PHASE_WATCH_FACE);
+            mDateRingCache.draw(mStaticLayerCanvas, now, 200, 200, mDatePaint);
+            mFaceRenderer.drawTimeReadout(mStaticLayerCanvas, mCalendar, false);
+            mRenderStats.end(RenderStats.PHASE_WATCH_FACE);
+
+            mRenderStats.begin(RenderStats.PHASE_BATTERY);
+            mFaceRenderer.drawBatteryIndicator(mStaticLayerCanvas, 73, true);
+            mRenderStats.end(RenderStats.PHASE_BATTERY);
+            mRenderStats.countFullFrame();
+        } else {
+            mRenderStats.countPartialFrame();
+        }
+
+        // The static layer's bitmap isn't available in JVM tests, the counting canvas takes null.
+        mCanvas.drawBitmap(null, 0, 0, null);
+        mFaceRenderer.drawColon(mCanvas, now, true);
+
+        mRenderStats.end(RenderStats.PHASE_ON_DRAW);
+    }
+
+    private static long utc(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute, 0);
+        return calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Checks the on-pixel ratio computed from probe pixels: blocks are box-averaged before they
+ * are binned, so thin lines count the same wherever they fall on the pixel grid.
+ */
+public class OnPixelRatioAnalyzerTest {
+
+    private static final float DELTA = 1e-4f;
+
+    private static final int WHITE = 0xffffffff;
+    private static final int BLACK = 0xff000000;
+
+    private static final int SIZE = 64;
+    private static final int SCALE = OnPixelRatioAnalyzer.SCALE;
+    private static final int BINS = OnPixelRatioAnalyzer.HISTOGRAM_BINS;
+
+    private final OnPixelRatioAnalyzer mAnalyzer = new OnPixelRatioAnalyzer(0.15f);
+
+    @Test
+    public void blackFrameIsOff() {
+        assertEquals(0, measure(fill(BLACK), SIZE), DELTA);
+    }
+
+    @Test
+    public void whiteFrameIsFullyLit() {
+        // White lands in the top bin, which counts at its center.
+        assertEquals((BINS - 0.5f) / BINS, measure(fill(WHITE), SIZE), DELTA);
+    }
+
+    @Test
+    public void nearlyBlackBlocksCountAsOff() {
+        assertEquals(0, measure(fill(0xff0a0a0a), SIZE), DELTA);
+    }
+
+    @Test
+    public void greenCountsMoreThanBlue() {
+        float green = measure(fill(0xff00ff00), SIZE);
+        float blue = measure(fill(0xff0000ff), SIZE);
+
+        assertEquals(9.5f / BINS, green, DELTA);
+        assertEquals(1.5f / BINS, blue, DELTA);
+    }
+
+    @Test
+    public void thinLinesCountTheSameAtEveryOffset() {
+        // Two pixel wide vertical lines, one per block, light a quarter of every block. A probe
+        // sampling one pixel per block would see either all or none of them. A quarter of white
+        // is luminance 63, in bin 3.
+        for (int offset = 0; offset <= SCALE - 2; offset++) {
+            int[] pixels = fill(BLACK);
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = offset; x < SIZE; x += SCALE) {
+                    pixels[y * SIZE + x] = WHITE;
+                    pixels[y * SIZE + x + 1] = WHITE;
+                }
+            }
+            assertEquals("offset " + offset, 3.5f / BINS, measure(pixels, SIZE), DELTA);
+        }
+    }
+
+    @Test
+    public void partialBlocksAreAveragedOverTheirPixels() {
+        // 12 pixels wide: one full block, then a block of four white columns.
+        int width = 12;
+        int[] pixels = new int[width * SCALE];
+        Arrays.fill(pixels, BLACK);
+        for (int y = 0; y < SCALE; y++) {
+            for (int x = SCALE; x < width; x++) {
+                pixels[y * width + x] = WHITE;
+            }
+        }
+
+        mAnalyzer.resetHistogram();
+        mAnalyzer.addRows(pixels, width, SCALE);
+
+        assertEquals((BINS - 0.5f) / BINS / 2, mAnalyzer.computeRatio(), DELTA);
+    }
+
+    @Test
+    public void resetForgetsEarlierBlocks() {
+        measure(fill(WHITE), SIZE);
+        mAnalyzer.resetHistogram();
+
+        assertEquals(0, mAnalyzer.computeRatio(), DELTA);
+    }
+
+    /* Feeds a frame stored row after row in bands of SCALE rows, the way endFrame() reads it. */
+    private float measure(int[] pixels, int width) {
+        int height = pixels.length / width;
+        int[] band = new int[width * SCALE];
+        mAnalyzer.resetHistogram();
+        for (int y = 0; y < height; y += SCALE) {
+            int rows = Math.min(SCALE, height - y);
+            System.arraycopy(pixels, y * width, band, 0, rows * width);
+            mAnalyzer.addRows(band, width, rows);
+        }
+        return mAnalyzer.computeRatio();
+    }
+
+    private static int[] fill(int color) {
+        int[] pixels = new int[SIZE * SIZE];
+        Arrays.fill(pixels, color);
+        return pixels;
+    }
+}
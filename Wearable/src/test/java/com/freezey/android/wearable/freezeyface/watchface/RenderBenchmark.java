@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmark harness for the watch face's drawing code on a plain JVM.
+ *
+ * <p>Cases draw into a {@link CountingCanvas}, so what is measured is the face's own work per
+ * frame (layout, caching, and the calls it makes on the canvas), not rasterization, which
+ * only a watch can measure, see {@link RenderStats}. Each case runs for a number of rounds, on
+ * fresh fixtures every round. A round runs warmup iterations, then measured iterations, and
+ * reports the average time, bytes allocated and draw calls per iteration.
+ *
+ * <p>Complications aren't covered: {@link ComplicationRenderCache} draws through
+ * ComplicationDrawable and blits slot bitmaps, neither of which works outside the platform.
+ * Their cost is the drawComplications phase of {@link RenderStats}, on a watch.
+ */
+class RenderBenchmark {
+
+    /** A piece of drawing code to measure, with the fixtures it draws from. */
+    abstract static class Case {
+        /** Creates the fixtures, called before each round. */
+        void setUp() {}
+
+        abstract void run(CountingCanvas canvas, long timeMs);
+    }
+
+    /** Timing, allocations and draw calls of one round of one case. */
+    static final class Result {
+        final String mName;
+        final int mRound;
+        final double mNanosPerOp;
+        final double mBytesPerOp;
+        final double mDrawsPerOp;
+
+        Result(String name, int round, double nanosPerOp, double bytesPerOp, double drawsPerOp) {
+            mName = name;
+            mRound = round;
+            mNanosPerOp = nanosPerOp;
+            mBytesPerOp = bytesPerOp;
+            mDrawsPerOp = drawsPerOp;
+        }
+    }
+
+    /*
+     * Each iteration advances the clock by a second, so cases see the colon blink and, every 60
+     * iterations, a minute change.
+     */
+    private static final long TIME_STEP_MS = TimeUnit.SECONDS.toMillis(1);
+
+    private final int mRounds;
+    private final int mWarmupIterations;
+    private final int mMeasuredIterations;
+    private final long mStartTimeMs;
+
+    private final List<String> mNames = new ArrayList<>();
+    private final List<Case> mCases = new ArrayList<>();
+
+    RenderBenchmark(int rounds, int warmupIterations, int measuredIterations, long startTimeMs) {
+        mRounds = rounds;
+        mWarmupIterations = warmupIterations;
+        mMeasuredIterations = measuredIterations;
+        mStartTimeMs = startTimeMs;
+    }
+
+    void addCase(String name, Case benchmarkCase) {
+        mNames.add(name);
+        mCases.add(benchmarkCase);
+    }
+
+    /** Runs every case and prints one line per case and round to out. */
+    List<Result> run(PrintStream out) {
+        out.println("RenderBenchmark: " + mRounds + " rounds of " + mWarmupIterations
+                + " warmup + " + mMeasuredIterations + " iterations");
+
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < mCases.size(); i++) {
+            Case benchmarkCase = mCases.get(i);
+            for (int round = 0; round < mRounds; round++) {
+                Result result = runRound(mNames.get(i), round, benchmarkCase);
+                results.add(result);
+                out.println(String.format(
+                        "  %-12s round %d: %10.1f ns/op %10.1f bytes/op %6.1f draws/op",
+                        result.mName, result.mRound, result.mNanosPerOp, result.mBytesPerOp,
+                        result.mDrawsPerOp));
+            }
+        }
+        return results;
+    }
+
+    private Result runRound(String name, int round, Case benchmarkCase) {
+        benchmarkCase.setUp();
+        CountingCanvas canvas = new CountingCanvas();
+
+        long timeMs = mStartTimeMs;
+        for (int iteration = 0; iteration < mWarmupIterations; iteration++) {
+            benchmarkCase.run(canvas, timeMs);
+            timeMs += TIME_STEP_MS;
+        }
+
+        // Read after the loop, so the calls on the canvas can't be optimized away.
+        int startDraws = canvas.mDrawCount;
+        long startBytes = AllocationCounter.getAllocatedBytes();
+        long startNanos = System.nanoTime();
+        for (int iteration = 0; iteration < mMeasuredIterations; iteration++) {
+            benchmarkCase.run(canvas, timeMs);
+            timeMs += TIME_STEP_MS;
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long allocatedBytes = AllocationCounter.getAllocatedBytes() - startBytes;
+        int draws = canvas.mDrawCount - startDraws;
+
+        return new Result(
+                name,
+                round,
+                (double) elapsedNanos / mMeasuredIterations,
+                (double) allocatedBytes / mMeasuredIterations,
+                (double) draws / mMeasuredIterations);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Runs the {@link RenderBenchmark} cases for the date ring, the time readout with its colon and
+ * the battery arcs, and the three together as the static layer of a frame. They draw through
+ * the face's own {@link DateRingCache} and {@link FaceRenderer}.
+ *
+ * <p>The full benchmark only runs when asked for, with {@code ./gradlew test -Pbenchmark}, and
+ * prints its results to the test output. Otherwise a short run checks that the cases still
+ * work.
+ */
+public class RenderBenchmarkTest {
+
+    /** System property set by the build when the benchmark is requested. */
+    private static final String BENCHMARK_PROPERTY = "freezey.benchmark";
+
+    private static final int ROUNDS = 5;
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int MEASURED_ITERATIONS = 20000;
+
+    private static final int NUM_CASES = 4;
+
+    /* A 400x400 screen, like the bounds the faces compute in onSurfaceChanged(). */
+    private static final float CENTER_X = 200;
+    private static final float CENTER_Y = 200;
+
+    @Test
+    public void benchmark() {
+        Assume.assumeTrue(Boolean.getBoolean(BENCHMARK_PROPERTY));
+
+        createBenchmark(ROUNDS, WARMUP_ITERATIONS, MEASURED_ITERATIONS).run(System.out);
+    }
+
+    @Test
+    public void casesRun() {
+        List<RenderBenchmark.Result> results = createBenchmark(2, 10, 10).run(System.out);
+
+        assertEquals(2 * NUM_CASES, results.size());
+        for (RenderBenchmark.Result result : results) {
+            assertTrue(result.mName, result.mNanosPerOp > 0);
+            assertTrue(result.mName, result.mDrawsPerOp > 0);
+        }
+    }
+
+    private static RenderBenchmark createBenchmark(int rounds, int warmup, int measured) {
+        RenderBenchmark benchmark = new RenderBenchmark(rounds, warmup, measured, startTimeMs());
+        benchmark.addCase("dateRing", new FaceCase() {
+            @Override
+            void run(CountingCanvas canvas, long timeMs) {
+                drawDateRing(canvas, timeMs);
+            }
+        });
+        benchmark.addCase("timeReadout", new FaceCase() {
+            @Override
+            void run(CountingCanvas canvas, long timeMs) {
+                drawTimeReadout(canvas, timeMs);
+                drawColon(canvas, timeMs);
+            }
+        });
+        benchmark.addCase("batteryArcs", new FaceCase() {
+            @Override
+            void run(CountingCanvas canvas, long timeMs) {
+                drawBatteryArcs(canvas);
+            }
+        });
+        benchmark.addCase("staticLayer", new FaceCase() {
+            @Override
+            void run(CountingCanvas canvas, long timeMs) {
+                drawDateRing(canvas, timeMs);
+                drawTimeReadout(canvas, timeMs);
+                drawBatteryArcs(canvas);
+            }
+        });
+        return benchmark;
+    }
+
+    private static long startTimeMs() {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(2017, Calendar.MARCH, 1, 10, 0, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    /* The state a face draws from, set up the way the Canvas face's engine does. */
+    private abstract static class FaceCase extends RenderBenchmark.Case {
+        private Calendar mCalendar;
+        private DateRingCache mDateRingCache;
+        private FakeTextPaint mDatePaint;
+        private FaceRenderer mFaceRenderer;
+
+        @Override
+        void setUp() {
+            mCalendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            mDateRingCache = new DateRingCache();
+            mDateRingCache.setTimeZoneAndLocale(TimeZone.getTimeZone("UTC"), Locale.US);
+            mDatePaint = new FakeTextPaint();
+            mDatePaint.setTextSize(15);
+            FakeTextPaint hourPaint = new FakeTextPaint();
+            hourPaint.setTextSize(80);
+            Paint levelPaint = new Paint();
+            mFaceRenderer = new FaceRenderer(hourPaint, levelPaint, new Paint(), levelPaint, 4);
+            // Fields are set directly, RectF's methods aren't available in JVM tests.
+            RectF batteryArcBounds = new RectF();
+            batteryArcBounds.left = CENTER_X / 3f;
+            batteryArcBounds.top = CENTER_Y * 0.8f;
+            batteryArcBounds.right = CENTER_X * 10f / 6f;
+            batteryArcBounds.bottom = CENTER_Y * 1.2f;
+            mFaceRenderer.setGeometry(CENTER_X, CENTER_Y, batteryArcBounds);
+        }
+
+        void drawDateRing(CountingCanvas canvas, long timeMs) {
+            mDateRingCache.draw(canvas, timeMs, CENTER_X, CENTER_Y, mDatePaint);
+        }
+
+        /* The digits as rendered into the static layer; the colon is drawn on every frame. */
+        void drawTimeReadout(CountingCanvas canvas, long timeMs) {
+            mCalendar.setTimeInMillis(timeMs);
+            mFaceRenderer.drawTimeReadout(canvas, mCalendar, false);
+        }
+
+        void drawColon(CountingCanvas canvas, long timeMs) {
+            mFaceRenderer.drawColon(canvas, timeMs, true);
+        }
+
+        void drawBatteryArcs(CountingCanvas canvas) {
+            mFaceRenderer.drawBatteryIndicator(canvas, 73, true);
+        }
+    }
+}
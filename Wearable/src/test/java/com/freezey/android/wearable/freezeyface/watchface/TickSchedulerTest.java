@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.freezey.android.wearable.freezeyface.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+public class TickSchedulerTest {
+
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+
+    private FakeClock mClock;
+    private TickScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mScheduler = new TickScheduler(mClock);
+        mScheduler.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    @Test
+    public void blinkingTicksOnTheNextSecond() {
+        mClock.mNowMs = utc(2017, Calendar.MARCH, 1, 10, 15, 30) + 250;
+
+        assertEquals(750, mScheduler.getDelayMs(0));
+        assertEquals(mClock.mNowMs + 750, mScheduler.getNextChangeMs(0));
+    }
+
+    @Test
+    public void blinkingOnASecondBoundaryWaitsAWholeSecond() {
+        mClock.mNowMs = utc(2017, Calendar.MARCH, 1, 10, 15, 30);
+
+        assertEquals(1000, mScheduler.getDelayMs(0));
+    }
+
+    @Test
+    public void withoutBlinkTicksOnTheMinuteRollover() {
+        mScheduler.setBlinkEnabled(false);
+        mClock.mNowMs = utc(2017, Calendar.MARCH, 1, 10, 15, 30) + 250;
+
+        assertEquals(utc(2017, Calendar.MARCH, 1, 10, 16, 0), mScheduler.getNextChangeMs(0));
+        assertEquals(29750, mScheduler.getDelayMs(0));
+    }
+
+    @Test
+    public void withoutBlinkRollsOverTheHourAndDay() {
+        mScheduler.setBlinkEnabled(false);
+        mClock.mNowMs = utc(2017, Calendar.DECEMBER, 31, 23, 59, 59);
+
+        assertEquals(utc(2018, Calendar.JANUARY, 1, 0, 0, 0), mScheduler.getNextChangeMs(0));
+    }
+
+    @Test
+    public void dayChangeBeforeTheNextTickWins() {
+        mScheduler.setBlinkEnabled(false);
+        mClock.mNowMs = utc(2017, Calendar.MARCH, 1, 10, 15, 30);
+        long dayChangeMs = mClock.mNowMs + 10000;
+
+        assertEquals(dayChangeMs, mScheduler.getNextChangeMs(dayChangeMs));
+    }
+
+    @Test
+    public void pastOrUnknownDayChangeIsIgnored() {
+        mClock.mNowMs = utc(2017, Calendar.MARCH, 1, 10, 15, 30);
+
+        assertEquals(1000, mScheduler.getDelayMs(0));
+        assertEquals(1000, mScheduler.getDelayMs(mClock.mNowMs - 1));
+        assertEquals(1000, mScheduler.getDelayMs(mClock.mNowMs));
+    }
+
+    @Test
+    public void withoutBlinkTicksOnTheMinuteAcrossDstStart() {
+        mScheduler.setBlinkEnabled(false);
+        mScheduler.setTimeZone(NEW_YORK);
+        // 2017-03-12 01:59:30 EST, half a minute before clocks jump to 03:00 EDT.
+        mClock.mNowMs = utc(2017, Calendar.MARCH, 12, 6, 59, 30);
+
+        assertEquals(30000, mScheduler.getDelayMs(0));
+        assertEquals(local(NEW_YORK, 2017, Calendar.MARCH, 12, 3, 0),
+                mScheduler.getNextChangeMs(0));
+    }
+
+    @Test
+    public void withoutBlinkTicksOnTheMinuteAcrossDstEnd() {
+        mScheduler.setBlinkEnabled(false);
+        mScheduler.setTimeZone(NEW_YORK);
+        // 2017-11-05 01:59:45 EDT, clocks then fall back to 01:00 EST.
+        mClock.mNowMs = utc(2017, Calendar.NOVEMBER, 5, 5, 59, 45);
+
+        assertEquals(15000, mScheduler.getDelayMs(0));
+    }
+
+    @Test
+    public void withoutBlinkFollowsZoneOffsetsThatArentWholeMinutes() {
+        mScheduler.setBlinkEnabled(false);
+        mClock.mNowMs = utc(2017, Calendar.MARCH, 1, 10, 15, 0);
+        assertEquals(60000, mScheduler.getDelayMs(0));
+
+        // Local minutes start 40 seconds past each UTC minute.
+        mScheduler.setTimeZone(new SimpleTimeZone(-40000, "Test/Odd"));
+
+        assertEquals(40000, mScheduler.getDelayMs(0));
+    }
+
+    @Test
+    public void zoneChangeMovesTheMinuteTick() {
+        mScheduler.setBlinkEnabled(false);
+        // Kathmandu is UTC+05:45, so its minutes line up with UTC minutes as well.
+        mScheduler.setTimeZone(TimeZone.getTimeZone("Asia/Kathmandu"));
+        mClock.mNowMs = utc(2017, Calendar.MARCH, 1, 10, 15, 30);
+        assertEquals(30000, mScheduler.getDelayMs(0));
+
+        mScheduler.setTimeZone(new SimpleTimeZone(30000, "Test/HalfMinute"));
+
+        assertEquals(60000, mScheduler.getDelayMs(0));
+    }
+
+    @Test
+    public void reenablingBlinkReturnsToSecondTicks() {
+        mScheduler.setBlinkEnabled(false);
+        mClock.mNowMs = utc(2017, Calendar.MARCH, 1, 10, 15, 30) + 400;
+        assertEquals(29600, mScheduler.getDelayMs(0));
+
+        mScheduler.setBlinkEnabled(true);
+
+        assertEquals(600, mScheduler.getDelayMs(0));
+    }
+
+    @Test
+    public void blinkingWakesOncePerSecondForAnHour() {
+        mClock.mNowMs = utc(2017, Calendar.MARCH, 1, 10, 15, 30) + 250;
+
+        assertEquals(3600, countWakeups(mClock.mNowMs + HOUR_MS, 0));
+    }
+
+    @Test
+    public void withoutBlinkWakesOncePerMinuteForAnHour() {
+        mScheduler.setBlinkEnabled(false);
+        mClock.mNowMs = utc(2017, Calendar.MARCH, 1, 10, 15, 30) + 250;
+
+        assertEquals(60, countWakeups(mClock.mNowMs + HOUR_MS, 0));
+    }
+
+    @Test
+    public void midnightOnATickAddsNoWakeup() {
+        long midnightMs = utc(2017, Calendar.MARCH, 2, 0, 0, 0);
+        mClock.mNowMs = midnightMs - HOUR_MS / 2 + 250;
+        assertEquals(3600, countWakeups(mClock.mNowMs + HOUR_MS, midnightMs));
+
+        mScheduler.setBlinkEnabled(false);
+        mClock.mNowMs = midnightMs - HOUR_MS / 2 + 250;
+        assertEquals(60, countWakeups(mClock.mNowMs + HOUR_MS, midnightMs));
+    }
+
+    @Test
+    public void dayChangeBetweenTicksAddsOneWakeup() {
+        // The date ring's midnight is still in the zone the ring was built for, 30 seconds off
+        // the scheduler's minutes, as right after a zone change.
+        long dayChangeMs = utc(2017, Calendar.MARCH, 2, 0, 0, 30);
+        mScheduler.setBlinkEnabled(false);
+        mClock.mNowMs = utc(2017, Calendar.MARCH, 1, 23, 30, 0) + 250;
+
+        assertEquals(60 + 1, countWakeups(mClock.mNowMs + HOUR_MS, dayChangeMs));
+    }
+
+    /*
+     * Advances the clock by the delays the scheduler asks for, like the engine's update
+     * messages, and returns the number of wakeups until endMs.
+     */
+    private int countWakeups(long endMs, long nextDayChangeMs) {
+        int wakeups = 0;
+        while (true) {
+            long delayMs = mScheduler.getDelayMs(nextDayChangeMs);
+            assertTrue(delayMs > 0);
+            if (mClock.mNowMs + delayMs > endMs) {
+                return wakeups;
+            }
+            mClock.mNowMs += delayMs;
+            wakeups++;
+        }
+    }
+
+    private static long utc(int year, int month, int day, int hour, int minute, int second) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute, second);
+        return calendar.getTimeInMillis();
+    }
+
+    private static long local(TimeZone zone, int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(zone);
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    private static class FakeClock implements TickScheduler.Clock {
+        long mNowMs;
+
+        @Override
+        public long currentTimeMillis() {
+            return mNowMs;
+        }
+    }
+}